@@ -1,10 +1,10 @@
 package client;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 
 import networkcontroller.ClientGridController;
+import networkcontroller.MessageFramer;
 import utils.Constants;
 
 /**
@@ -19,6 +19,8 @@ public class ClientListener implements Runnable {
 	private SocketChannel clientSocket;
 	// This class will handle every message received from the server.
 	private ClientGridController clientController;
+	// Cut the bytes read in messages.
+	private final MessageFramer framer = new MessageFramer(Constants.MAXIMUM_MESSAGE_SIZE);
 
 	public ClientListener(SocketChannel socket, ClientGridController clientController) {
 		this.clientSocket = socket;
@@ -29,12 +31,12 @@ public class ClientListener implements Runnable {
 	public void run() {
 		while(true){
 			try {
-				ByteBuffer buffer = ByteBuffer.allocate(Constants.BUFFER_SIZE);
-				int byteRead = clientSocket.read(buffer);
-				clientController.addPendingCommand(buffer.array());
+				for(byte[] message : framer.read(clientSocket)){
+					clientController.addPendingCommand(message);
 
-				if(Constants.DEBUG_BITSET){
-					System.out.println("[CLIENT] read "+byteRead+" bytes");
+					if(Constants.DEBUG_BITSET){
+						System.out.println("[CLIENT] read "+message.length+" bytes");
+					}
 				}
 			} catch (IOException e) {
 				// Connection failed the thread stops.
@@ -0,0 +1,433 @@
+package cluster;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import engine.GridEngine;
+import engine.Topology;
+import utils.Constants;
+
+/**
+ * The coordinator of a world split in stripes of rows held by several {@link StripeNode}. The nodes compute their
+ * stripes in parallel and exchange their border rows between themselves, the coordinator only tell them how many
+ * generations to compute and check that they all reached the same one before going on.
+ *
+ * The snapshot of the whole world is gathered from the nodes when it is read after a generation, then kept until the
+ * next one. The cell edits are buffered and sent to the nodes before the next command.
+ *
+ * The engine methods cannot report the loss of a node, it is thrown as an {@link UncheckedIOException}.
+ *
+ * @author Jean-Hugo
+ */
+public class ClusterGridEngine implements GridEngine {
+
+	// The size of a run of cells in a message: row, column, length and state.
+	static final int RUN_BYTES = Integer.BYTES * 3 + 1;
+
+	// The addresses of the nodes and the links to them.
+	private final List<InetSocketAddress> nodes;
+	private final List<Link> links = new ArrayList<Link>();
+	// The id of this world on the nodes.
+	private final long sessionId = new SplittableRandom().nextLong();
+
+	// The grid dimensions in cells.
+	private int width;
+	private int height;
+	// What is beyond the borders.
+	private Topology topology = Topology.TORUS;
+	// The number of nodes holding a stripe, never more than the rows.
+	private int stripes;
+	// The first row and the number of rows of each stripe.
+	private int tops[];
+	private int rows[];
+	// The population of each stripe.
+	private long populations[];
+	// The generation all the stripes must be at.
+	private long generation;
+
+	// The whole grid in the snapshot layout, null if it has to be gathered from the nodes.
+	private long snapshot[];
+	// The runs of cells set since the last command, for each stripe.
+	private List<List<int[]>> pendingRuns = new ArrayList<List<int[]>>();
+
+	/**
+	 * Connect to the nodes and split an empty grid between them.
+	 *
+	 * @param nodes the addresses of the nodes, each one hold a stripe of the same number of rows (plus or minus one).
+	 */
+	public ClusterGridEngine(int width, int height, List<InetSocketAddress> nodes) {
+		this.nodes = new ArrayList<InetSocketAddress>(nodes);
+		this.width = width;
+		this.height = height;
+		try {
+			for(InetSocketAddress address : nodes){
+				Link link = Link.connect(address);
+				links.add(link);
+				ByteBuffer hello = ByteBuffer.allocate(Short.BYTES + Long.BYTES);
+				hello.putShort(Constants.CLUSTER_COORDINATOR_HELLO).putLong(sessionId).flip();
+				link.send(hello);
+			}
+		} catch (IOException e) {
+			release();
+			throw new UncheckedIOException("Cannot connect to the cluster nodes "+nodes, e);
+		}
+		assign(null);
+	}
+
+	/**
+	 * Split the grid between the nodes and write the given content, null to leave them empty.
+	 */
+	private void assign(long content[]) {
+		stripes = Math.min(nodes.size(), height);
+		tops = new int[nodes.size()];
+		rows = new int[nodes.size()];
+		populations = new long[nodes.size()];
+		pendingRuns = new ArrayList<List<int[]>>();
+		for(int i = 0; i < nodes.size(); i++){
+			if(i < stripes){
+				rows[i] = height / stripes + (i < height % stripes ? 1 : 0);
+				tops[i] = i == 0 ? 0 : tops[i - 1] + rows[i - 1];
+			}
+			pendingRuns.add(new ArrayList<int[]>());
+		}
+
+		try {
+			for(int i = 0; i < nodes.size(); i++){
+				// On a torus the first and the last stripes are neighbors.
+				boolean hasNorth = i < stripes && (topology == Topology.TORUS || i > 0);
+				boolean hasSouth = i < stripes && (topology == Topology.TORUS || i < stripes - 1);
+				InetSocketAddress south = nodes.get(stripes == 0 ? 0 : (i + 1) % stripes);
+				byte host[] = south.getHostString().getBytes(StandardCharsets.UTF_8);
+
+				ByteBuffer message = ByteBuffer.allocate(Short.BYTES + Integer.BYTES * 2 + 1 + Long.BYTES + 2
+						+ Short.BYTES + host.length + Integer.BYTES);
+				message.putShort(Constants.CLUSTER_ASSIGN);
+				message.putInt(width).putInt(rows[i]).put((byte) topology.ordinal()).putLong(generation);
+				message.put((byte) (hasNorth ? 1 : 0)).put((byte) (hasSouth ? 1 : 0));
+				message.putShort((short) host.length).put(host).putInt(south.getPort());
+				message.flip();
+				links.get(i).send(message);
+			}
+			// The nodes connect to each other, so they are all assigned before waiting for their answers.
+			for(int i = 0; i < nodes.size(); i++){
+				readStatus(i);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot assign the stripes to the cluster nodes", e);
+		}
+		snapshot = null;
+		if(content != null){
+			write(content);
+		}
+	}
+
+	/**
+	 * Every generation is computed by all the nodes at once, the halo rows are exchanged between the nodes without
+	 * going through the coordinator.
+	 */
+	@Override
+	public void advance(long generations, int birthMask, int survivalMask) {
+		flush();
+		try {
+			for(int i = 0; i < stripes; i++){
+				ByteBuffer message = ByteBuffer.allocate(Short.BYTES + Integer.BYTES * 2 + Long.BYTES);
+				message.putShort(Constants.CLUSTER_STEP).putInt(birthMask).putInt(survivalMask).putLong(generations);
+				message.flip();
+				links.get(i).send(message);
+			}
+			generation += generations;
+			for(int i = 0; i < stripes; i++){
+				readStatus(i);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot compute the generation on the cluster nodes", e);
+		}
+		snapshot = null;
+	}
+
+	@Override
+	public void step(int birthMask, int survivalMask) {
+		advance(1, birthMask, survivalMask);
+	}
+
+	/**
+	 * Read the answer of a node to a command, its generation and its population.
+	 */
+	private void readStatus(int node) throws IOException {
+		ByteBuffer status = links.get(node).receive(Long.BYTES * 2);
+		long nodeGeneration = status.getLong();
+		populations[node] = status.getLong();
+		if(nodeGeneration != generation){
+			throw new IOException("The node "+nodes.get(node)+" is at the generation "+nodeGeneration+" instead of "+generation);
+		}
+	}
+
+	/**
+	 * Send the pending runs of cells to their nodes.
+	 */
+	private void flush() {
+		try {
+			List<Integer> flushed = new ArrayList<Integer>();
+			for(int i = 0; i < stripes; i++){
+				List<int[]> runs = pendingRuns.get(i);
+				if(runs.isEmpty()){
+					continue;
+				}
+				ByteBuffer message = ByteBuffer.allocate(Short.BYTES + Integer.BYTES + runs.size() * RUN_BYTES);
+				message.putShort(Constants.CLUSTER_SET_RUNS).putInt(runs.size());
+				for(int run[] : runs){
+					message.putInt(run[0] - tops[i]).putInt(run[1]).putInt(run[2]).put((byte) run[3]);
+				}
+				message.flip();
+				links.get(i).send(message);
+				runs.clear();
+				flushed.add(i);
+			}
+			for(int i : flushed){
+				readStatus(i);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot send the cells to the cluster nodes", e);
+		}
+	}
+
+	/**
+	 * @return the whole grid in the snapshot layout, gathered from the nodes if needed. It must not be modified.
+	 */
+	private long[] getSnapshot() {
+		if(snapshot != null){
+			return snapshot;
+		}
+		flush();
+		long words[] = new long[getWords((long) width * height)];
+		try {
+			ByteBuffer message = ByteBuffer.allocate(Short.BYTES);
+			for(int i = 0; i < stripes; i++){
+				message.clear();
+				message.putShort(Constants.CLUSTER_READ).flip();
+				links.get(i).send(message);
+			}
+			for(int i = 0; i < stripes; i++){
+				readStatus(i);
+				int count = links.get(i).receive(Integer.BYTES).getInt();
+				long stripe[] = new long[count];
+				links.get(i).receiveWords(stripe, count);
+				copyBits(stripe, 0, words, (long) width * tops[i], (long) width * rows[i]);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot read the cells from the cluster nodes", e);
+		}
+		snapshot = words;
+		return snapshot;
+	}
+
+	/**
+	 * Replace the whole grid with the given words in the snapshot layout, the pending runs are dropped.
+	 */
+	private void write(long words[]) {
+		try {
+			for(int i = 0; i < stripes; i++){
+				pendingRuns.get(i).clear();
+				long stripe[] = new long[getWords((long) width * rows[i])];
+				copyBits(words, (long) width * tops[i], stripe, 0, (long) width * rows[i]);
+				ByteBuffer message = ByteBuffer.allocate(Short.BYTES + Integer.BYTES);
+				message.putShort(Constants.CLUSTER_WRITE).putInt(stripe.length).flip();
+				links.get(i).send(message);
+				links.get(i).sendWords(stripe, stripe.length);
+			}
+			for(int i = 0; i < stripes; i++){
+				readStatus(i);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot write the cells on the cluster nodes", e);
+		}
+		snapshot = words;
+	}
+
+	@Override
+	public void resize(int newWidth, int newHeight) {
+		long old[] = getSnapshot();
+		long words[] = new long[getWords((long) newWidth * newHeight)];
+		int columns = Math.min(width, newWidth);
+		for(int y = 0; y < Math.min(height, newHeight); y++){
+			copyBits(old, (long) width * y, words, (long) newWidth * y, columns);
+		}
+		width = newWidth;
+		height = newHeight;
+		assign(words);
+	}
+
+	@Override
+	public void fill(boolean alive) {
+		long words[] = new long[getWords((long) width * height)];
+		if(alive){
+			Arrays.fill(words, -1L);
+			int used = (int) (((long) width * height) % Long.SIZE);
+			if(used != 0){
+				words[words.length - 1] = (1L << used) - 1;
+			}
+		}
+		write(words);
+	}
+
+	@Override
+	public boolean getCell(int y, int x) {
+		long index = (long) width * y + x;
+		return (getSnapshot()[(int) (index >>> 6)] & (1L << index)) != 0;
+	}
+
+	@Override
+	public void setCell(int y, int x, boolean alive) {
+		setRun(y, x, 1, alive);
+	}
+
+	/**
+	 * The run is sent to the node holding its row with the next command.
+	 */
+	@Override
+	public void setRun(int y, int x, int length, boolean alive) {
+		for(int i = 0; i < stripes; i++){
+			if(y >= tops[i] && y < tops[i] + rows[i]){
+				pendingRuns.get(i).add(new int[] {y, x, length, alive ? 1 : 0});
+				break;
+			}
+		}
+		if(snapshot != null){
+			for(int i = 0; i < length; i++){
+				long index = (long) width * y + x + i;
+				if(alive){
+					snapshot[(int) (index >>> 6)] |= 1L << index;
+				} else {
+					snapshot[(int) (index >>> 6)] &= ~(1L << index);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void writeSnapshot(BitSet bitField) {
+		bitField.or(BitSet.valueOf(getSnapshot()));
+	}
+
+	@Override
+	public void readSnapshot(BitSet bitField) {
+		long words[] = new long[getWords((long) width * height)];
+		long set[] = bitField.get(0, width * height).toLongArray();
+		System.arraycopy(set, 0, words, 0, set.length);
+		write(words);
+	}
+
+	@Override
+	public void copySnapshot(long[] words) {
+		long current[] = getSnapshot();
+		System.arraycopy(current, 0, words, 0, current.length);
+		Arrays.fill(words, current.length, words.length, 0L);
+	}
+
+	/**
+	 * The first and the last stripes are neighbors on a torus only, so the stripes are assigned again.
+	 */
+	@Override
+	public boolean setTopology(Topology topology) {
+		if(topology != this.topology){
+			long content[] = getSnapshot();
+			this.topology = topology;
+			assign(content);
+		}
+		return true;
+	}
+
+	@Override
+	public Topology getTopology() {
+		return topology;
+	}
+
+	@Override
+	public long getPopulation() {
+		flush();
+		long population = 0;
+		for(long stripePopulation : populations){
+			population += stripePopulation;
+		}
+		return population;
+	}
+
+	/**
+	 * Close the links, the nodes drop the stripes.
+	 */
+	@Override
+	public void release() {
+		for(Link link : links){
+			link.close();
+		}
+		links.clear();
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the number of words needed to store the given number of bits.
+	 */
+	static int getWords(long bits) {
+		return (int) ((bits + Long.SIZE - 1) / Long.SIZE);
+	}
+
+	/**
+	 * Copy the given number of bits of the source from the source position to the destination position, the other bits
+	 * of the destination are kept.
+	 */
+	static void copyBits(long src[], long srcPosition, long dst[], long dstPosition, long length) {
+		while(length > 0){
+			int bits = (int) Math.min(length, Long.SIZE);
+			setBits(dst, dstPosition, bits, getBits(src, srcPosition, bits));
+			srcPosition += bits;
+			dstPosition += bits;
+			length -= bits;
+		}
+	}
+
+	/**
+	 * @return the given number of bits (up to 64) of the words from the position, as the lowest bits.
+	 */
+	private static long getBits(long words[], long position, int bits) {
+		int index = (int) (position >>> 6);
+		int shift = (int) (position & (Long.SIZE - 1));
+		long value = words[index] >>> shift;
+		if(shift != 0 && shift + bits > Long.SIZE){
+			value |= words[index + 1] << (Long.SIZE - shift);
+		}
+		return bits == Long.SIZE ? value : value & ((1L << bits) - 1);
+	}
+
+	/**
+	 * Replace the given number of bits (up to 64) of the words from the position with the lowest bits of the value.
+	 */
+	private static void setBits(long words[], long position, int bits, long value) {
+		int index = (int) (position >>> 6);
+		int shift = (int) (position & (Long.SIZE - 1));
+		long mask = bits == Long.SIZE ? -1L : (1L << bits) - 1;
+		value &= mask;
+		words[index] = (words[index] & ~(mask << shift)) | (value << shift);
+		if(shift != 0 && shift + bits > Long.SIZE){
+			long highMask = mask >>> (Long.SIZE - shift);
+			words[index + 1] = (words[index + 1] & ~highMask) | (value >>> (Long.SIZE - shift));
+		}
+	}
+
+}
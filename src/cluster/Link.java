@@ -0,0 +1,100 @@
+package cluster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A blocking connection between 2 members of a cluster: the coordinator and a node, or 2 neighbor nodes. The members
+ * work in lockstep, so unlike the clients connections each message is simply written whole and read whole.
+ *
+ * @author Jean-Hugo
+ */
+class Link {
+
+	// The connection to the other member.
+	private final SocketChannel channel;
+	// Used to read and write the rows exchanged every generation, grown when needed.
+	private ByteBuffer wordsBuffer = ByteBuffer.allocate(0);
+
+	Link(SocketChannel channel) throws IOException {
+		this.channel = channel;
+		channel.configureBlocking(true);
+		// The rows are small and awaited right away.
+		channel.socket().setTcpNoDelay(true);
+	}
+
+	/**
+	 * Open a link to the given address.
+	 */
+	static Link connect(InetSocketAddress address) throws IOException {
+		return new Link(SocketChannel.open(address));
+	}
+
+	/**
+	 * Write the buffer from its position to its limit.
+	 */
+	void send(ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * @return a buffer holding the given number of bytes read from the link, ready to be read.
+	 */
+	ByteBuffer receive(int bytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(bytes);
+		readFully(buffer);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Write the given number of words.
+	 */
+	void sendWords(long[] words, int count) throws IOException {
+		ByteBuffer buffer = wordsBuffer(count);
+		buffer.asLongBuffer().put(words, 0, count);
+		send(buffer);
+	}
+
+	/**
+	 * Read the given number of words in the array.
+	 */
+	void receiveWords(long[] words, int count) throws IOException {
+		ByteBuffer buffer = wordsBuffer(count);
+		readFully(buffer);
+		buffer.flip();
+		buffer.asLongBuffer().get(words, 0, count);
+	}
+
+	/**
+	 * @return the words buffer cleared and limited to the given number of words.
+	 */
+	private ByteBuffer wordsBuffer(int count) {
+		if(wordsBuffer.capacity() < count * Long.BYTES){
+			wordsBuffer = ByteBuffer.allocate(count * Long.BYTES);
+		}
+		wordsBuffer.clear().limit(count * Long.BYTES);
+		return wordsBuffer;
+	}
+
+	private void readFully(ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()){
+			if(channel.read(buffer) < 0){
+				throw new IOException("Connection closed by "+channel.socket().getRemoteSocketAddress());
+			}
+		}
+	}
+
+	void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package cluster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import engine.EngineType;
+import engine.GridEngine;
+import utils.Constants;
+
+/**
+ * A server process holding stripes of worlds too big for a single server. Each coordinator connection is a session
+ * owning one stripe of rows of a world, a node can hold the stripes of several worlds at once. The neighbor stripes of a
+ * world exchange their border rows directly every generation: each session connects to the node of the stripe below it
+ * and is connected to by the node of the stripe above it.
+ *
+ * @author Jean-Hugo
+ */
+public class StripeNode implements Runnable {
+
+	// The port the nodes listen on by default.
+	public static final int DEFAULT_PORT = 9998;
+
+	// The engine holding the stripes.
+	private final EngineType engineType;
+	// The socket channel to listen for the coordinators and the neighbor nodes.
+	private ServerSocketChannel serverSocketChannel;
+	// The links opened by the north neighbors of the sessions, by session id. They wait here until the session ask for
+	// them.
+	private final ConcurrentHashMap<Long, BlockingQueue<Link>> peers = new ConcurrentHashMap<Long, BlockingQueue<Link>>();
+
+	/**
+	 * @param port the port to listen on, 0 for any free port.
+	 * @param engineType the engine holding the stripes.
+	 */
+	public StripeNode(int port, EngineType engineType) {
+		this.engineType = engineType;
+		initSocket(port);
+	}
+
+	/**
+	 * Create the server socket.
+	 */
+	private void initSocket(int port) {
+		try {
+			serverSocketChannel = ServerSocketChannel.open();
+			serverSocketChannel.socket().bind(new InetSocketAddress(port));
+			System.out.println("[Node] Started. Listening on port: "+getPort());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Accept the coordinators and the neighbor nodes until the node is closed. The first message of a connection tell
+	 * who is connecting and for which session.
+	 */
+	@Override
+	public void run() {
+		while(serverSocketChannel.isOpen()){
+			Link link = null;
+			try {
+				link = new Link(serverSocketChannel.accept());
+				ByteBuffer hello = link.receive(Short.BYTES + Long.BYTES);
+				short code = hello.getShort();
+				long sessionId = hello.getLong();
+				if(code == Constants.CLUSTER_COORDINATOR_HELLO){
+					Thread session = new Thread(new StripeSession(this, sessionId, link), "stripe-"+sessionId);
+					session.setDaemon(true);
+					session.start();
+				} else if(code == Constants.CLUSTER_PEER_HELLO){
+					getPeers(sessionId).add(link);
+				} else {
+					System.err.println("[Node] Unknown hello: "+code);
+					link.close();
+				}
+			} catch (IOException e) {
+				if(link != null){
+					link.close();
+				}
+				if(serverSocketChannel.isOpen()){
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the link opened by the north neighbor of the given session, waiting for it if needed.
+	 */
+	Link awaitPeer(long sessionId) throws IOException {
+		try {
+			Link link = getPeers(sessionId).poll(Constants.CLUSTER_LINK_TIMEOUT, TimeUnit.MILLISECONDS);
+			if(link == null){
+				throw new IOException("The north neighbor of the session "+sessionId+" did not connect.");
+			}
+			return link;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the north neighbor of the session "+sessionId);
+		}
+	}
+
+	private BlockingQueue<Link> getPeers(long sessionId) {
+		return peers.computeIfAbsent(sessionId, key -> new LinkedBlockingQueue<Link>());
+	}
+
+	/**
+	 * Forget the links of a closed session.
+	 */
+	void endSession(long sessionId) {
+		BlockingQueue<Link> links = peers.remove(sessionId);
+		if(links != null){
+			for(Link link : links){
+				link.close();
+			}
+		}
+	}
+
+	/**
+	 * @return a new engine for a stripe of the given dimensions.
+	 */
+	GridEngine createEngine(int width, int height) {
+		return engineType.createEngine(width, height);
+	}
+
+	/**
+	 * @return the port the node listen on.
+	 */
+	public int getPort() {
+		return serverSocketChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Stop accepting connections, the sessions end when their coordinator leave.
+	 */
+	public void close() {
+		try {
+			serverSocketChannel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
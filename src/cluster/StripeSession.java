@@ -0,0 +1,288 @@
+package cluster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import engine.GridEngine;
+import engine.PackedGridEngine;
+import engine.Topology;
+import utils.Constants;
+
+/**
+ * The stripe of a world held by a node for a coordinator. The stripe engine has 2 more rows than the stripe: the row 0
+ * hold the last row of the north neighbor and the last row hold the first row of the south neighbor (or dead cells on
+ * the borders of a bounded world). They are refreshed before every generation, so the rows of the stripe are computed
+ * exactly as in a single engine.
+ *
+ * Every command of the coordinator is answered with the generation of the stripe and its population.
+ *
+ * @author Jean-Hugo
+ */
+class StripeSession implements Runnable {
+
+	// The node holding the session.
+	private final StripeNode node;
+	// The id shared by the coordinator and the other nodes of the world.
+	private final long sessionId;
+	// The connection to the coordinator.
+	private final Link coordinator;
+
+	// The stripe with its 2 halo rows, null if the session has no rows.
+	private GridEngine engine;
+	// The stripe dimensions in cells.
+	private int width;
+	private int rows;
+	// The number of long used to store a row.
+	private int wordsPerRow;
+	// The generation of the stripe, the coordinator check that all the stripes are at the same one.
+	private long generation;
+	// The links to the neighbor stripes, null on the borders of a bounded world.
+	private Link north;
+	private Link south;
+	// The rows sent to and received from the neighbors.
+	private long[] firstRow;
+	private long[] lastRow;
+	private long[] northRow;
+	private long[] southRow;
+
+	StripeSession(StripeNode node, long sessionId, Link coordinator) {
+		this.node = node;
+		this.sessionId = sessionId;
+		this.coordinator = coordinator;
+	}
+
+	/**
+	 * Process the coordinator commands until it leave.
+	 */
+	@Override
+	public void run() {
+		try {
+			while(true){
+				short code = coordinator.receive(Short.BYTES).getShort();
+				switch (code) {
+				case Constants.CLUSTER_ASSIGN:
+					processAssign();
+					break;
+				case Constants.CLUSTER_STEP:
+					ByteBuffer step = coordinator.receive(Integer.BYTES * 2 + Long.BYTES);
+					processStep(step.getInt(), step.getInt(), step.getLong());
+					break;
+				case Constants.CLUSTER_READ:
+					processRead();
+					break;
+				case Constants.CLUSTER_WRITE:
+					processWrite();
+					break;
+				case Constants.CLUSTER_SET_RUNS:
+					processSetRuns();
+					break;
+				default:
+					throw new IOException("Unknown cluster command: "+code);
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("[Node] Session "+sessionId+" closed: "+e.getMessage());
+		} finally {
+			closeLinks();
+			if(engine != null){
+				engine.release();
+			}
+			coordinator.close();
+			node.endSession(sessionId);
+		}
+	}
+
+	/**
+	 * Take a new stripe and connect to its neighbors. The previous stripe is dropped, the coordinator write the content
+	 * of the new one afterward.
+	 */
+	private void processAssign() throws IOException {
+		ByteBuffer header = coordinator.receive(Integer.BYTES * 2 + 1 + Long.BYTES + 2 + Short.BYTES);
+		width = header.getInt();
+		rows = header.getInt();
+		int topologyIndex = header.get();
+		generation = header.getLong();
+		boolean hasNorth = header.get() != 0;
+		boolean hasSouth = header.get() != 0;
+		ByteBuffer address = coordinator.receive(header.getShort() + Integer.BYTES);
+		byte host[] = new byte[address.remaining() - Integer.BYTES];
+		address.get(host);
+		int port = address.getInt();
+		if(topologyIndex < 0 || topologyIndex >= Topology.values().length){
+			throw new IOException("Unknown topology: "+topologyIndex);
+		}
+		Topology topology = Topology.values()[topologyIndex];
+
+		closeLinks();
+		if(engine != null){
+			engine.release();
+			engine = null;
+		}
+		if(rows > 0){
+			engine = node.createEngine(width, rows + 2);
+			// The halo rows take care of the top and the bottom, the engine only wrap the columns or not.
+			if(!engine.setTopology(topology)){
+				System.err.println("[Node] The engine does not support the topology "+topology+". Using the packed engine.");
+				engine.release();
+				engine = new PackedGridEngine(width, rows + 2);
+				engine.setTopology(topology);
+			}
+			wordsPerRow = (width + Long.SIZE - 1) / Long.SIZE;
+			firstRow = new long[wordsPerRow];
+			lastRow = new long[wordsPerRow];
+			northRow = new long[wordsPerRow];
+			southRow = new long[wordsPerRow];
+
+			if(hasSouth){
+				south = Link.connect(new InetSocketAddress(new String(host, StandardCharsets.UTF_8), port));
+				ByteBuffer hello = ByteBuffer.allocate(Short.BYTES + Long.BYTES);
+				hello.putShort(Constants.CLUSTER_PEER_HELLO).putLong(sessionId).flip();
+				south.send(hello);
+			}
+			if(hasNorth){
+				north = node.awaitPeer(sessionId);
+			}
+		}
+		sendStatus(null);
+	}
+
+	/**
+	 * Compute the given number of generations, exchanging the border rows with the neighbors before each one.
+	 */
+	private void processStep(int birthMask, int survivalMask, long generations) throws IOException {
+		if(engine != null){
+			for(long i = 0; i < generations; i++){
+				exchangeHalos();
+				engine.step(birthMask, survivalMask);
+			}
+		}
+		generation += generations;
+		sendStatus(null);
+	}
+
+	/**
+	 * Send the first and the last rows to the neighbors and receive their border rows in the halo rows. Both rows are
+	 * sent before reading, a row is small enough to fit in the socket buffers so the neighbors never wait for each other.
+	 */
+	private void exchangeHalos() throws IOException {
+		engine.copyRow(1, firstRow);
+		engine.copyRow(rows, lastRow);
+		if(north != null){
+			north.sendWords(firstRow, wordsPerRow);
+		}
+		if(south != null){
+			south.sendWords(lastRow, wordsPerRow);
+		}
+
+		if(north != null){
+			north.receiveWords(northRow, wordsPerRow);
+		} else {
+			Arrays.fill(northRow, 0L);
+		}
+		if(south != null){
+			south.receiveWords(southRow, wordsPerRow);
+		} else {
+			Arrays.fill(southRow, 0L);
+		}
+		engine.setRow(0, northRow);
+		engine.setRow(rows + 1, southRow);
+	}
+
+	/**
+	 * Send the rows of the stripe in the snapshot layout.
+	 */
+	private void processRead() throws IOException {
+		long stripe[] = new long[ClusterGridEngine.getWords((long) width * rows)];
+		if(engine != null){
+			long words[] = new long[ClusterGridEngine.getWords((long) width * (rows + 2))];
+			engine.copySnapshot(words);
+			// Skip the north halo row.
+			ClusterGridEngine.copyBits(words, width, stripe, 0, (long) width * rows);
+		}
+		sendStatus(stripe);
+	}
+
+	/**
+	 * Replace the rows of the stripe with the snapshot sent by the coordinator.
+	 */
+	private void processWrite() throws IOException {
+		int count = coordinator.receive(Integer.BYTES).getInt();
+		long stripe[] = new long[count];
+		coordinator.receiveWords(stripe, count);
+		if(engine != null){
+			ByteBuffer snapshot = ByteBuffer.allocate(ClusterGridEngine.getWords((long) width * (rows + 2)) * Long.BYTES)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			long words[] = new long[snapshot.capacity() / Long.BYTES];
+			ClusterGridEngine.copyBits(stripe, 0, words, width, (long) width * rows);
+			snapshot.asLongBuffer().put(words);
+			engine.decodeSnapshot(snapshot);
+		}
+		sendStatus(null);
+	}
+
+	/**
+	 * Set the runs of cells sent by the coordinator, the rows are given within the stripe.
+	 */
+	private void processSetRuns() throws IOException {
+		int count = coordinator.receive(Integer.BYTES).getInt();
+		ByteBuffer runs = coordinator.receive(count * ClusterGridEngine.RUN_BYTES);
+		for(int i = 0; i < count; i++){
+			int y = runs.getInt();
+			int x = runs.getInt();
+			int length = runs.getInt();
+			boolean alive = runs.get() != 0;
+			if(engine != null && y >= 0 && y < rows && x >= 0 && length >= 0 && x + length <= width){
+				engine.setRun(y + 1, x, length, alive);
+			}
+		}
+		sendStatus(null);
+	}
+
+	/**
+	 * Answer the coordinator with the generation, the population and the given words if any.
+	 */
+	private void sendStatus(long words[]) throws IOException {
+		ByteBuffer status = ByteBuffer.allocate(Long.BYTES * 2 + (words == null ? 0 : Integer.BYTES));
+		status.putLong(generation).putLong(getPopulation());
+		if(words != null){
+			status.putInt(words.length);
+		}
+		status.flip();
+		coordinator.send(status);
+		if(words != null){
+			coordinator.sendWords(words, words.length);
+		}
+	}
+
+	/**
+	 * @return the number of living cells of the stripe, without the halo rows.
+	 */
+	private long getPopulation() {
+		if(engine == null){
+			return 0;
+		}
+		long population = engine.getPopulation();
+		engine.copyRow(0, northRow);
+		engine.copyRow(rows + 1, southRow);
+		for(int i = 0; i < wordsPerRow; i++){
+			population -= Long.bitCount(northRow[i]) + Long.bitCount(southRow[i]);
+		}
+		return population;
+	}
+
+	private void closeLinks() {
+		if(north != null){
+			north.close();
+			north = null;
+		}
+		if(south != null){
+			south.close();
+			south = null;
+		}
+	}
+
+}
@@ -0,0 +1,214 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The reference engine: each cell is a byte (1 = alive, 0 = dead) and its next state is read from a table indexed by
+ * the 3x3 block around it. It is the slowest engine but also the simplest, the other engines must always compute the
+ * same generations.
+ *
+ * The grid is surrounded by a border of one cell (the halo). Before each generation the halo is filled with the
+ * opposite edges of the grid on a torus, or with dead cells on a bounded grid. So every cell of the grid has its 8
+ * neighbors in the array and the step does not have to check the borders.
+ *
+ * @author Jean-Hugo
+ */
+public class BooleanGridEngine implements GridEngine {
+
+	// The number of possible 3x3 blocks.
+	private static final int TABLE_SIZE = 1 << 9;
+	// The position of the center cell in a block index.
+	private static final int CENTER_BIT = 4;
+
+	// The grid dimensions in cells.
+	private int width;
+	private int height;
+	// The length of a row in the arrays, with the halo on both sides.
+	private int stride;
+
+	// The current simulation with its halo, the cell (y, x) is at (y + 1) * stride + x + 1.
+	private byte grid[];
+	// Same as above but used to calculate the next game state without interfering with the current game state.
+	private byte nextGrid[];
+	// What is beyond the borders.
+	private Topology topology = Topology.TORUS;
+
+	// The next state of the center cell of every 3x3 block, compiled for the masks below.
+	private byte transitions[];
+	private int tableBirthMask;
+	private int tableSurvivalMask;
+
+	public BooleanGridEngine(int width, int height) {
+		allocate(width, height);
+	}
+
+	private void allocate(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.stride = width + 2;
+		this.grid = new byte[stride * (height + 2)];
+		this.nextGrid = new byte[stride * (height + 2)];
+	}
+
+	@Override
+	public void step(int birthMask, int survivalMask) {
+		if(transitions == null || birthMask != tableBirthMask || survivalMask != tableSurvivalMask){
+			transitions = compileTransitionTable(birthMask, survivalMask);
+			tableBirthMask = birthMask;
+			tableSurvivalMask = survivalMask;
+		}
+		fillHalo();
+
+		byte cells[] = grid;
+		byte next[] = nextGrid;
+		byte table[] = transitions;
+		for (int i = 1; i <= height; i++) {
+			int up = (i - 1) * stride;
+			int row = i * stride;
+			int down = (i + 1) * stride;
+
+			// The index is made of the west, center and east columns of the 3x3 block around the cell.
+			int index = (getColumn(cells, up, row, down, 0) << 3) | getColumn(cells, up, row, down, 1);
+			for (int j = 1; j <= width; j++) {
+				index = ((index << 3) | getColumn(cells, up, row, down, j + 1)) & (TABLE_SIZE - 1);
+				next[row + j] = table[index];
+			}
+		}
+
+		grid = next;
+		nextGrid = cells;
+	}
+
+	/**
+	 * @return the 3 cells of the given column as 3 bits, the up cell being the highest one.
+	 */
+	private static int getColumn(byte cells[], int up, int row, int down, int x) {
+		return (cells[up + x] << 2) | (cells[row + x] << 1) | cells[down + x];
+	}
+
+	/**
+	 * Fill the halo around the grid according to the topology.
+	 */
+	private void fillHalo() {
+		int last = height * stride;
+		int haloRow = (height + 1) * stride;
+		if(topology == Topology.TORUS){
+			// The left and right columns first, so the corners are copied with the rows.
+			for (int row = stride; row <= last; row += stride) {
+				grid[row] = grid[row + width];
+				grid[row + width + 1] = grid[row + 1];
+			}
+			System.arraycopy(grid, last, grid, 0, stride);
+			System.arraycopy(grid, stride, grid, haloRow, stride);
+		} else {
+			for (int row = stride; row <= last; row += stride) {
+				grid[row] = 0;
+				grid[row + width + 1] = 0;
+			}
+			Arrays.fill(grid, 0, stride, (byte) 0);
+			Arrays.fill(grid, haloRow, haloRow + stride, (byte) 0);
+		}
+	}
+
+	/**
+	 * Compute the next state of the center cell for every possible 3x3 block. The block index hold 3 columns of 3 bits
+	 * (west, center, east), so the center cell is the bit 4.
+	 *
+	 * @param birthMask the bit n is set if a dead cell with n neighbors become alive.
+	 * @param survivalMask the bit n is set if a living cell with n neighbors stay alive.
+	 * @return the table of the next states (1 = alive) indexed by the 3x3 blocks.
+	 */
+	static byte[] compileTransitionTable(int birthMask, int survivalMask) {
+		byte table[] = new byte[TABLE_SIZE];
+		for (int index = 0; index < TABLE_SIZE; index++) {
+			boolean alive = ((index >> CENTER_BIT) & 1) != 0;
+			int neighborsCount = Integer.bitCount(index) - (alive ? 1 : 0);
+			table[index] = (byte) (((alive ? survivalMask : birthMask) >> neighborsCount) & 1);
+		}
+		return table;
+	}
+
+	@Override
+	public boolean setTopology(Topology topology) {
+		this.topology = topology;
+		return true;
+	}
+
+	@Override
+	public Topology getTopology() {
+		return topology;
+	}
+
+	@Override
+	public void resize(int newWidth, int newHeight) {
+		byte oldGrid[] = grid;
+		int oldStride = stride;
+		int rows = Math.min(height, newHeight);
+		int columns = Math.min(width, newWidth);
+
+		allocate(newWidth, newHeight);
+		for (int i = 1; i <= rows; i++) {
+			System.arraycopy(oldGrid, i * oldStride + 1, grid, i * stride + 1, columns);
+		}
+	}
+
+	@Override
+	public void fill(boolean alive) {
+		for (int i = 1; i <= height; i++) {
+			Arrays.fill(grid, i * stride + 1, i * stride + 1 + width, alive ? (byte) 1 : (byte) 0);
+		}
+	}
+
+	@Override
+	public boolean getCell(int y, int x) {
+		return grid[(y + 1) * stride + x + 1] != 0;
+	}
+
+	@Override
+	public void setCell(int y, int x, boolean alive) {
+		grid[(y + 1) * stride + x + 1] = alive ? (byte) 1 : (byte) 0;
+	}
+
+	@Override
+	public void writeSnapshot(BitSet bitField) {
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < width; j++) {
+				if (getCell(i, j)) {
+					bitField.set(width * i + j);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void readSnapshot(BitSet bitField) {
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < width; j++) {
+				setCell(i, j, bitField.get(width * i + j));
+			}
+		}
+	}
+
+	@Override
+	public long getPopulation() {
+		long population = 0;
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < width; j++) {
+				population += grid[(i + 1) * stride + j + 1];
+			}
+		}
+		return population;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+}
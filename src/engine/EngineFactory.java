@@ -0,0 +1,16 @@
+package engine;
+
+/**
+ * Create the engines of the worlds. The engine types are the usual factories, a server can also be given one building
+ * engines that are not in the list, like the engines of a cluster.
+ *
+ * @author Jean-Hugo
+ */
+public interface EngineFactory {
+
+	/**
+	 * @return a new engine with the given dimensions.
+	 */
+	GridEngine createEngine(int width, int height);
+
+}
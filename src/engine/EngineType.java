@@ -0,0 +1,95 @@
+package engine;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The engines that can be selected when starting a server.
+ *
+ * @author Jean-Hugo
+ */
+public enum EngineType implements EngineFactory {
+
+	// One boolean per cell, the next state is read from a table of the 3x3 blocks.
+	REFERENCE,
+	// 64 cells per long, a whole word is computed at once.
+	PACKED,
+	// Same as packed, several words are computed at once by the vector unit when the CPU and the JVM allow it.
+	VECTOR,
+	// Same as packed, the bands of rows are computed on all the cores.
+	PARALLEL,
+	// Same as packed, the cells are stored outside of the Java heap.
+	OFFHEAP,
+	// Only the chunks with living cells are stored and computed.
+	SPARSE,
+	// Same as sparse but the cells can live beyond the grid borders.
+	UNBOUNDED,
+	// Quadtree with memoized results, able to jump many generations at once on an unbounded plane.
+	HASHLIFE;
+
+	/**
+	 * @return a new engine of this type with the given dimensions.
+	 */
+	@Override
+	public GridEngine createEngine(int width, int height) {
+		switch (this) {
+		case REFERENCE:
+			return new BooleanGridEngine(width, height);
+		case VECTOR:
+			return createVectorEngine(width, height);
+		case PARALLEL:
+			PackedGridEngine engine = new PackedGridEngine(width, height);
+			engine.setParallelMode(ForkJoinPool.commonPool(), PackedGridEngine.DEFAULT_PARALLEL_THRESHOLD);
+			return engine;
+		case OFFHEAP:
+			return new OffHeapGridEngine(width, height);
+		case SPARSE:
+			return new SparseGridEngine(width, height);
+		case UNBOUNDED:
+			return new SparseGridEngine(width, height, true);
+		case HASHLIFE:
+			return new HashLifeGridEngine(width, height);
+		case PACKED:
+		default:
+			return new PackedGridEngine(width, height);
+		}
+	}
+
+	/**
+	 * The vector engine is loaded by reflection, so the other sources compile without the jdk.incubator.vector module and
+	 * its classes are never linked when the module is missing (the vector source root must be compiled and the JVM
+	 * started with --add-modules jdk.incubator.vector).
+	 *
+	 * @return the vector engine if it can be used, the packed engine otherwise.
+	 */
+	private static GridEngine createVectorEngine(int width, int height) {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				Class<?> engineClass = Class.forName("engine.VectorGridEngine");
+				if ((Boolean) engineClass.getMethod("isSupported").invoke(null)) {
+					return (GridEngine) engineClass.getConstructor(int.class, int.class).newInstance(width, height);
+				}
+				System.err.println("The CPU cannot compute several words at once. Using the packed engine.");
+			} catch (ReflectiveOperationException | LinkageError e) {
+				System.err.println("Cannot load the vector engine: "+e+". Using the packed engine.");
+			}
+		} else {
+			System.err.println("The jdk.incubator.vector module is not available. Using the packed engine.");
+		}
+		return new PackedGridEngine(width, height);
+	}
+
+	/**
+	 * @param name the name of the engine, the case is ignored.
+	 * @return the engine type with the given name or the packed engine if there is none.
+	 */
+	public static EngineType fromName(String name) {
+		for (EngineType type : values()) {
+			if (type.name().equalsIgnoreCase(name)) {
+				return type;
+			}
+		}
+		System.err.println("Unknown engine: "+name+". Using the "+PACKED.name().toLowerCase()+" engine.");
+		return PACKED;
+	}
+
+}
@@ -0,0 +1,203 @@
+package engine;
+
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An engine hold the cells of the grid and know how to compute the next generations. The coordinates are given as
+ * (row, column) like in the rest of the game.
+ *
+ * @author Jean-Hugo
+ */
+public interface GridEngine {
+
+	/**
+	 * Process one simulation step.
+	 *
+	 * @param birthMask the bit n is set if a dead cell with n neighbors become alive.
+	 * @param survivalMask the bit n is set if a living cell with n neighbors stay alive.
+	 */
+	void step(int birthMask, int survivalMask);
+
+	/**
+	 * Advance the world by the given number of generations. By default the generations are computed one by one.
+	 *
+	 * @param birthMask the bit n is set if a dead cell with n neighbors become alive.
+	 * @param survivalMask the bit n is set if a living cell with n neighbors stay alive.
+	 */
+	default void advance(long generations, int birthMask, int survivalMask) {
+		for (long i = 0; i < generations; i++) {
+			step(birthMask, survivalMask);
+		}
+	}
+
+	/**
+	 * Change the grid dimensions. The cells within both the old and the new dimensions are kept.
+	 */
+	void resize(int width, int height);
+
+	/**
+	 * Set all the cells of the grid to the given state.
+	 */
+	void fill(boolean alive);
+
+	boolean getCell(int y, int x);
+
+	void setCell(int y, int x, boolean alive);
+
+	/**
+	 * Set the given number of cells of a row to the given state, starting at the column x. The run must stay within the
+	 * grid.
+	 */
+	default void setRun(int y, int x, int length, boolean alive) {
+		for (int i = 0; i < length; i++) {
+			setCell(y, x + i, alive);
+		}
+	}
+
+	/**
+	 * Write the given row in the words: the cell x is the bit x % 64 of the word x / 64, the bits beyond the width are
+	 * cleared. The words must hold at least width bits.
+	 */
+	default void copyRow(int y, long[] words) {
+		Arrays.fill(words, 0L);
+		for (int x = 0; x < getWidth(); x++) {
+			if (getCell(y, x)) {
+				words[x >> 6] |= 1L << x;
+			}
+		}
+	}
+
+	/**
+	 * Replace the given row with the words written by {@link #copyRow(int, long[])}.
+	 */
+	default void setRow(int y, long[] words) {
+		for (int x = 0; x < getWidth(); x++) {
+			setCell(y, x, (words[x >> 6] & (1L << x)) != 0);
+		}
+	}
+
+	/**
+	 * Set in the given BitSet the bit width * y + x of every living cell of the grid.
+	 */
+	void writeSnapshot(BitSet bitField);
+
+	/**
+	 * Replace the grid content with the given BitSet, the bit width * y + x represent the cell (y, x).
+	 */
+	void readSnapshot(BitSet bitField);
+
+	/**
+	 * @return a hash of the grid content, 2 equal grids always have the same fingerprint.
+	 */
+	default long fingerprint() {
+		BitSet bitField = new BitSet();
+		writeSnapshot(bitField);
+		return fingerprint(bitField.toLongArray());
+	}
+
+	/**
+	 * @return a hash of the given words, the trailing empty words are ignored.
+	 */
+	static long fingerprint(long[] words) {
+		return fingerprint(LongBuffer.wrap(words));
+	}
+
+	/**
+	 * @return a hash of the words of the given buffer (from 0 to its limit), the trailing empty words are ignored.
+	 */
+	static long fingerprint(LongBuffer words) {
+		long hash = 0;
+		long pending = 0;
+		for (int i = 0; i < words.limit(); i++) {
+			long word = words.get(i);
+			if (word == 0) {
+				pending++;
+			} else {
+				// The empty words are mixed only when a word follows them.
+				hash = (hash + pending) * 0x9E3779B97F4A7C15L;
+				hash = (hash ^ word) * 0xBF58476D1CE4E5B9L;
+				hash ^= hash >>> 31;
+				pending = 0;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * @return the snapshot encoded like {@link BitSet#toByteArray()}, the bit width * y + x represent the cell (y, x).
+	 */
+	default byte[] encodeSnapshot() {
+		BitSet bitField = new BitSet();
+		writeSnapshot(bitField);
+		return bitField.toByteArray();
+	}
+
+	/**
+	 * Write the grid in the given words in the snapshot layout: the bit width * y + x of the words is the cell (y, x).
+	 * The words must hold at least width * height bits, the bits beyond the grid are cleared.
+	 */
+	default void copySnapshot(long[] words) {
+		BitSet bitField = new BitSet();
+		writeSnapshot(bitField);
+		long written[] = bitField.toLongArray();
+		System.arraycopy(written, 0, words, 0, written.length);
+		Arrays.fill(words, written.length, words.length, 0);
+	}
+
+	/**
+	 * Replace the grid content with the given snapshot encoded like {@link BitSet#toByteArray()}, from the position to
+	 * the limit of the buffer.
+	 */
+	default void decodeSnapshot(ByteBuffer bytes) {
+		readSnapshot(BitSet.valueOf(bytes));
+	}
+
+	/**
+	 * Free the memory held by the engine, it must not be used anymore. By default the garbage collector does it.
+	 */
+	default void release() {
+	}
+
+	/**
+	 * Choose what is beyond the grid borders for the next generations. By default only the torus is supported.
+	 *
+	 * @return whether the engine support the given topology, it is unchanged otherwise.
+	 */
+	default boolean setTopology(Topology topology) {
+		return topology == Topology.TORUS;
+	}
+
+	default Topology getTopology() {
+		return Topology.TORUS;
+	}
+
+	/**
+	 * @return whether cells can live beyond the grid borders, the grid is then only a window on the world.
+	 */
+	default boolean isUnbounded() {
+		return false;
+	}
+
+	/**
+	 * @return the regions (in cells) that may have changed during the last generation or since. By default the whole grid.
+	 */
+	default List<Rectangle> getDirtyRegions() {
+		return Collections.singletonList(new Rectangle(0, 0, getWidth(), getHeight()));
+	}
+
+	/**
+	 * @return the number of living cells, including the ones beyond the grid borders for the unbounded engines.
+	 */
+	long getPopulation();
+
+	int getWidth();
+
+	int getHeight();
+
+}
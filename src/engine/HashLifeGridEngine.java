@@ -0,0 +1,566 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * This engine implement the HashLife algorithm: the plane is a quadtree where identical sub trees are shared, and the
+ * future of every node is memoized. Since a pattern is usually made of many times the same pieces, this allow to jump
+ * 2^k generations in a single call instead of computing them one by one.
+ *
+ * The engine simulate an unbounded plane, the grid is only the window displayed and sent to the clients. The cells
+ * outside of this window keep living.
+ *
+ * The nodes are canonicalized in a hash table. To keep the memory capped, once the table hold more than the maximum
+ * number of nodes, every node that is not part of the current world is evicted along with the memoized results. A jump
+ * that fill the table is started again as two jumps of half the generations.
+ *
+ * The root never grow beyond {@link #MAXIMUM_LEVEL} so the coordinates always fit in a long: the cells that go further
+ * away from the grid than 2^(MAXIMUM_LEVEL - 2) are forgotten.
+ *
+ * @author Jean-Hugo
+ */
+public class HashLifeGridEngine implements GridEngine {
+
+	// The number of nodes the table can hold before evicting the ones that are not part of the world.
+	public static final int DEFAULT_MAXIMUM_NODES = 1 << 21;
+	// The initial capacity of the node table.
+	private static final int INITIAL_TABLE_SIZE = 1 << 12;
+	// The level of the 4x4 nodes whose next generation is read from the rule table.
+	private static final int BASE_LEVEL = 2;
+	// The biggest level of the root, while it is being advanced.
+	private static final int MAXIMUM_LEVEL = 62;
+	// The log2 of the biggest jump, the bigger ones are done in several jumps.
+	private static final int MAXIMUM_STEP = MAXIMUM_LEVEL - BASE_LEVEL - 2;
+
+	/**
+	 * Thrown when the table is full in the middle of a jump, the jump is then split.
+	 */
+	private static final class TableFullException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		TableFullException() {
+			super(null, null, false, false);
+		}
+	}
+
+	private static final TableFullException TABLE_FULL = new TableFullException();
+
+	/**
+	 * A square of 2^level cells. The leaves (level 0) are single cells, the other nodes are made of 4 nodes of the level
+	 * below. Nodes are immutable and canonical so 2 identical nodes are always the same instance.
+	 */
+	private static final class Node {
+		final Node nw, ne, sw, se;
+		final int level;
+		final long population;
+		final int hash;
+		// The next node in the same bucket of the node table.
+		Node next;
+		// The memoized center of this node advanced by 2^resultStep generations.
+		Node result;
+		int resultStep;
+
+		// Create a leaf.
+		Node(boolean alive) {
+			this.nw = this.ne = this.sw = this.se = null;
+			this.level = 0;
+			this.population = alive ? 1 : 0;
+			this.hash = alive ? 1 : 0;
+		}
+
+		Node(Node nw, Node ne, Node sw, Node se) {
+			this.nw = nw;
+			this.ne = ne;
+			this.sw = sw;
+			this.se = se;
+			this.level = nw.level + 1;
+			this.population = nw.population + ne.population + sw.population + se.population;
+			this.hash = computeHash(nw, ne, sw, se);
+		}
+	}
+
+	private static final Node DEAD = new Node(false);
+	private static final Node ALIVE = new Node(true);
+
+	// The grid dimensions in cells, the window of the plane starting at (0, 0).
+	private int width;
+	private int height;
+
+	// The node table used to canonicalize the nodes.
+	private Node[] table = new Node[INITIAL_TABLE_SIZE];
+	private int nodeCount = 0;
+	private final int maximumNodes;
+	// The empty node of each level.
+	private Node[] emptyNodes = new Node[] { DEAD };
+
+	// The whole plane, centered on (0, 0).
+	private Node root;
+
+	// The rule the memoized results have been computed with.
+	private int birthMask = -1;
+	private int survivalMask = -1;
+	// Whether the jump being computed can still be split when the table is full.
+	private boolean splittable = false;
+	// The center 2x2 cells of every 4x4 square after one generation, indexed by the 16 cells of the square.
+	private final byte[] baseTable = new byte[1 << 16];
+
+	public HashLifeGridEngine(int width, int height) {
+		this(width, height, DEFAULT_MAXIMUM_NODES);
+	}
+
+	/**
+	 * @param maximumNodes the number of nodes to keep in memory before evicting the unused ones.
+	 */
+	public HashLifeGridEngine(int width, int height, int maximumNodes) {
+		this.width = width;
+		this.height = height;
+		this.maximumNodes = maximumNodes;
+		this.root = getEmptyNode(BASE_LEVEL + 1);
+	}
+
+	@Override
+	public void step(int birthMask, int survivalMask) {
+		advance(1, birthMask, survivalMask);
+	}
+
+	/**
+	 * Advance the world by the given number of generations, each power of 2 of the number is done in a single jump.
+	 */
+	@Override
+	public void advance(long generations, int birthMask, int survivalMask) {
+		setRule(birthMask, survivalMask);
+		for (int step = Long.SIZE - 2; step >= 0; step--) {
+			if ((generations & (1L << step)) != 0) {
+				// The jumps too big for the root are done 2^MAXIMUM_STEP generations at a time.
+				for (long i = 0; i < 1L << Math.max(0, step - MAXIMUM_STEP); i++) {
+					jump(Math.min(step, MAXIMUM_STEP));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Advance the world by 2^step generations. When the table get full the world is left as it was and the jump is
+	 * done in two halves, only a single generation is computed whatever the number of nodes it needs.
+	 */
+	private void jump(int step) {
+		evictIfFull();
+
+		// The world must be centered in the root with enough empty space around it so the cells never leave the result.
+		while (root.level < step + BASE_LEVEL || getCenter(root).population != root.population) {
+			if (root.level >= MAXIMUM_LEVEL - 1) {
+				// Forget the cells too far away instead of growing the root further.
+				root = expand(getCenter(root));
+				break;
+			}
+			root = expand(root);
+		}
+
+		splittable = step > 0;
+		try {
+			root = successor(expand(root), step);
+		} catch (TableFullException e) {
+			jump(step - 1);
+			jump(step - 1);
+		} finally {
+			splittable = false;
+		}
+	}
+
+	/**
+	 * Compute the center of the given node advanced by 2^step generations.
+	 *
+	 * @param node a node of level k.
+	 * @param step the log2 of the number of generations, at most k - 2.
+	 * @return the centered node of level k - 1 advanced in the future.
+	 */
+	private Node successor(Node node, int step) {
+		if (node.population == 0) {
+			return node.nw;
+		}
+		if (node.result != null && node.resultStep == step) {
+			return node.result;
+		}
+		if (splittable && nodeCount > maximumNodes) {
+			throw TABLE_FULL;
+		}
+
+		Node result;
+		if (node.level == BASE_LEVEL) {
+			result = baseSuccessor(node);
+		} else {
+			// The 9 overlapping sub nodes of the level below.
+			Node n00 = node.nw, n01 = centerHorizontal(node.nw, node.ne), n02 = node.ne;
+			Node n10 = centerVertical(node.nw, node.sw), n11 = getCenter(node), n12 = centerVertical(node.ne, node.se);
+			Node n20 = node.sw, n21 = centerHorizontal(node.sw, node.se), n22 = node.se;
+
+			if (step == node.level - 2) {
+				// Full speed: advance each part by half of the step, then the 4 resulting nodes by the other half.
+				Node r00 = successor(n00, step - 1), r01 = successor(n01, step - 1), r02 = successor(n02, step - 1);
+				Node r10 = successor(n10, step - 1), r11 = successor(n11, step - 1), r12 = successor(n12, step - 1);
+				Node r20 = successor(n20, step - 1), r21 = successor(n21, step - 1), r22 = successor(n22, step - 1);
+
+				result = join(successor(join(r00, r01, r10, r11), step - 1),
+						successor(join(r01, r02, r11, r12), step - 1),
+						successor(join(r10, r11, r20, r21), step - 1),
+						successor(join(r11, r12, r21, r22), step - 1));
+			} else {
+				// Slower: only the second half advance in time.
+				Node r00 = getCenter(n00), r01 = getCenter(n01), r02 = getCenter(n02);
+				Node r10 = getCenter(n10), r11 = getCenter(n11), r12 = getCenter(n12);
+				Node r20 = getCenter(n20), r21 = getCenter(n21), r22 = getCenter(n22);
+
+				result = join(successor(join(r00, r01, r10, r11), step),
+						successor(join(r01, r02, r11, r12), step),
+						successor(join(r10, r11, r20, r21), step),
+						successor(join(r11, r12, r21, r22), step));
+			}
+		}
+
+		node.result = result;
+		node.resultStep = step;
+		return result;
+	}
+
+	/**
+	 * @return the center 2x2 cells of a 4x4 node after one generation, read from the rule table.
+	 */
+	private Node baseSuccessor(Node node) {
+		int cells = 0;
+		for (int y = 0; y < 4; y++) {
+			for (int x = 0; x < 4; x++) {
+				if (getCell(node, y, x)) {
+					cells |= 1 << (y * 4 + x);
+				}
+			}
+		}
+		int next = baseTable[cells];
+		return join(getLeaf((next & 1) != 0), getLeaf((next & 2) != 0), getLeaf((next & 4) != 0), getLeaf((next & 8) != 0));
+	}
+
+	/**
+	 * Compute the rule table and forget the results computed with another rule.
+	 */
+	private void setRule(int newBirthMask, int newSurvivalMask) {
+		if (newBirthMask == birthMask && newSurvivalMask == survivalMask) {
+			return;
+		}
+		birthMask = newBirthMask;
+		survivalMask = newSurvivalMask;
+
+		for (int cells = 0; cells < baseTable.length; cells++) {
+			int next = 0;
+			// The 4 center cells of the 4x4 square.
+			for (int i = 0; i < 4; i++) {
+				int y = 1 + (i >> 1);
+				int x = 1 + (i & 1);
+				int count = 0;
+				for (int dy = -1; dy <= 1; dy++) {
+					for (int dx = -1; dx <= 1; dx++) {
+						if ((dy != 0 || dx != 0) && (cells & (1 << ((y + dy) * 4 + x + dx))) != 0) {
+							count++;
+						}
+					}
+				}
+				boolean alive = (cells & (1 << (y * 4 + x))) != 0;
+				if ((((alive ? survivalMask : birthMask) >> count) & 1) != 0) {
+					next |= 1 << i;
+				}
+			}
+			baseTable[cells] = (byte) next;
+		}
+		rebuildTable(false);
+	}
+
+	/**
+	 * Evict the nodes that are not part of the current world when the table is full.
+	 */
+	private void evictIfFull() {
+		if (nodeCount > maximumNodes) {
+			rebuildTable(true);
+		}
+	}
+
+	/**
+	 * Empty the node table and put back only the nodes of the current world, all the memoized results are forgotten.
+	 *
+	 * @param shrink Whether the table capacity should go back to its initial size.
+	 */
+	private void rebuildTable(boolean shrink) {
+		if (shrink) {
+			table = new Node[INITIAL_TABLE_SIZE];
+		} else {
+			Arrays.fill(table, null);
+		}
+		nodeCount = 0;
+		for (Node empty : emptyNodes) {
+			reinsert(empty);
+		}
+		reinsert(root);
+	}
+
+	/**
+	 * Put back the given node and all its sub nodes in the table, forgetting their memoized results.
+	 */
+	private void reinsert(Node node) {
+		if (node.level == 0 || contains(node)) {
+			return;
+		}
+		node.result = null;
+		reinsert(node.nw);
+		reinsert(node.ne);
+		reinsert(node.sw);
+		reinsert(node.se);
+		insert(node);
+	}
+
+	private boolean contains(Node node) {
+		for (Node n = table[node.hash & (table.length - 1)]; n != null; n = n.next) {
+			if (n == node) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the canonical node made of the 4 given nodes.
+	 */
+	private Node join(Node nw, Node ne, Node sw, Node se) {
+		int hash = computeHash(nw, ne, sw, se);
+		for (Node n = table[hash & (table.length - 1)]; n != null; n = n.next) {
+			if (n.nw == nw && n.ne == ne && n.sw == sw && n.se == se) {
+				return n;
+			}
+		}
+		Node node = new Node(nw, ne, sw, se);
+		insert(node);
+		return node;
+	}
+
+	private void insert(Node node) {
+		if (nodeCount > table.length * 3 / 4) {
+			growTable();
+		}
+		int bucket = node.hash & (table.length - 1);
+		node.next = table[bucket];
+		table[bucket] = node;
+		nodeCount++;
+	}
+
+	private void growTable() {
+		Node[] old = table;
+		table = new Node[old.length * 2];
+		for (Node head : old) {
+			Node n = head;
+			while (n != null) {
+				Node next = n.next;
+				int bucket = n.hash & (table.length - 1);
+				n.next = table[bucket];
+				table[bucket] = n;
+				n = next;
+			}
+		}
+	}
+
+	private static int computeHash(Node nw, Node ne, Node sw, Node se) {
+		int hash = nw.hash;
+		hash = hash * 0x9E3779B1 + ne.hash;
+		hash = hash * 0x9E3779B1 + sw.hash;
+		hash = hash * 0x9E3779B1 + se.hash;
+		return hash ^ (hash >>> 16);
+	}
+
+	private static Node getLeaf(boolean alive) {
+		return alive ? ALIVE : DEAD;
+	}
+
+	private Node getEmptyNode(int level) {
+		if (level >= emptyNodes.length) {
+			Node[] nodes = Arrays.copyOf(emptyNodes, level + 1);
+			for (int l = emptyNodes.length; l <= level; l++) {
+				nodes[l] = join(nodes[l - 1], nodes[l - 1], nodes[l - 1], nodes[l - 1]);
+			}
+			emptyNodes = nodes;
+		}
+		return emptyNodes[level];
+	}
+
+	/**
+	 * @return a node twice as big with the given node at its center.
+	 */
+	private Node expand(Node node) {
+		Node border = getEmptyNode(node.level - 1);
+		return join(join(border, border, border, node.nw), join(border, border, node.ne, border),
+				join(border, node.sw, border, border), join(node.se, border, border, border));
+	}
+
+	/**
+	 * @return the node of the level below at the center of the given node.
+	 */
+	private Node getCenter(Node node) {
+		return join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+	}
+
+	private Node centerHorizontal(Node west, Node east) {
+		return join(west.ne, east.nw, west.se, east.sw);
+	}
+
+	private Node centerVertical(Node north, Node south) {
+		return join(north.sw, north.se, south.nw, south.ne);
+	}
+
+	/**
+	 * @return the state of the cell at the given coordinates, relative to the top left corner of the node.
+	 */
+	private static boolean getCell(Node node, long y, long x) {
+		while (node.level > 0) {
+			if (node.population == 0) {
+				return false;
+			}
+			long half = 1L << (node.level - 1);
+			if (y < half) {
+				node = x < half ? node.nw : node.ne;
+			} else {
+				node = x < half ? node.sw : node.se;
+				y -= half;
+			}
+			if (x >= half) {
+				x -= half;
+			}
+		}
+		return node == ALIVE;
+	}
+
+	/**
+	 * @return a copy of the node with the cell at the given coordinates (relative to its top left corner) changed.
+	 */
+	private Node setCell(Node node, long y, long x, boolean alive) {
+		if (node.level == 0) {
+			return getLeaf(alive);
+		}
+		long half = 1L << (node.level - 1);
+		if (y < half) {
+			if (x < half) {
+				return join(setCell(node.nw, y, x, alive), node.ne, node.sw, node.se);
+			}
+			return join(node.nw, setCell(node.ne, y, x - half, alive), node.sw, node.se);
+		}
+		if (x < half) {
+			return join(node.nw, node.ne, setCell(node.sw, y - half, x, alive), node.se);
+		}
+		return join(node.nw, node.ne, node.sw, setCell(node.se, y - half, x - half, alive));
+	}
+
+	/**
+	 * @return half the size of the root, the root covers the coordinates from -half to half - 1.
+	 */
+	private long getRootHalf() {
+		return 1L << (root.level - 1);
+	}
+
+	@Override
+	public boolean getCell(int y, int x) {
+		long half = getRootHalf();
+		if (y < -half || y >= half || x < -half || x >= half) {
+			return false;
+		}
+		return getCell(root, y + half, x + half);
+	}
+
+	@Override
+	public void setCell(int y, int x, boolean alive) {
+		while (y < -getRootHalf() || y >= getRootHalf() || x < -getRootHalf() || x >= getRootHalf()) {
+			root = expand(root);
+		}
+		long half = getRootHalf();
+		root = setCell(root, y + half, x + half, alive);
+		evictIfFull();
+	}
+
+	@Override
+	public void resize(int newWidth, int newHeight) {
+		// The grid is only a window on the plane.
+		this.width = newWidth;
+		this.height = newHeight;
+	}
+
+	@Override
+	public void fill(boolean alive) {
+		root = getEmptyNode(root.level);
+		if (alive) {
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					setCell(y, x, true);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void writeSnapshot(BitSet bitField) {
+		long half = getRootHalf();
+		writeSnapshot(bitField, root, -half, -half);
+	}
+
+	/**
+	 * Set the bits of the living cells of the node that are within the grid.
+	 *
+	 * @param y the row of the top left corner of the node.
+	 * @param x the column of the top left corner of the node.
+	 */
+	private void writeSnapshot(BitSet bitField, Node node, long y, long x) {
+		long size = 1L << node.level;
+		// Skip the empty nodes and the ones outside of the grid.
+		if (node.population == 0 || y >= height || x >= width || y + size <= 0 || x + size <= 0) {
+			return;
+		}
+		if (node.level == 0) {
+			bitField.set((int) (width * y + x));
+			return;
+		}
+		long half = size / 2;
+		writeSnapshot(bitField, node.nw, y, x);
+		writeSnapshot(bitField, node.ne, y, x + half);
+		writeSnapshot(bitField, node.sw, y + half, x);
+		writeSnapshot(bitField, node.se, y + half, x + half);
+	}
+
+	@Override
+	public void readSnapshot(BitSet bitField) {
+		fill(false);
+		int size = width * height;
+		for (int idx = bitField.nextSetBit(0); idx >= 0 && idx < size; idx = bitField.nextSetBit(idx + 1)) {
+			setCell(idx / width, idx % width, true);
+		}
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public boolean isUnbounded() {
+		return true;
+	}
+
+	@Override
+	public long getPopulation() {
+		return root.population;
+	}
+
+	/**
+	 * @return the number of nodes currently held in the node table.
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+}
@@ -0,0 +1,293 @@
+package engine;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Same layout as the packed engine (64 cells per long, each row start on a new word) but both generations are stored
+ * outside of the Java heap in direct buffers. The garbage collector never scans the cells, so its pauses do not depend
+ * on the grid size. Only 3 rows of the current generation and the row being computed are copied on the heap during a
+ * step.
+ *
+ * The buffers are freed as soon as they are not used anymore (on resize or release) instead of waiting for the garbage
+ * collector.
+ *
+ * @author Jean-Hugo
+ */
+public class OffHeapGridEngine implements GridEngine {
+
+	// The Unsafe instance and its invokeCleaner method, used to free the direct buffers. They are null if they are not
+	// available, the buffers are then freed by the garbage collector.
+	private static Object unsafe;
+	private static Method invokeCleaner;
+
+	static {
+		try {
+			// Found by reflection so the build does not depend on the internal API.
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			System.err.println("Cannot free the direct buffers explicitly: " + e);
+		}
+	}
+
+	// The grid dimensions in cells.
+	private int width;
+	private int height;
+	// The number of long used to store a row.
+	private int wordsPerRow;
+
+	// The direct buffers holding the current and the next generation, swapped after each step.
+	private ByteBuffer cellsMemory;
+	private ByteBuffer nextCellsMemory;
+	// The long views of the buffers above.
+	private LongBuffer cells;
+	private LongBuffer nextCells;
+
+	// The rows above, at and below the computed row.
+	private long[] window;
+	// The next state of the computed row.
+	private long[] nextRow;
+	// What is beyond the borders.
+	private Topology topology = Topology.TORUS;
+
+	public OffHeapGridEngine(int width, int height) {
+		allocate(width, height);
+	}
+
+	/**
+	 * Allocate the buffers for the given dimensions, the cells are all dead.
+	 */
+	private void allocate(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.wordsPerRow = PackedGridEngine.getWordsPerRow(width);
+		long bytes = (long) wordsPerRow * height * Long.BYTES;
+		if (bytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Grid too big for a direct buffer: " + width + "x" + height);
+		}
+		cellsMemory = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+		nextCellsMemory = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+		cells = cellsMemory.asLongBuffer();
+		nextCells = nextCellsMemory.asLongBuffer();
+		window = new long[wordsPerRow * 3];
+		nextRow = new long[wordsPerRow];
+	}
+
+	@Override
+	public void step(int birthMask, int survivalMask) {
+		// The offsets of the rows in the window, rotated after each row.
+		int above = 0;
+		int row = wordsPerRow;
+		int below = wordsPerRow * 2;
+		boolean torus = topology == Topology.TORUS;
+		loadRow(-1, above);
+		loadRow(0, row);
+		loadRow(1, below);
+
+		for (int y = 0; y < height; y++) {
+			for (int i = 0; i < wordsPerRow; i++) {
+				nextRow[i] = PackedGridEngine.nextWord(window, above, row, below, i, wordsPerRow, width, birthMask,
+						survivalMask, torus);
+			}
+			nextCells.put(y * wordsPerRow, nextRow, 0, wordsPerRow);
+
+			int tmp = above;
+			above = row;
+			row = below;
+			below = tmp;
+			loadRow(y + 2, below);
+		}
+
+		LongBuffer tmp = cells;
+		cells = nextCells;
+		nextCells = tmp;
+		ByteBuffer tmpMemory = cellsMemory;
+		cellsMemory = nextCellsMemory;
+		nextCellsMemory = tmpMemory;
+	}
+
+	/**
+	 * Copy the given row of the current generation in the window. The rows beyond the borders are the rows of the other
+	 * side on a torus, or empty rows.
+	 */
+	private void loadRow(int y, int offset) {
+		if (y >= 0 && y < height || topology == Topology.TORUS) {
+			cells.get(Math.floorMod(y, height) * wordsPerRow, window, offset, wordsPerRow);
+		} else {
+			Arrays.fill(window, offset, offset + wordsPerRow, 0L);
+		}
+	}
+
+	@Override
+	public boolean setTopology(Topology topology) {
+		this.topology = topology;
+		return true;
+	}
+
+	@Override
+	public Topology getTopology() {
+		return topology;
+	}
+
+	@Override
+	public void resize(int newWidth, int newHeight) {
+		LongBuffer oldCells = cells;
+		ByteBuffer oldMemory = cellsMemory;
+		ByteBuffer oldNextMemory = nextCellsMemory;
+		int oldWordsPerRow = wordsPerRow;
+		int rows = Math.min(height, newHeight);
+
+		allocate(newWidth, newHeight);
+
+		int words = Math.min(oldWordsPerRow, wordsPerRow);
+		for (int y = 0; y < rows; y++) {
+			oldCells.get(y * oldWordsPerRow, nextRow, 0, words);
+			// Kill the cells beyond the new border.
+			nextRow[wordsPerRow - 1] &= PackedGridEngine.lastWordMask(newWidth);
+			cells.put(y * wordsPerRow, nextRow, 0, words);
+		}
+		free(oldMemory);
+		free(oldNextMemory);
+	}
+
+	@Override
+	public void fill(boolean alive) {
+		Arrays.fill(nextRow, alive ? -1L : 0L);
+		nextRow[wordsPerRow - 1] &= PackedGridEngine.lastWordMask(width);
+		for (int y = 0; y < height; y++) {
+			cells.put(y * wordsPerRow, nextRow, 0, wordsPerRow);
+		}
+	}
+
+	@Override
+	public boolean getCell(int y, int x) {
+		return (cells.get(y * wordsPerRow + (x >> 6)) & (1L << x)) != 0;
+	}
+
+	@Override
+	public void setCell(int y, int x, boolean alive) {
+		int idx = y * wordsPerRow + (x >> 6);
+		long word = cells.get(idx);
+		cells.put(idx, alive ? word | (1L << x) : word & ~(1L << x));
+	}
+
+	@Override
+	public void copyRow(int y, long[] words) {
+		cells.get(y * wordsPerRow, words, 0, wordsPerRow);
+		Arrays.fill(words, wordsPerRow, words.length, 0L);
+	}
+
+	@Override
+	public void setRow(int y, long[] words) {
+		cells.put(y * wordsPerRow, words, 0, wordsPerRow);
+		cells.put(y * wordsPerRow + wordsPerRow - 1, words[wordsPerRow - 1] & PackedGridEngine.lastWordMask(width));
+	}
+
+	@Override
+	public void writeSnapshot(BitSet bitField) {
+		for (int y = 0; y < height; y++) {
+			for (int i = 0; i < wordsPerRow; i++) {
+				long word = cells.get(y * wordsPerRow + i);
+				// Only visit the living cells of the word.
+				while (word != 0) {
+					int bit = Long.numberOfTrailingZeros(word);
+					bitField.set(width * y + i * PackedGridEngine.WORD_SIZE + bit);
+					word &= word - 1;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void readSnapshot(BitSet bitField) {
+		fill(false);
+		int size = width * height;
+		for (int idx = bitField.nextSetBit(0); idx >= 0 && idx < size; idx = bitField.nextSetBit(idx + 1)) {
+			setCell(idx / width, idx % width, true);
+		}
+	}
+
+	/**
+	 * Encode the rows straight from the buffer without building a BitSet. When the width is a multiple of 64 the rows
+	 * are contiguous in the snapshot too and the whole buffer is copied at once.
+	 */
+	@Override
+	public byte[] encodeSnapshot() {
+		long bits = (long) width * height;
+		ByteBuffer encoded = ByteBuffer.allocate((int) ((bits + Long.SIZE - 1) / Long.SIZE) * Long.BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+
+		PackedGridEngine.copySnapshot(cells, width, height, encoded.asLongBuffer());
+
+		// Like BitSet.toByteArray, the trailing empty bytes are not sent.
+		int length = encoded.capacity();
+		while (length > 0 && encoded.get(length - 1) == 0) {
+			length--;
+		}
+		return Arrays.copyOf(encoded.array(), length);
+	}
+
+	@Override
+	public void copySnapshot(long[] words) {
+		LongBuffer snapshot = LongBuffer.wrap(words);
+		PackedGridEngine.copySnapshot(cells, width, height, snapshot);
+		Arrays.fill(words, snapshot.position(), words.length, 0);
+	}
+
+	@Override
+	public long fingerprint() {
+		return GridEngine.fingerprint(cells);
+	}
+
+	@Override
+	public long getPopulation() {
+		long population = 0;
+		for (int i = 0; i < cells.limit(); i++) {
+			population += Long.bitCount(cells.get(i));
+		}
+		return population;
+	}
+
+	@Override
+	public void release() {
+		free(cellsMemory);
+		free(nextCellsMemory);
+		cellsMemory = null;
+		nextCellsMemory = null;
+		cells = null;
+		nextCells = null;
+	}
+
+	/**
+	 * Free the memory of the given direct buffer now, it must not be used anymore.
+	 */
+	private static void free(ByteBuffer buffer) {
+		if (invokeCleaner != null && buffer != null) {
+			try {
+				invokeCleaner.invoke(unsafe, buffer);
+			} catch (ReflectiveOperationException e) {
+				// The garbage collector will free it.
+			}
+		}
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+}
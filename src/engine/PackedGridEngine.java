@@ -0,0 +1,676 @@
+package engine;
+
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class hold the grid cells packed 64 per long (one bit per cell) and compute a whole generation with bitwise
+ * operations. Each long of a row is processed at once: the 8 neighbors of the 64 cells are summed with bit sliced adders
+ * (carry save) so we never have to count the neighbors cell by cell.
+ *
+ * The rows are stored one after another in a single array, each row start on a new word. The bits beyond the grid width
+ * in the last word of a row are always kept to 0. An empty row after the last one is used as the row beyond the borders
+ * of a bounded grid.
+ *
+ * The generation can be computed in parallel: the grid is split in bands of rows that only read the current generation
+ * and write their own rows of the next one, so no locking is needed and the result is the same as the sequential step.
+ *
+ * The grid is also split in tiles of 64x64 cells (one word wide) to track the changes. A tile whose content and whose
+ * neighbors content did not change during the last generation cannot change in the next one, so it is skipped. The
+ * tiles changed by the last generation (or edited since) are available as dirty regions. The hash and the population of
+ * each tile are kept too, so the fingerprint and the population of the grid only read the tiles changed since they were
+ * last asked.
+ *
+ * @author Jean-Hugo
+ */
+public class PackedGridEngine implements GridEngine {
+
+	// The number of cells stored in a word.
+	static final int WORD_SIZE = Long.SIZE;
+	// Below this number of cells the parallel mode fall back to the sequential step since it is not worth splitting.
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 256 * 256;
+	// The number of rows of a tile, a tile is one word wide.
+	static final int TILE_ROWS = 64;
+
+	// The grid dimensions in cells.
+	private int width;
+	private int height;
+	// The number of long used to store a row.
+	private int wordsPerRow;
+
+	// The current generation, rows are stored one after another followed by an empty row.
+	private long[] cells;
+	// Used to calculate the next generation without interfering with the current one, swapped with cells after each step.
+	// For the tiles that did not change during the last generation it holds the same content as the current generation.
+	private long[] nextCells;
+	// What is beyond the borders.
+	private Topology topology = Topology.TORUS;
+
+	// The number of tiles in a row and in a column.
+	private int tileColumns;
+	private int tileRows;
+	// Whether each tile has changed during the last generation or has been edited since.
+	private boolean[] changedTiles;
+	// Filled during a step, swapped with changedTiles after each step.
+	private boolean[] nextChangedTiles;
+	// Whether each tile has changed since its hash and its population were computed.
+	private boolean[] staleTiles;
+	// The hash and the population of each tile, and their sums over the grid.
+	private long[] tileHashes;
+	private int[] tilePopulations;
+	private long hashSum;
+	private long populationSum;
+
+	// The pool computing the bands of rows in parallel, null if the steps are sequential.
+	private ForkJoinPool pool;
+	// The number of cells from which the steps are done in parallel.
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+	/**
+	 * Compute a band of tile rows of the next generation, split in 2 halves while the band is big enough.
+	 */
+	private class StepBandTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int fromTileRow;
+		private final int toTileRow;
+		private final int minimumTileRows;
+		private final int birthMask;
+		private final int survivalMask;
+
+		StepBandTask(int fromTileRow, int toTileRow, int minimumTileRows, int birthMask, int survivalMask) {
+			this.fromTileRow = fromTileRow;
+			this.toTileRow = toTileRow;
+			this.minimumTileRows = minimumTileRows;
+			this.birthMask = birthMask;
+			this.survivalMask = survivalMask;
+		}
+
+		@Override
+		protected void compute() {
+			if (toTileRow - fromTileRow <= minimumTileRows) {
+				stepTileRows(fromTileRow, toTileRow, birthMask, survivalMask);
+			} else {
+				int middle = (fromTileRow + toTileRow) >>> 1;
+				invokeAll(new StepBandTask(fromTileRow, middle, minimumTileRows, birthMask, survivalMask),
+						new StepBandTask(middle, toTileRow, minimumTileRows, birthMask, survivalMask));
+			}
+		}
+	}
+
+	public PackedGridEngine(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.wordsPerRow = getWordsPerRow(width);
+		this.cells = new long[wordsPerRow * (height + 1)];
+		this.nextCells = new long[wordsPerRow * (height + 1)];
+		allocateTiles();
+	}
+
+	@Override
+	public void step(int birthMask, int survivalMask) {
+		if (pool != null && (long) width * height >= parallelThreshold) {
+			// Several bands per thread so a slow band does not leave the other threads idle.
+			int minimumTileRows = Math.max(1, tileRows / (pool.getParallelism() * 4));
+			pool.invoke(new StepBandTask(0, tileRows, minimumTileRows, birthMask, survivalMask));
+		} else {
+			stepTileRows(0, tileRows, birthMask, survivalMask);
+		}
+		long[] tmp = cells;
+		cells = nextCells;
+		nextCells = tmp;
+		boolean[] tmpTiles = changedTiles;
+		changedTiles = nextChangedTiles;
+		nextChangedTiles = tmpTiles;
+		for (int i = 0; i < changedTiles.length; i++) {
+			staleTiles[i] |= changedTiles[i];
+		}
+	}
+
+	/**
+	 * Compute the given tile rows of the next generation, skipping the tiles that cannot change.
+	 *
+	 * @param fromTileRow the first tile row to compute.
+	 * @param toTileRow the tile row after the last one to compute.
+	 */
+	private void stepTileRows(int fromTileRow, int toTileRow, int birthMask, int survivalMask) {
+		boolean[] activeTiles = new boolean[tileColumns];
+		for (int tileY = fromTileRow; tileY < toTileRow; tileY++) {
+			int fromRow = tileY * TILE_ROWS;
+			int toRow = Math.min(height, fromRow + TILE_ROWS);
+			int tiles = tileY * tileColumns;
+
+			for (int tileX = 0; tileX < tileColumns; tileX++) {
+				activeTiles[tileX] = isTileActive(tileY, tileX);
+				// A skipped tile already hold the right content in the next generation.
+				nextChangedTiles[tiles + tileX] = false;
+			}
+
+			// The row used beyond the top and the bottom borders.
+			int outside = topology == Topology.TORUS ? -1 : height;
+			for (int y = fromRow; y < toRow; y++) {
+				int above = (y == 0 ? (outside < 0 ? height - 1 : outside) : y - 1) * wordsPerRow;
+				int below = (y == height - 1 ? (outside < 0 ? 0 : outside) : y + 1) * wordsPerRow;
+				int row = y * wordsPerRow;
+
+				// Compute each run of contiguous active tiles at once.
+				int tileX = 0;
+				while (tileX < tileColumns) {
+					if (!activeTiles[tileX]) {
+						tileX++;
+						continue;
+					}
+					int first = tileX;
+					while (tileX < tileColumns && activeTiles[tileX]) {
+						tileX++;
+					}
+					stepWords(cells, nextCells, above, row, below, first, tileX, wordsPerRow, width, birthMask, survivalMask);
+					for (int i = first; i < tileX; i++) {
+						nextChangedTiles[tiles + i] |= nextCells[row + i] != cells[row + i];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compute the next state of the words from (inclusive) to (exclusive) of a row. Overridden by the engines able to
+	 * compute several words at once.
+	 *
+	 * @param src the array holding the current generation.
+	 * @param dst the array receiving the next generation.
+	 * @see #nextWord(long[], int, int, int, int, int, int, int, int, boolean)
+	 */
+	void stepWords(long[] src, long[] dst, int above, int row, int below, int from, int to, int words, int width,
+			int birthMask, int survivalMask) {
+		boolean torus = topology == Topology.TORUS;
+		for (int i = from; i < to; i++) {
+			dst[row + i] = nextWord(src, above, row, below, i, words, width, birthMask, survivalMask, torus);
+		}
+	}
+
+	/**
+	 * @return whether the tile or one of its neighbors has changed during the last generation.
+	 */
+	private boolean isTileActive(int tileY, int tileX) {
+		for (int dy = -1; dy <= 1; dy++) {
+			int y = (tileY + dy + tileRows) % tileRows;
+			for (int dx = -1; dx <= 1; dx++) {
+				int x = (tileX + dx + tileColumns) % tileColumns;
+				if (changedTiles[y * tileColumns + x]) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Allocate the tiles for the current grid dimensions, they are all marked as changed.
+	 */
+	private void allocateTiles() {
+		tileColumns = wordsPerRow;
+		tileRows = (height + TILE_ROWS - 1) / TILE_ROWS;
+		changedTiles = new boolean[tileColumns * tileRows];
+		nextChangedTiles = new boolean[tileColumns * tileRows];
+		staleTiles = new boolean[tileColumns * tileRows];
+		tileHashes = new long[tileColumns * tileRows];
+		tilePopulations = new int[tileColumns * tileRows];
+		hashSum = 0;
+		populationSum = 0;
+		markAllChanged();
+	}
+
+	/**
+	 * Mark the tile holding the given cell as changed.
+	 */
+	private void markChanged(int y, int x) {
+		int tile = (y / TILE_ROWS) * tileColumns + (x >> 6);
+		changedTiles[tile] = true;
+		staleTiles[tile] = true;
+	}
+
+	private void markAllChanged() {
+		Arrays.fill(changedTiles, true);
+		Arrays.fill(staleTiles, true);
+	}
+
+	/**
+	 * Compute again the hash and the population of the tiles changed since they were last computed.
+	 */
+	private void refreshTiles() {
+		for (int tile = 0; tile < staleTiles.length; tile++) {
+			if (!staleTiles[tile]) {
+				continue;
+			}
+			staleTiles[tile] = false;
+			int tileX = tile % tileColumns;
+			int fromRow = (tile / tileColumns) * TILE_ROWS;
+			int toRow = Math.min(height, fromRow + TILE_ROWS);
+			// The tile index is mixed in so the same content in 2 tiles does not cancel out.
+			long hash = tile * 0x9E3779B97F4A7C15L;
+			int population = 0;
+			for (int y = fromRow; y < toRow; y++) {
+				long word = cells[y * wordsPerRow + tileX];
+				hash = (hash ^ word) * 0xBF58476D1CE4E5B9L;
+				hash ^= hash >>> 31;
+				population += Long.bitCount(word);
+			}
+			hashSum += hash - tileHashes[tile];
+			populationSum += population - tilePopulations[tile];
+			tileHashes[tile] = hash;
+			tilePopulations[tile] = population;
+		}
+	}
+
+	/**
+	 * @return the rectangles (in cells) of the tiles changed by the last generation or edited since. The contiguous tiles
+	 * of a tile row are merged.
+	 */
+	@Override
+	public List<Rectangle> getDirtyRegions() {
+		List<Rectangle> regions = new ArrayList<Rectangle>();
+		for (int tileY = 0; tileY < tileRows; tileY++) {
+			int tileX = 0;
+			while (tileX < tileColumns) {
+				if (!changedTiles[tileY * tileColumns + tileX]) {
+					tileX++;
+					continue;
+				}
+				int first = tileX;
+				while (tileX < tileColumns && changedTiles[tileY * tileColumns + tileX]) {
+					tileX++;
+				}
+				int x = first * WORD_SIZE;
+				int y = tileY * TILE_ROWS;
+				regions.add(new Rectangle(x, y, Math.min(width, tileX * WORD_SIZE) - x, Math.min(height, y + TILE_ROWS) - y));
+			}
+		}
+		return regions;
+	}
+
+	/**
+	 * Compute the next state of a word of a row, the row above and the row below are used to count the neighbors.
+	 * On a torus the row wrap horizontally so the first and the last cells are neighbors, otherwise the cells beyond the
+	 * row ends are dead.
+	 *
+	 * @param src the array holding the current generation.
+	 * @param above the offset of the row above in src.
+	 * @param row the offset of the row in src.
+	 * @param below the offset of the row below in src.
+	 * @param i the index of the word in the row.
+	 * @param words the number of words in a row.
+	 * @param width the number of cells in a row.
+	 * @param birthMask the bit n is set if a dead cell with n neighbors become alive.
+	 * @param survivalMask the bit n is set if a living cell with n neighbors stay alive.
+	 * @param torus whether the row wrap horizontally.
+	 * @return the next state of the 64 cells of the word.
+	 */
+	static long nextWord(long[] src, int above, int row, int below, int i, int words, int width,
+			int birthMask, int survivalMask, boolean torus) {
+
+		// Position of the last cell of the row in the last word.
+		int lastBit = (width - 1) & (WORD_SIZE - 1);
+		int last = words - 1;
+
+		long a = src[above + i];
+		long c = src[row + i];
+		long b = src[below + i];
+
+		// The neighbors on the left of each cell (the bit x hold the cell x - 1).
+		long aw = a << 1;
+		long cw = c << 1;
+		long bw = b << 1;
+		// The neighbors on the right of each cell (the bit x hold the cell x + 1).
+		long ae = a >>> 1;
+		long ce = c >>> 1;
+		long be = b >>> 1;
+
+		if (i > 0) {
+			aw |= src[above + i - 1] >>> (WORD_SIZE - 1);
+			cw |= src[row + i - 1] >>> (WORD_SIZE - 1);
+			bw |= src[below + i - 1] >>> (WORD_SIZE - 1);
+		} else if (torus) {
+			// Wrap to the last cell of the row.
+			aw |= (src[above + last] >>> lastBit) & 1L;
+			cw |= (src[row + last] >>> lastBit) & 1L;
+			bw |= (src[below + last] >>> lastBit) & 1L;
+		}
+		if (i < last) {
+			ae |= src[above + i + 1] << (WORD_SIZE - 1);
+			ce |= src[row + i + 1] << (WORD_SIZE - 1);
+			be |= src[below + i + 1] << (WORD_SIZE - 1);
+		} else if (torus) {
+			// Wrap to the first cell of the row.
+			ae |= (src[above] & 1L) << lastBit;
+			ce |= (src[row] & 1L) << lastBit;
+			be |= (src[below] & 1L) << lastBit;
+		}
+
+		long next = nextState(c, aw, a, ae, cw, ce, bw, b, be, birthMask, survivalMask);
+
+		if (i == last) {
+			// Keep the bits beyond the grid width to 0.
+			next &= lastWordMask(width);
+		}
+		return next;
+	}
+
+	/**
+	 * Sum the 8 neighbors words with bit sliced adders and apply the rule on the 64 cells at once.
+	 *
+	 * @return the next state of the 64 cells.
+	 */
+	static long nextState(long c, long aw, long a, long ae, long cw, long ce, long bw, long b, long be,
+			int birthMask, int survivalMask) {
+
+		// Full adder on the row above and the row below, half adder on the left and right neighbors.
+		long aOnes = aw ^ a ^ ae;
+		long aTwos = (aw & a) | (ae & (aw ^ a));
+		long bOnes = bw ^ b ^ be;
+		long bTwos = (bw & b) | (be & (bw ^ b));
+		long cOnes = cw ^ ce;
+		long cTwos = cw & ce;
+
+		// Add the 3 partial sums of weight 1.
+		long ones = aOnes ^ bOnes ^ cOnes;
+		long onesCarry = (aOnes & bOnes) | (cOnes & (aOnes ^ bOnes));
+
+		// Add the 4 partial sums of weight 2.
+		long partialTwos = aTwos ^ bTwos ^ cTwos;
+		long partialFours = (aTwos & bTwos) | (cTwos & (aTwos ^ bTwos));
+		long twos = partialTwos ^ onesCarry;
+		long twosCarry = partialTwos & onesCarry;
+		long fours = partialFours ^ twosCarry;
+		long eights = partialFours & twosCarry;
+
+		long survive = matchCounts(survivalMask, ones, twos, fours, eights);
+		long born = matchCounts(birthMask, ones, twos, fours, eights);
+
+		return (c & survive) | (~c & born);
+	}
+
+	/**
+	 * @param countMask the bit n is set if the count n should match.
+	 * @return a word where the bit x is set if the neighbors count of the cell x is in the count mask.
+	 */
+	static long matchCounts(int countMask, long ones, long twos, long fours, long eights) {
+		long match = 0;
+		for (int count = 0; count <= 8; count++) {
+			if ((countMask & (1 << count)) != 0) {
+				match |= ((count & 1) != 0 ? ones : ~ones)
+						& ((count & 2) != 0 ? twos : ~twos)
+						& ((count & 4) != 0 ? fours : ~fours)
+						& ((count & 8) != 0 ? eights : ~eights);
+			}
+		}
+		return match;
+	}
+
+	@Override
+	public void resize(int newWidth, int newHeight) {
+		int newWordsPerRow = getWordsPerRow(newWidth);
+		long[] newCells = new long[newWordsPerRow * (newHeight + 1)];
+
+		int rows = Math.min(height, newHeight);
+		int words = Math.min(wordsPerRow, newWordsPerRow);
+		for (int y = 0; y < rows; y++) {
+			System.arraycopy(cells, y * wordsPerRow, newCells, y * newWordsPerRow, words);
+			// Kill the cells beyond the new border.
+			newCells[y * newWordsPerRow + newWordsPerRow - 1] &= lastWordMask(newWidth);
+		}
+
+		this.width = newWidth;
+		this.height = newHeight;
+		this.wordsPerRow = newWordsPerRow;
+		this.cells = newCells;
+		this.nextCells = new long[newWordsPerRow * (newHeight + 1)];
+		allocateTiles();
+	}
+
+	@Override
+	public void fill(boolean alive) {
+		for (int y = 0; y < height; y++) {
+			for (int i = 0; i < wordsPerRow; i++) {
+				cells[y * wordsPerRow + i] = alive ? -1L : 0L;
+			}
+			cells[y * wordsPerRow + wordsPerRow - 1] &= lastWordMask(width);
+		}
+		markAllChanged();
+	}
+
+	@Override
+	public boolean getCell(int y, int x) {
+		return (cells[y * wordsPerRow + (x >> 6)] & (1L << x)) != 0;
+	}
+
+	@Override
+	public void setCell(int y, int x, boolean alive) {
+		int idx = y * wordsPerRow + (x >> 6);
+		if (alive) {
+			cells[idx] |= 1L << x;
+		} else {
+			cells[idx] &= ~(1L << x);
+		}
+		markChanged(y, x);
+	}
+
+	/**
+	 * Set the run a word at a time.
+	 */
+	@Override
+	public void setRun(int y, int x, int length, boolean alive) {
+		int end = x + length;
+		while (x < end) {
+			int bits = Math.min(end - x, WORD_SIZE - (x & (WORD_SIZE - 1)));
+			long mask = (bits == WORD_SIZE ? -1L : (1L << bits) - 1) << x;
+			int idx = y * wordsPerRow + (x >> 6);
+			cells[idx] = alive ? cells[idx] | mask : cells[idx] & ~mask;
+			markChanged(y, x);
+			x += bits;
+		}
+	}
+
+	/**
+	 * The rows are already stored in this layout.
+	 */
+	@Override
+	public void copyRow(int y, long[] words) {
+		System.arraycopy(cells, y * wordsPerRow, words, 0, wordsPerRow);
+		Arrays.fill(words, wordsPerRow, words.length, 0L);
+	}
+
+	/**
+	 * Only the tiles whose words differ are marked as changed.
+	 */
+	@Override
+	public void setRow(int y, long[] words) {
+		for (int i = 0; i < wordsPerRow; i++) {
+			long word = i == wordsPerRow - 1 ? words[i] & lastWordMask(width) : words[i];
+			if (cells[y * wordsPerRow + i] != word) {
+				cells[y * wordsPerRow + i] = word;
+				markChanged(y, i * WORD_SIZE);
+			}
+		}
+	}
+
+	@Override
+	public void writeSnapshot(BitSet bitField) {
+		for (int y = 0; y < height; y++) {
+			for (int i = 0; i < wordsPerRow; i++) {
+				long word = cells[y * wordsPerRow + i];
+				// Only visit the living cells of the word.
+				while (word != 0) {
+					int bit = Long.numberOfTrailingZeros(word);
+					bitField.set(width * y + i * WORD_SIZE + bit);
+					word &= word - 1;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void readSnapshot(BitSet bitField) {
+		fill(false);
+		int size = width * height;
+		for (int idx = bitField.nextSetBit(0); idx >= 0 && idx < size; idx = bitField.nextSetBit(idx + 1)) {
+			setCell(idx / width, idx % width, true);
+		}
+	}
+
+	/**
+	 * Read the rows word by word instead of cell by cell.
+	 */
+	@Override
+	public void decodeSnapshot(ByteBuffer bytes) {
+		ByteBuffer snapshot = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+		long lastMask = lastWordMask(width);
+		for (int y = 0; y < height; y++) {
+			for (int i = 0; i < wordsPerRow; i++) {
+				// The position of the first cell of the word in the snapshot.
+				long position = (long) width * y + (long) i * WORD_SIZE;
+				int index = (int) (position >>> 6);
+				int shift = (int) (position & (WORD_SIZE - 1));
+				long word = getSnapshotWord(snapshot, index) >>> shift;
+				if (shift != 0) {
+					word |= getSnapshotWord(snapshot, index + 1) << (WORD_SIZE - shift);
+				}
+				cells[y * wordsPerRow + i] = i == wordsPerRow - 1 ? word & lastMask : word;
+			}
+		}
+		markAllChanged();
+	}
+
+	@Override
+	public boolean setTopology(Topology topology) {
+		this.topology = topology;
+		// The tiles on the borders may change.
+		Arrays.fill(changedTiles, true);
+		return true;
+	}
+
+	@Override
+	public Topology getTopology() {
+		return topology;
+	}
+
+	@Override
+	public void copySnapshot(long[] words) {
+		LongBuffer snapshot = LongBuffer.wrap(words);
+		copySnapshot(LongBuffer.wrap(cells), width, height, snapshot);
+		Arrays.fill(words, snapshot.position(), words.length, 0);
+	}
+
+	/**
+	 * Put the rows of the given cells (each row starting on a new word) one after the other in the words, without the
+	 * padding bits at the end of the rows. When the width is a multiple of 64 there is no padding and the words are
+	 * copied at once. The words after the last one put are left as they are.
+	 */
+	static void copySnapshot(LongBuffer cells, int width, int height, LongBuffer words) {
+		int wordsPerRow = getWordsPerRow(width);
+		if (width % WORD_SIZE == 0) {
+			words.put(cells.duplicate().clear().limit(wordsPerRow * height));
+		} else {
+			// The bits waiting to be written and their number.
+			long pending = 0;
+			int pendingBits = 0;
+			for (int y = 0; y < height; y++) {
+				for (int i = 0; i < wordsPerRow; i++) {
+					long word = cells.get(y * wordsPerRow + i);
+					int wordBits = i < wordsPerRow - 1 ? WORD_SIZE : width - i * WORD_SIZE;
+					pending |= word << pendingBits;
+					if (pendingBits + wordBits >= WORD_SIZE) {
+						words.put(pending);
+						// The bits of the word that did not fit.
+						pending = pendingBits == 0 ? 0 : word >>> (WORD_SIZE - pendingBits);
+						pendingBits = pendingBits + wordBits - WORD_SIZE;
+					} else {
+						pendingBits += wordBits;
+					}
+				}
+			}
+			if (pendingBits > 0) {
+				words.put(pending);
+			}
+		}
+	}
+
+	/**
+	 * @return the word at the given index of the snapshot, the missing trailing bytes are empty.
+	 */
+	private static long getSnapshotWord(ByteBuffer snapshot, int index) {
+		int offset = index * Long.BYTES;
+		if (offset + Long.BYTES <= snapshot.limit()) {
+			return snapshot.getLong(offset);
+		}
+		long word = 0;
+		for (int i = offset; i < snapshot.limit(); i++) {
+			word |= (snapshot.get(i) & 0xFFL) << ((i - offset) * Byte.SIZE);
+		}
+		return word;
+	}
+
+	/**
+	 * Compute the next generations in parallel on the given pool.
+	 *
+	 * @param pool the pool computing the bands of rows, null to go back to sequential steps.
+	 * @param threshold the number of cells below which the steps stay sequential.
+	 */
+	public void setParallelMode(ForkJoinPool pool, int threshold) {
+		this.pool = pool;
+		this.parallelThreshold = threshold;
+	}
+
+	/**
+	 * Only the tiles changed since the last call are hashed again.
+	 */
+	@Override
+	public long fingerprint() {
+		refreshTiles();
+		return hashSum;
+	}
+
+	/**
+	 * Only the tiles changed since the last call are counted again.
+	 */
+	@Override
+	public long getPopulation() {
+		refreshTiles();
+		return populationSum;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the number of words needed to store a row of the given width.
+	 */
+	static int getWordsPerRow(int width) {
+		return (width + WORD_SIZE - 1) / WORD_SIZE;
+	}
+
+	/**
+	 * @return the mask of the valid cells in the last word of a row of the given width.
+	 */
+	static long lastWordMask(int width) {
+		int used = width & (WORD_SIZE - 1);
+		return used == 0 ? -1L : (1L << used) - 1;
+	}
+
+}
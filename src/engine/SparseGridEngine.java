@@ -0,0 +1,315 @@
+package engine;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This engine only store the chunks of the grid that contain living cells. A chunk is a tile of 64x64 cells, each of its
+ * rows is a single long (one bit per cell). The chunks are kept in a map indexed by their chunk coordinates, so a mostly
+ * empty grid cost almost nothing and a generation only compute the living chunks and their direct neighbors.
+ *
+ * The engine can either wrap on the grid borders like the other engines, or simulate an unbounded plane where the grid
+ * is only the window that is displayed and sent to the clients. Cells outside of this window keep living.
+ *
+ * @author Jean-Hugo
+ */
+public class SparseGridEngine implements GridEngine {
+
+	// The number of cells on a chunk side, a chunk row fit in a long.
+	static final int CHUNK_SIZE = Long.SIZE;
+	// Used to convert a cell coordinate into a chunk coordinate.
+	private static final int CHUNK_SHIFT = 6;
+
+	// The grid dimensions in cells.
+	private int width;
+	private int height;
+	// Whether the plane is unbounded, otherwise the grid wrap on its borders.
+	private final boolean unbounded;
+
+	// The chunks containing at least one living cell.
+	private Map<Long, long[]> chunks = new HashMap<Long, long[]>();
+
+	// The rows used to compute a chunk: the chunk rows plus the row above and below it, with the neighbor cells coming
+	// from the chunks on the left and on the right.
+	private final long[] rows = new long[CHUNK_SIZE + 2];
+	private final long[] westCells = new long[CHUNK_SIZE + 2];
+	private final long[] eastCells = new long[CHUNK_SIZE + 2];
+
+	public SparseGridEngine(int width, int height) {
+		this(width, height, false);
+	}
+
+	/**
+	 * @param unbounded Whether the cells can live beyond the grid borders instead of wrapping on them.
+	 */
+	public SparseGridEngine(int width, int height, boolean unbounded) {
+		this.width = width;
+		this.height = height;
+		this.unbounded = unbounded;
+	}
+
+	@Override
+	public void step(int birthMask, int survivalMask) {
+
+		// Only the living chunks and their neighbors can contain living cells in the next generation.
+		Set<Long> candidates = new HashSet<Long>();
+		for (long key : chunks.keySet()) {
+			int chunkY = getChunkY(key);
+			int chunkX = getChunkX(key);
+			for (int dy = -1; dy <= 1; dy++) {
+				for (int dx = -1; dx <= 1; dx++) {
+					candidates.add(getKey(wrapChunkY(chunkY + dy), wrapChunkX(chunkX + dx)));
+				}
+			}
+		}
+
+		Map<Long, long[]> nextChunks = new HashMap<Long, long[]>();
+		for (long key : candidates) {
+			long[] next = stepChunk(getChunkY(key), getChunkX(key), birthMask, survivalMask);
+			if (next != null) {
+				nextChunks.put(key, next);
+			}
+		}
+		chunks = nextChunks;
+	}
+
+	/**
+	 * Compute the next state of a chunk.
+	 *
+	 * @return the next state of the chunk or null if all its cells are dead.
+	 */
+	private long[] stepChunk(int chunkY, int chunkX, int birthMask, int survivalMask) {
+
+		gatherRows(chunkY, chunkX);
+
+		// The number of valid rows and the mask of the valid cells in this chunk.
+		int validRows = unbounded ? CHUNK_SIZE : Math.min(CHUNK_SIZE, height - chunkY * CHUNK_SIZE);
+		long validCells = unbounded ? -1L : PackedGridEngine.lastWordMask(Math.min(CHUNK_SIZE, width - chunkX * CHUNK_SIZE));
+
+		long[] next = null;
+		for (int r = 0; r < validRows; r++) {
+			long a = rows[r];
+			long c = rows[r + 1];
+			long b = rows[r + 2];
+			long state = PackedGridEngine.nextState(c,
+					(a << 1) | westCells[r], a, (a >>> 1) | eastCells[r],
+					(c << 1) | westCells[r + 1], (c >>> 1) | eastCells[r + 1],
+					(b << 1) | westCells[r + 2], b, (b >>> 1) | eastCells[r + 2],
+					birthMask, survivalMask) & validCells;
+
+			if (state != 0) {
+				if (next == null) {
+					next = new long[CHUNK_SIZE];
+				}
+				next[r] = state;
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Fill the rows used to compute the given chunk: its rows, the row above and the row below, with the neighbor cells
+	 * on the left and on the right already shifted to their position.
+	 */
+	private void gatherRows(int chunkY, int chunkX) {
+
+		int westX = wrapChunkX(chunkX - 1);
+		int eastX = wrapChunkX(chunkX + 1);
+		// On a bounded grid, the chunks of the first and last columns are neighbors but the last column may be partial.
+		int westBit = !unbounded && chunkX == 0 ? (width - 1) & (CHUNK_SIZE - 1) : CHUNK_SIZE - 1;
+		int eastBit = !unbounded && chunkX == getChunkColumns() - 1 ? (width - 1) & (CHUNK_SIZE - 1) : CHUNK_SIZE - 1;
+
+		long[] center = null, west = null, east = null;
+		int loadedChunkY = 0;
+		boolean loaded = false;
+
+		for (int r = 0; r < CHUNK_SIZE + 2; r++) {
+			int y = chunkY * CHUNK_SIZE + r - 1;
+			if (!unbounded) {
+				// Rows beyond the last row of the grid are replaced by the first one and the other way around.
+				if (y < 0) {
+					y = height - 1;
+				} else if (y >= height) {
+					y = 0;
+				}
+			}
+
+			int rowChunkY = y >> CHUNK_SHIFT;
+			if (!loaded || rowChunkY != loadedChunkY) {
+				center = chunks.get(getKey(rowChunkY, chunkX));
+				west = chunks.get(getKey(rowChunkY, westX));
+				east = chunks.get(getKey(rowChunkY, eastX));
+				loadedChunkY = rowChunkY;
+				loaded = true;
+			}
+
+			int row = y & (CHUNK_SIZE - 1);
+			rows[r] = center == null ? 0 : center[row];
+			westCells[r] = west == null ? 0 : (west[row] >>> westBit) & 1L;
+			eastCells[r] = east == null ? 0 : (east[row] & 1L) << eastBit;
+		}
+	}
+
+	@Override
+	public void resize(int newWidth, int newHeight) {
+		this.width = newWidth;
+		this.height = newHeight;
+
+		if (unbounded) {
+			// The grid is only a window on the plane.
+			return;
+		}
+
+		// Kill the cells beyond the new border.
+		Map<Long, long[]> resized = new HashMap<Long, long[]>();
+		for (Map.Entry<Long, long[]> entry : chunks.entrySet()) {
+			int chunkY = getChunkY(entry.getKey());
+			int chunkX = getChunkX(entry.getKey());
+			if (chunkY >= getChunkRows() || chunkX >= getChunkColumns()) {
+				continue;
+			}
+			long[] chunk = entry.getValue();
+			long validCells = PackedGridEngine.lastWordMask(Math.min(CHUNK_SIZE, width - chunkX * CHUNK_SIZE));
+			int validRows = Math.min(CHUNK_SIZE, height - chunkY * CHUNK_SIZE);
+			boolean empty = true;
+			for (int r = 0; r < CHUNK_SIZE; r++) {
+				chunk[r] = r < validRows ? chunk[r] & validCells : 0;
+				empty = empty && chunk[r] == 0;
+			}
+			if (!empty) {
+				resized.put(entry.getKey(), chunk);
+			}
+		}
+		chunks = resized;
+	}
+
+	@Override
+	public void fill(boolean alive) {
+		if (!alive) {
+			chunks.clear();
+			return;
+		}
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				setCell(y, x, true);
+			}
+		}
+	}
+
+	@Override
+	public boolean getCell(int y, int x) {
+		long[] chunk = chunks.get(getKey(y >> CHUNK_SHIFT, x >> CHUNK_SHIFT));
+		return chunk != null && (chunk[y & (CHUNK_SIZE - 1)] & (1L << x)) != 0;
+	}
+
+	@Override
+	public void setCell(int y, int x, boolean alive) {
+		long key = getKey(y >> CHUNK_SHIFT, x >> CHUNK_SHIFT);
+		long[] chunk = chunks.get(key);
+		if (alive) {
+			if (chunk == null) {
+				chunk = new long[CHUNK_SIZE];
+				chunks.put(key, chunk);
+			}
+			chunk[y & (CHUNK_SIZE - 1)] |= 1L << x;
+		} else if (chunk != null) {
+			chunk[y & (CHUNK_SIZE - 1)] &= ~(1L << x);
+		}
+	}
+
+	@Override
+	public void writeSnapshot(BitSet bitField) {
+		for (Map.Entry<Long, long[]> entry : chunks.entrySet()) {
+			int originY = getChunkY(entry.getKey()) * CHUNK_SIZE;
+			int originX = getChunkX(entry.getKey()) * CHUNK_SIZE;
+			long[] chunk = entry.getValue();
+			for (int r = 0; r < CHUNK_SIZE; r++) {
+				int y = originY + r;
+				long word = chunk[r];
+				// Only visit the living cells of the row.
+				while (word != 0) {
+					int x = originX + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+					// The cells outside of the window are not part of the snapshot.
+					if (y >= 0 && y < height && x >= 0 && x < width) {
+						bitField.set(width * y + x);
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void readSnapshot(BitSet bitField) {
+		fill(false);
+		int size = width * height;
+		for (int idx = bitField.nextSetBit(0); idx >= 0 && idx < size; idx = bitField.nextSetBit(idx + 1)) {
+			setCell(idx / width, idx % width, true);
+		}
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public boolean isUnbounded() {
+		return unbounded;
+	}
+
+	@Override
+	public long getPopulation() {
+		long population = 0;
+		for (long chunk[] : chunks.values()) {
+			for (long word : chunk) {
+				population += Long.bitCount(word);
+			}
+		}
+		return population;
+	}
+
+	/**
+	 * @return the number of chunks currently stored.
+	 */
+	public int getChunkCount() {
+		return chunks.size();
+	}
+
+	private int getChunkColumns() {
+		return (width + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+	}
+
+	private int getChunkRows() {
+		return (height + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+	}
+
+	private int wrapChunkX(int chunkX) {
+		return unbounded ? chunkX : Math.floorMod(chunkX, getChunkColumns());
+	}
+
+	private int wrapChunkY(int chunkY) {
+		return unbounded ? chunkY : Math.floorMod(chunkY, getChunkRows());
+	}
+
+	private static long getKey(int chunkY, int chunkX) {
+		return ((long) chunkY << 32) | (chunkX & 0xFFFFFFFFL);
+	}
+
+	private static int getChunkY(long key) {
+		return (int) (key >> 32);
+	}
+
+	private static int getChunkX(long key) {
+		return (int) key;
+	}
+
+}
@@ -0,0 +1,29 @@
+package engine;
+
+/**
+ * What is beyond the grid borders.
+ *
+ * @author Jean-Hugo
+ */
+public enum Topology {
+
+	// The grid wrap on its borders: the cells of the first column are the neighbors of the last column, same for rows.
+	TORUS,
+	// The cells beyond the borders are always dead.
+	BOUNDED;
+
+	/**
+	 * @param name the name of the topology, the case is ignored.
+	 * @return the topology with the given name, the torus if there is none.
+	 */
+	public static Topology fromName(String name) {
+		for (Topology topology : values()) {
+			if (topology.name().equalsIgnoreCase(name)) {
+				return topology;
+			}
+		}
+		System.err.println("Unknown topology: " + name + ". Using the torus.");
+		return TORUS;
+	}
+
+}
@@ -5,8 +5,11 @@ package game;
 import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -19,8 +22,10 @@ import javax.swing.SwingConstants;
 import client.ClientListener;
 import model.GridModel;
 import networkcontroller.ClientGridController;
+import networkcontroller.MessageFramer;
 import server.ServerListener;
 import utils.Constants;
+import utils.Timer;
 import view.ClientGridView;
 import view.CommandPanel;
 
@@ -60,6 +65,8 @@ public class GameOfLifeClient extends JFrame{
 	private ClientGridController clientController;
 	// This socket allow the client to communicate with the server.
 	private SocketChannel clientSocket;
+	// Used to compute the generations of a periodic world at the server update rate.
+	private Timer timer = new Timer();
 
 	/**
 	 * By default the client open a window.
@@ -106,7 +113,7 @@ public class GameOfLifeClient extends JFrame{
 		cycleLabel.setHorizontalAlignment(SwingConstants.CENTER);
 		// Initialize the panels
 		this.clientGridView = new ClientGridView(gridModel);
-		this.commandPanel = new CommandPanel();
+		this.commandPanel = new CommandPanel(gridModel);
 		this.viewPanel = new JPanel();
 		this.viewPanel.setLayout(new BorderLayout());
 		this.viewPanel.add(cycleLabel, BorderLayout.NORTH);
@@ -128,25 +135,50 @@ public class GameOfLifeClient extends JFrame{
 
 
 	/**
-	 * Pop up a window that ask for a server ip to connect to and set up the connection if an ip is given.
+	 * Pop up a window that ask for a server ip and a world to connect to and set up the connection if an ip is given.
 	 */
 	private void askConnection() {
 		String ip = JOptionPane.showInputDialog(this, "Server IP", "Connection", JOptionPane.DEFAULT_OPTION);
 		if(ip != null && !ip.isEmpty()){
-			connectTo(ip);
+			String world = JOptionPane.showInputDialog(this, "World", Constants.DEFAULT_WORLD_NAME);
+			connectTo(ip, world == null || world.isEmpty() ? Constants.DEFAULT_WORLD_NAME : world);
 		}
 	}
 
 	/**
-	 * Connect the client to the server with the given ip and set up the client listeners.
+	 * Connect the client to the default world of the server with the given ip and set up the client listeners.
 	 * 
 	 * @param ip the server ip address.
 	 */
 	public void connectTo(String ip) {
+		connectTo(ip, Constants.DEFAULT_WORLD_NAME);
+	}
+
+	/**
+	 * Connect the client to a world of the server with the given ip and set up the client listeners.
+	 * 
+	 * @param ip the server ip address.
+	 * @param world the name of the world to join, it is created if the server does not host it yet.
+	 */
+	public void connectTo(String ip, String world) {
 		initSocket(ip);
 		if(isConnected()){
 			initNetworkListener();
+			joinWorld(world);
+		}
+	}
 
+	/**
+	 * Ask the server to join the given world, it answer with the world state.
+	 */
+	private void joinWorld(String world) {
+		byte[] name = world.getBytes(StandardCharsets.UTF_8);
+		byte[] command = ByteBuffer.allocate(Short.BYTES * 2 + name.length).putShort(Constants.JOIN_WORLD_COMMAND)
+				.putShort((short) name.length).put(name).array();
+		try {
+			MessageFramer.write(clientSocket, command);
+		} catch (IOException e) {
+			System.err.println("Cannot join the world "+world+": "+e.getMessage());
 		}
 	}
 
@@ -163,6 +195,7 @@ public class GameOfLifeClient extends JFrame{
 			}
 			clientSocket = SocketChannel.open(new InetSocketAddress(ip , ServerListener.SERVER_PORT));
 			commandPanel.setSocket(clientSocket);
+			clientController.setSocket(clientSocket);
 			clientGridView.setClientSocket(clientSocket);
 			System.out.println("Connected to the server: "+clientSocket.socket().getRemoteSocketAddress());
 		} 
@@ -192,6 +225,15 @@ public class GameOfLifeClient extends JFrame{
 	public void start(){
 		while(true){
 			clientController.processPendingCommands();
+
+			// The server stop sending the periodic worlds, the generations are computed here at the same rate.
+			timer.updateTimer();
+			if(!clientController.isLoopingLocally()){
+				timer.resetTimer();
+			} else if(timer.isTimerOver(gridModel.getUpdateRate())){
+				timer.resetTimer();
+				clientController.updateLocally();
+			}
 		}
 	}
 
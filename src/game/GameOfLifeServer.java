@@ -4,16 +4,21 @@ import java.awt.BorderLayout;
 
 import javax.swing.JFrame;
 
+import engine.EngineFactory;
+import engine.EngineType;
+import engine.Topology;
 import model.GridModel;
 import networkcontroller.ServerGridController;
 import server.ServerListener;
+import server.World;
+import server.WorldRegistry;
 import utils.Constants;
-import utils.Timer;
 import view.GridView;
 
 /**
  * This class act as the game manager, it holds all the objects to make the game run. Run a server so client can connect to it and display
- * its game state.
+ * the state of its default world. The clients can join other worlds, they are created on demand and ticked with the
+ * default one.
  * 
  * @author Jean-Hugo
  */
@@ -24,16 +29,16 @@ public class GameOfLifeServer extends JFrame{
 	 */
 	private static final long serialVersionUID = 1L;
 
-	// The grid that hold the game simulation.
-	private GridModel gridModel;
+	// The worlds hosted by the server.
+	private WorldRegistry worlds;
+	// The world displayed by the server.
+	private World defaultWorld;
 	// The class that allow to visualize the simulation.
 	private GridView gridView;
 	// This thread run a server listener.
 	private Thread serverListener;
-	// This class handle all the updates from the network.
-	private ServerGridController serverController;
-	// Used to know when to perform an update without blocking the current thread.
-	private Timer timer = new Timer();
+	// Listen to the clients.
+	private ServerListener listener;
 
 	/**
 	 * By default the server open a window.
@@ -46,12 +51,42 @@ public class GameOfLifeServer extends JFrame{
 	 * @param visible Whether the game should open a JFrame. Useful for testing purpose.
 	 */
 	public GameOfLifeServer(boolean visible) {
+		this(visible, EngineType.PACKED);
+	}
+
+	/**
+	 * @param visible Whether the game should open a JFrame. Useful for testing purpose.
+	 * @param engineType The engine used to store the cells and compute the generations.
+	 */
+	public GameOfLifeServer(boolean visible, EngineType engineType) {
+		this(visible, engineType, null);
+	}
+
+	/**
+	 * @param visible Whether the game should open a JFrame. Useful for testing purpose.
+	 * @param engineType The engine used to store the cells and compute the generations.
+	 * @param checkpointPath The path of the checkpoint files of the default world, the world is restored from them and
+	 * saved in them periodically. The other worlds add their name to it. Null to start from empty worlds without
+	 * checkpoint.
+	 */
+	public GameOfLifeServer(boolean visible, EngineType engineType, String checkpointPath) {
+		this(visible, engineType, Topology.TORUS, checkpointPath);
+	}
+
+	/**
+	 * @param visible Whether the game should open a JFrame. Useful for testing purpose.
+	 * @param engineFactory Create the engines used to store the cells and compute the generations.
+	 * @param topology What is beyond the borders of the worlds.
+	 * @param checkpointPath The path of the checkpoint files of the default world, null for no checkpoint.
+	 */
+	public GameOfLifeServer(boolean visible, EngineFactory engineFactory, Topology topology, String checkpointPath) {
 
-		gridModel = new GridModel();
-		serverController = new ServerGridController(gridModel, timer);
+		worlds = new WorldRegistry(engineFactory, topology, checkpointPath);
+		defaultWorld = worlds.getDefaultWorld();
 		initGraphics(visible);
 
-		serverListener = new Thread(new ServerListener(serverController));
+		listener = new ServerListener(worlds);
+		serverListener = new Thread(listener);
 		serverListener.start();
 	}
 
@@ -61,7 +96,7 @@ public class GameOfLifeServer extends JFrame{
 	 * @param visible whether to display the JFrame.
 	 */
 	private void initGraphics(boolean visible) {
-		gridView = new GridView(gridModel);
+		gridView = new GridView(defaultWorld.getModel());
 		this.setLayout(new BorderLayout());
 		this.add(gridView, BorderLayout.CENTER);
 		this.setSize(Constants.WIDTH, Constants.HEIGHT);
@@ -72,40 +107,27 @@ public class GameOfLifeServer extends JFrame{
 
 
 	/**
-	 * Keep processing the client commands such has grid parameters, update periodically the game state
-	 * and send the game state to the clients.
+	 * Start ticking the worlds: each one process its clients commands such has grid parameters, update periodically its
+	 * game state and send it to its clients.
 	 */
 	public void start(){
-
-		// Whether the game state has changed and need to be sent to the players.
-		boolean needUpdate = true;
-		
-		while(true){
-			timer.updateTimer();
-			if(timer.isTimerOver(gridModel.getUpdateRate())){
-				timer.resetTimer();
-				gridModel.update();
-				needUpdate = true;
-			}
-
-			// Process the commands sent by the clients. The result tell us whether we should send an update to the players.
-			boolean needUpdate2 = serverController.processPendingCommands();
-
-			needUpdate = needUpdate || needUpdate2;
-
-			if(needUpdate){
-				needUpdate = false;
-				serverController.sendWorldSnapShotToClients();
-			}
-		}
+		worlds.start();
 	}
 
 	public GridModel getModel(){
-		return gridModel;
+		return defaultWorld.getModel();
 	}
 	
 	public ServerGridController getServerGridController(){
-		return serverController;
+		return defaultWorld.getServerGridController();
+	}
+
+	public WorldRegistry getWorlds(){
+		return worlds;
+	}
+
+	public ServerListener getServerListener(){
+		return listener;
 	}
 
 }
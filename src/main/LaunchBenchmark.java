@@ -0,0 +1,77 @@
+package main;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import engine.PackedGridEngine;
+
+/**
+ * Launcher for the stepping benchmark. Print how the parallel step scale from 1 thread to the number of cores.
+ * Arguments (optional): grid size, number of generations.
+ *
+ * @author Jean-Hugo
+ *
+ */
+public class LaunchBenchmark {
+
+	// Birth with 3 neighbors, survival with 2 or 3 neighbors.
+	private static final int BIRTH = 1 << 3;
+	private static final int SURVIVAL = (1 << 2) | (1 << 3);
+
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+		int generations = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+		System.out.println("Grid "+size+"x"+size+", "+generations+" generations");
+
+		// Warm up the JIT so the first measure is not penalized.
+		runSteps(createEngine(size), generations);
+
+		PackedGridEngine sequential = createEngine(size);
+		long reference = runSteps(sequential, generations);
+		BitSet expected = new BitSet();
+		sequential.writeSnapshot(expected);
+		System.out.println("sequential: "+reference / 1000000+" ms");
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cores; threads = threads < cores && threads * 2 > cores ? cores : threads * 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			PackedGridEngine parallel = createEngine(size);
+			parallel.setParallelMode(pool, 0);
+			long time = runSteps(parallel, generations);
+			pool.shutdown();
+
+			BitSet actual = new BitSet();
+			parallel.writeSnapshot(actual);
+			System.out.println(String.format("%2d threads: %d ms, speedup %.2f%s", threads, time / 1000000,
+					(double) reference / time, expected.equals(actual) ? "" : " RESULT DIFFERS"));
+		}
+	}
+
+	/**
+	 * @return an engine with the same random soup every time.
+	 */
+	private static PackedGridEngine createEngine(int size) {
+		PackedGridEngine engine = new PackedGridEngine(size, size);
+		Random random = new Random(size);
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				engine.setCell(i, j, random.nextInt(100) < 20);
+			}
+		}
+		return engine;
+	}
+
+	/**
+	 * @return the time in nanosecond to compute the given number of generations.
+	 */
+	private static long runSteps(PackedGridEngine engine, int generations) {
+		long start = System.nanoTime();
+		for (int i = 0; i < generations; i++) {
+			engine.step(BIRTH, SURVIVAL);
+		}
+		return System.nanoTime() - start;
+	}
+
+}
@@ -0,0 +1,21 @@
+package main;
+
+import cluster.StripeNode;
+import engine.EngineType;
+
+/**
+ * Launcher for a node of a cluster, it hold stripes of the worlds of a server started with the cluster engine.
+ * Arguments (optional): the port to listen on, the engine name used for the stripes (packed by default).
+ *
+ * @author Jean-Hugo
+ *
+ */
+public class LaunchNode {
+
+	public static void main(String[] args) {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : StripeNode.DEFAULT_PORT;
+		EngineType engineType = args.length > 1 ? EngineType.fromName(args[1]) : EngineType.PACKED;
+		new StripeNode(port, engineType).run();
+	}
+
+}
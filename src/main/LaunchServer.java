@@ -1,19 +1,101 @@
 package main;
 
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import cluster.ClusterGridEngine;
+import cluster.StripeNode;
+import engine.EngineFactory;
+import engine.EngineType;
+import engine.Topology;
 import game.GameOfLifeServer;
+import utils.Constants;
 
 /**
  * Launcher for the server.
+ * Arguments (optional): the engine name (reference, packed by default, vector, parallel, offheap, sparse, unbounded or
+ * hashlife), then in any order the topology (torus or bounded), lockstep to let the clients compute the generations
+ * themselves, queue=kilobytes to choose how many bytes of commands can wait for a slow client before it is disconnected
+ * and checkpoint=path to restore and save the worlds. Any other argument is rejected with the usage message.
+ * With the engine name cluster, the worlds are split between the nodes given as host:port arguments (see
+ * {@link LaunchNode}).
  * 
  * @author Jean-Hugo
  *
  */
 public class LaunchServer {
 
+	// The engine name of the worlds split between several nodes.
+	private static final String CLUSTER_ENGINE = "cluster";
+	// The argument enabling the lockstep mode.
+	private static final String LOCKSTEP = "lockstep";
+	// The argument giving the high water mark of the clients queues, in kilobytes.
+	private static final String QUEUE = "queue=";
+	// The argument giving the path of the checkpoint files.
+	private static final String CHECKPOINT = "checkpoint=";
+	// The message printed when an argument is not recognized.
+	private static final String USAGE = "Usage: LaunchServer [reference|packed|vector|parallel|offheap|sparse|unbounded"
+			+ "|hashlife|cluster [host:port...]] [torus|bounded] [lockstep] [queue=kilobytes] [checkpoint=path]";
+
 	public static void main(String[] args) {
-		GameOfLifeServer server = new GameOfLifeServer();
-		// Start the game simulation.
+		boolean cluster = args.length > 0 && args[0].equalsIgnoreCase(CLUSTER_ENGINE);
+		if(args.length > 0 && !cluster && !isEngineName(args[0])){
+			System.err.println("Unknown engine: "+args[0]);
+			System.err.println(USAGE);
+			return;
+		}
+		Topology topology = Topology.TORUS;
+		String checkpointPath = null;
+		boolean lockstep = false;
+		int highWaterMark = Constants.CLIENT_HIGH_WATER_MARK;
+		List<InetSocketAddress> nodes = new ArrayList<InetSocketAddress>();
+		for(int i = 1; i < args.length; i++){
+			if(args[i].equalsIgnoreCase(Topology.TORUS.name()) || args[i].equalsIgnoreCase(Topology.BOUNDED.name())){
+				topology = Topology.fromName(args[i]);
+			} else if(args[i].equalsIgnoreCase(LOCKSTEP)){
+				lockstep = true;
+			} else if(args[i].toLowerCase().matches(QUEUE + "\\d{1,6}")){
+				highWaterMark = Integer.parseInt(args[i].substring(QUEUE.length())) * 1024;
+			} else if(cluster && args[i].matches("[^:]+:\\d+")){
+				int separator = args[i].lastIndexOf(':');
+				nodes.add(new InetSocketAddress(args[i].substring(0, separator),
+						Integer.parseInt(args[i].substring(separator + 1))));
+			} else if(args[i].toLowerCase().startsWith(CHECKPOINT) && args[i].length() > CHECKPOINT.length()){
+				checkpointPath = args[i].substring(CHECKPOINT.length());
+			} else {
+				System.err.println("Unknown argument: "+args[i]);
+				System.err.println(USAGE);
+				return;
+			}
+		}
+
+		EngineFactory engineFactory;
+		if(cluster){
+			if(nodes.isEmpty()){
+				nodes.add(new InetSocketAddress("localhost", StripeNode.DEFAULT_PORT));
+			}
+			engineFactory = (width, height) -> new ClusterGridEngine(width, height, nodes);
+		} else {
+			engineFactory = args.length > 0 ? EngineType.fromName(args[0]) : EngineType.PACKED;
+		}
+		GameOfLifeServer server = new GameOfLifeServer(true, engineFactory, topology, checkpointPath);
+		server.getWorlds().setLockstep(lockstep);
+		server.getServerListener().setHighWaterMark(highWaterMark);
+		// Start the game simulation, the worlds are ticked by a shared pool.
 		server.start();
 	}
+
+	/**
+	 * @return whether an engine type has the given name, the case is ignored.
+	 */
+	private static boolean isEngineName(String name) {
+		for(EngineType type : EngineType.values()){
+			if(type.name().equalsIgnoreCase(name)){
+				return true;
+			}
+		}
+		return false;
+	}
 	
 }
@@ -0,0 +1,123 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import engine.GridEngine;
+
+/**
+ * A copy of the grid after a generation or a change, published by the model for the threads that do not compute the
+ * generations (the view, the network listener...). It does not change while it is acquired, so a reader always see a
+ * whole generation without locking the model.
+ *
+ * The snapshots are recycled by the model once they are released, so a snapshot must not be used after
+ * {@link #close()}.
+ *
+ * @author Jean-Hugo
+ */
+public class GenerationSnapshot implements AutoCloseable {
+
+	// The cells in the snapshot layout, the bit width * y + x of the words is the cell (y, x).
+	private long words[] = new long[0];
+	private int width;
+	private int height;
+	private int cycle;
+	// The number of readers holding this snapshot, it is only recycled when there is none.
+	final AtomicInteger readers = new AtomicInteger();
+
+	GenerationSnapshot() {
+	}
+
+	/**
+	 * Copy the cells of the engine, only called by the model while the snapshot is not published.
+	 */
+	void copy(GridEngine engine, int cycle) {
+		resize(engine.getWidth(), engine.getHeight(), cycle);
+		engine.copySnapshot(words);
+	}
+
+	/**
+	 * Copy the cells of a replayed state, only called by the model while the snapshot is not published.
+	 */
+	void copy(BitSet state, int width, int height, int cycle) {
+		resize(width, height, cycle);
+		Arrays.fill(words, 0);
+		for(int idx = state.nextSetBit(0); idx >= 0; idx = state.nextSetBit(idx + 1)){
+			words[idx >> 6] |= 1L << idx;
+		}
+	}
+
+	private void resize(int width, int height, int cycle) {
+		this.width = width;
+		this.height = height;
+		this.cycle = cycle;
+		int length = (int) (((long) width * height + Long.SIZE - 1) / Long.SIZE);
+		if(words.length != length){
+			words = new long[length];
+		}
+	}
+
+	public boolean isCellAlive(int i, int j) {
+		long idx = (long) width * i + j;
+		return (words[(int) (idx >> 6)] & (1L << idx)) != 0;
+	}
+
+	/**
+	 * @return the cells in a new BitSet, like {@link GridModel#getWorldSnapShot()}.
+	 */
+	public BitSet toBitSet() {
+		return BitSet.valueOf(words);
+	}
+
+	/**
+	 * @return a copy of the cells in the snapshot layout: the bit width * y + x of the words is the cell (y, x).
+	 */
+	public long[] toLongArray() {
+		return words.clone();
+	}
+
+	/**
+	 * @return the cells encoded like {@link BitSet#toByteArray()}.
+	 */
+	public byte[] toByteArray() {
+		int last = words.length;
+		while(last > 0 && words[last - 1] == 0){
+			last--;
+		}
+		if(last == 0){
+			return new byte[0];
+		}
+		ByteBuffer bytes = ByteBuffer.allocate(last * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		bytes.asLongBuffer().put(words, 0, last);
+		// Like BitSet.toByteArray, the trailing empty bytes are not sent.
+		int length = bytes.capacity();
+		while(bytes.get(length - 1) == 0){
+			length--;
+		}
+		return Arrays.copyOf(bytes.array(), length);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getCycle() {
+		return cycle;
+	}
+
+	/**
+	 * Give the snapshot back to the model, it must not be used anymore.
+	 */
+	@Override
+	public void close() {
+		readers.decrementAndGet();
+	}
+
+}
@@ -0,0 +1,101 @@
+package model;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Describe what changed in a grid model: the generations computed, the regions of the grid that may have changed, the
+ * parameters and the resets. The changes made during a batch are merged in a single event.
+ *
+ * @author Jean-Hugo
+ */
+public class GridEvent {
+
+	// Above this number of regions the whole grid is considered changed.
+	public static final int MAXIMUM_REGIONS = 64;
+
+	public enum Kind {
+		// One or more generations were computed.
+		GENERATION,
+		// Some cells were set by hand, by a pattern or by a snapshot.
+		CELLS,
+		// The size, the rule, the update rate, the cycle or the apparition percentage changed.
+		PARAMETERS,
+		// The cycle went back to 0 and the cells were replaced.
+		RESET
+	}
+
+	private final Set<Kind> kinds;
+	// The number of generations computed.
+	private final long generations;
+	// The regions (in cells) that may have changed, null if it is the whole grid.
+	private final List<Rectangle> regions;
+	// The grid dimensions after the change.
+	private final int width;
+	private final int height;
+
+	GridEvent(Set<Kind> kinds, long generations, List<Rectangle> regions, int width, int height) {
+		this.kinds = Collections.unmodifiableSet(kinds);
+		this.generations = generations;
+		this.regions = regions == null || regions.size() > MAXIMUM_REGIONS ? null : Collections.unmodifiableList(regions);
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @return an event holding the changes of both events, this one being the oldest.
+	 */
+	GridEvent merge(GridEvent next) {
+		EnumSet<Kind> mergedKinds = EnumSet.copyOf(kinds);
+		mergedKinds.addAll(next.kinds);
+
+		List<Rectangle> mergedRegions = null;
+		if(regions != null && next.regions != null && width == next.width && height == next.height){
+			mergedRegions = new ArrayList<Rectangle>(regions);
+			mergedRegions.addAll(next.regions);
+		}
+		return new GridEvent(mergedKinds, generations + next.generations, mergedRegions, next.width, next.height);
+	}
+
+	public boolean is(Kind kind) {
+		return kinds.contains(kind);
+	}
+
+	public Set<Kind> getKinds() {
+		return kinds;
+	}
+
+	public long getGenerations() {
+		return generations;
+	}
+
+	/**
+	 * @return whether the whole grid may have changed.
+	 */
+	public boolean isWholeGrid() {
+		return regions == null;
+	}
+
+	/**
+	 * @return the regions (in cells) that may have changed, the rest of the grid is unchanged.
+	 */
+	public List<Rectangle> getDirtyRegions() {
+		if(regions == null){
+			return Collections.singletonList(new Rectangle(0, 0, width, height));
+		}
+		return regions;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+}
@@ -0,0 +1,15 @@
+package model;
+
+/**
+ * Notified when a grid model change.
+ *
+ * @author Jean-Hugo
+ */
+public interface GridListener {
+
+	/**
+	 * Called in the thread that changed the model, once per change or once per batch of changes.
+	 */
+	void gridChanged(GridEvent event);
+
+}
@@ -1,8 +1,21 @@
 package model;
 
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Observable;
-
+import java.util.Collections;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.List;
+import java.util.EnumSet;
+import java.util.SplittableRandom;
+
+import engine.GridEngine;
+import engine.PackedGridEngine;
+import engine.Topology;
+import pattern.PatternReader;
 import utils.Constants;
 
 /**
@@ -10,42 +23,68 @@ import utils.Constants;
  * 
  * @author Jean-Hugo
  */
-public class GridModel extends Observable {
+public class GridModel {
 
-	// The maximum size that a grid can take.
-	public static final int MAXIMUM_GRID_SIZE = 100;
-	// The size of the grid by default.
+	// The maximum size that a grid dimension (width or height) can take.
+	public static final int MAXIMUM_GRID_SIZE = 16384;
+	// The size of the grid by default, this is also the minimum size of a dimension.
 	public static final int DEFAULT_GRID_SIZE = 10;
 
-	// A 2 dimensional array that represent the current simulation (true = cell alive, false = dead_cell).
-	private boolean grid[][] = new boolean[MAXIMUM_GRID_SIZE][MAXIMUM_GRID_SIZE];
-	// Same as above but used to calculate the next game state without interfering with the current game state.
-	private boolean gridReference[][] = new boolean[MAXIMUM_GRID_SIZE][MAXIMUM_GRID_SIZE];
+	// Hold the cells of the current simulation and compute the next generations.
+	private GridEngine engine;
 
-	// The current size of the grid.
-	private int currentGridSize = DEFAULT_GRID_SIZE;
+	// The current dimensions of the grid.
+	private int currentWidth = DEFAULT_GRID_SIZE;
+	private int currentHeight = DEFAULT_GRID_SIZE;
 	// The cycle counter that represent the current iteration number.
 	private int cycle = 0;
 	// The time in millisecond between each call to update.
 	private int updateRate = Constants.DEFAULT_UPDATE_RATE;
-	// Default interval for a living cell to stay alive.
-	private int minInterval = 2;
-	private int maxInterval = 3;
+	// The number of neighbors for a cell to be born or to stay alive.
+	private Rule rule = Rule.CONWAY;
+	// Find out when the world become periodic so its states are replayed instead of computed.
+	private PeriodDetector periodDetector = new PeriodDetector();
 	// The chance in percent every cell from the grid has to be alive on grid reset.
 	private int apparitionPercentage = 20;
 
+	// Notified of the changes.
+	private final List<GridListener> listeners = new CopyOnWriteArrayList<GridListener>();
+	// The number of batches started and not ended yet, the events are only sent when the last one end.
+	private int batchDepth = 0;
+	// The changes of the current batch, null if there is none.
+	private GridEvent pendingEvent;
+
+	// The latest generation published for the other threads.
+	private volatile GenerationSnapshot publishedSnapshot;
+	// The snapshots recycled for the next publications: one is published, one may still be read and one is written.
+	private final GenerationSnapshot snapshotBuffers[] = new GenerationSnapshot[3];
+
 
 	public GridModel() {
 		this(DEFAULT_GRID_SIZE);
 	}
 
 	public GridModel(int size) {
+		this(size, size);
+	}
+
+	public GridModel(int width, int height) {
+		this(width, height, new PackedGridEngine(DEFAULT_GRID_SIZE, DEFAULT_GRID_SIZE));
+	}
+
+	/**
+	 * @param engine The engine that will hold the cells and compute the generations.
+	 */
+	public GridModel(int width, int height, GridEngine engine) {
+
+		this.engine = engine;
 
-		if(size > MAXIMUM_GRID_SIZE){
-			System.err.println("Size given is too big : "+size+". Setted the grid size to "+MAXIMUM_GRID_SIZE);
-			setCurrentSize(MAXIMUM_GRID_SIZE);
+		if(width > MAXIMUM_GRID_SIZE || height > MAXIMUM_GRID_SIZE){
+			System.err.println("Size given is too big : "+width+"x"+height+". Setted the grid size to "
+					+Math.min(width, MAXIMUM_GRID_SIZE)+"x"+Math.min(height, MAXIMUM_GRID_SIZE));
+			setCurrentSize(Math.min(width, MAXIMUM_GRID_SIZE), Math.min(height, MAXIMUM_GRID_SIZE));
 		} else {
-			setCurrentSize(size);
+			setCurrentSize(width, height);
 		}
 
 		resetGrid();
@@ -60,46 +99,45 @@ public class GridModel extends Observable {
 	 * @param y The y coordinate for the center of the structure.
 	 */
 	public void createBar(int x, int y) {
-		setCell(y, getCorrectPosition(x - 1), true);
+		setCell(y, getCorrectPosition(x - 1, currentWidth), true);
 		setCell(y, x, true);
-		setCell(y, getCorrectPosition(x + 1), true);
+		setCell(y, getCorrectPosition(x + 1, currentWidth), true);
+		fireCellsChanged(Collections.singletonList(new Rectangle(0, y, currentWidth, 1)));
 	}
 
 	/**
 	 * Reset the all grid cells to the given value (true = alive, false = dead).
 	 */
 	private void setAllGridsTo(boolean value) {
-		for (int i = 0; i < grid.length; i++) {
-			for (int j = 0; j < grid.length; j++) {
-				setCell(i, j, value);
-			}
-		}
-		notifyObservers();
+		stopReplay();
+		engine.fill(value);
+		fireCellsChanged(null);
 	}
 
 	/**
 	 * Reset the counter cycle and set all the grid cells to dead.
 	 */
 	public void resetGrid(){
+		beginChanges();
 		cycle = 0;
 		setAllGridsTo(false);
-		notifyObservers();
+		fireChange(EnumSet.of(GridEvent.Kind.RESET), 0, null);
+		endChanges();
 	}
 
 	/**
-	 * Fill the grid with random cells.
+	 * Fill the grid with random cells from a new seed.
 	 */
 	public void populateRandomly(){
-		for (int i = 0; i < currentGridSize; i++) {
-			for (int j = 0; j < currentGridSize; j++) {
-				if(Math.random()*100 < apparitionPercentage){
-					setCell(i, j, true);
-				} else {
-					setCell(i, j, false);
-				}
-			}
-		}
-		notifyObservers();
+		populateRandomly(new SplittableRandom().nextLong());
+	}
+
+	/**
+	 * Fill the grid with random cells, the same seed always give the same world for a given size and apparition
+	 * percentage.
+	 */
+	public void populateRandomly(long seed){
+		populateWithSnapshot(RandomSoup.generate(currentWidth, currentHeight, apparitionPercentage, seed));
 	}
 
 
@@ -108,125 +146,261 @@ public class GridModel extends Observable {
 	 */
 	public void update() {
 		incrementCycle();
-		for(int i = 0; i < currentGridSize; i++){
-			for (int j = 0; j < currentGridSize; j++) {
-				int neighborsCount = getCellNeighbours(i, j);
-
-				// Check in the grid reference so the update do not affect the current grid state.
-				if(gridReference[i][j]){
-					// Die if it hasn't the correct number of neighbors.
-					grid[i][j] = (neighborsCount >= minInterval && neighborsCount <= maxInterval);
-				} else {
-					// Become alive if it has just 3 neighbors.
-					grid[i][j] = (neighborsCount == 3);
-				}
+		if(periodDetector.isPeriodic()){
+			periodDetector.advance(1);
+		} else {
+			// A cell become alive or stay alive if the rule allow its number of neighbors.
+			engine.step(rule.getBirthMask(), rule.getSurvivalMask());
+			// On an unbounded plane the grid can look periodic while the cells beyond its borders are not.
+			if(!engine.isUnbounded()){
+				periodDetector.record(engine);
 			}
 		}
-		updateGridReference();
-		notifyObservers();
+		fireChange(EnumSet.of(GridEvent.Kind.GENERATION), 1, getDirtyRegions());
 	}
 
-	public void incrementCycle() {
-		cycle++;		
+	/**
+	 * Compute the given number of generations back to back and notify the listeners only once at the end. Only the
+	 * engines able to jump in time (like HashLife) do it faster than computing the generations one by one, but even
+	 * then nothing is copied or drawn between the generations.
+	 *
+	 * @param generations the number of generations, the cycle counter must not overflow.
+	 */
+	public void advance(long generations) {
+		if(generations < 1 || generations > Integer.MAX_VALUE - cycle){
+			System.err.println("Invalid number of generations: "+generations);
+			return;
+		}
+		cycle += generations;
+		if(periodDetector.isPeriodic()){
+			periodDetector.advance(generations);
+		} else {
+			engine.advance(generations, rule.getBirthMask(), rule.getSurvivalMask());
+			// The generations in between were not recorded.
+			periodDetector.reset();
+		}
+		fireChange(EnumSet.of(GridEvent.Kind.GENERATION), generations, null);
 	}
 
 	/**
-	 * Return the number of neighbors for the cell at the given coordinates.
-	 * 
+	 * Advance the world by 2^power generations in one call.
+	 *
+	 * @param power the log2 of the number of generations.
 	 */
-	int getCellNeighbours(int y, int x){
-
-		int count = 0;
-
-		// Check right.
-		count += gridReference[y][getCorrectPosition(x + 1)] ? 1 : 0;
-		// Check left.
-		count += gridReference[y][getCorrectPosition(x - 1)] ? 1 : 0;
-		// Check down.
-		count += gridReference[getCorrectPosition(y + 1)][x] ? 1 : 0;
-		// Check up.
-		count += gridReference[getCorrectPosition(y - 1)][x] ? 1 : 0;
-		// Check down-right.
-		count += gridReference[getCorrectPosition(y + 1)][getCorrectPosition(x + 1)] ? 1 : 0;
-		// Check down-left.
-		count += gridReference[getCorrectPosition(y + 1)][getCorrectPosition(x - 1)] ? 1 : 0;
-		// Check up-right.
-		count += gridReference[getCorrectPosition(y - 1)][getCorrectPosition(x + 1)] ? 1 : 0;
-		// Check up-left.
-		count += gridReference[getCorrectPosition(y - 1)][getCorrectPosition(x - 1)] ? 1 : 0;
-
-		return count;
+	public void jumpGenerations(int power) {
+		if(power < 0 || power >= Integer.SIZE - 1){
+			System.err.println("Invalid number of generations: 2^"+power);
+			return;
+		}
+		advance(1L << power);
+	}
 
+	public void incrementCycle() {
+		cycle++;		
 	}
 
 	/**
 	 * Allow the wrapping in the grid so when we hit a border, we wrap to the other side.
 	 * 
 	 * @param value the value we try to reach.
+	 * @param size the size of the dimension the value belongs to.
 	 * @return the correct corresponding value in the grid.
 	 */
-	private int getCorrectPosition(int value) {
+	private int getCorrectPosition(int value, int size) {
 
 		if(value < 0) {
-			return currentGridSize - 1;
-		} else if(value >= currentGridSize){
+			return size - 1;
+		} else if(value >= size){
 			return 0;
 		} else {
 			return value;
 		}
 	}
 
-	/*
-	 * Set the reference grid to the current grid state.
+	public void addGridListener(GridListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeGridListener(GridListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Start a batch of changes, like the commands and the generation of a tick. The listeners receive a single event
+	 * holding all the changes when the batch end. The batches can be nested.
+	 */
+	public void beginChanges() {
+		batchDepth++;
+	}
+
+	/**
+	 * End a batch of changes started with {@link #beginChanges()}.
+	 */
+	public void endChanges() {
+		if(batchDepth > 0){
+			batchDepth--;
+		}
+		if(batchDepth == 0 && pendingEvent != null){
+			GridEvent event = pendingEvent;
+			pendingEvent = null;
+			publishSnapshot();
+			for(GridListener listener : listeners){
+				listener.gridChanged(event);
+			}
+		}
+	}
+
+	/**
+	 * Copy the grid in a snapshot that is not read anymore and make it the published one.
 	 */
-	private void updateGridReference() {
-		for(int i = 0; i < currentGridSize; i++){
-			for (int j = 0; j < currentGridSize; j++) {
-				gridReference[i][j] = grid[i][j];
+	private void publishSnapshot() {
+		GenerationSnapshot published = publishedSnapshot;
+		GenerationSnapshot target = null;
+		for(int i = 0; i < snapshotBuffers.length && target == null; i++){
+			if(snapshotBuffers[i] == null){
+				snapshotBuffers[i] = new GenerationSnapshot();
 			}
+			if(snapshotBuffers[i] != published && snapshotBuffers[i].readers.get() == 0){
+				target = snapshotBuffers[i];
+			}
+		}
+		if(target == null){
+			// Every buffer is still read, this one is not recycled.
+			target = new GenerationSnapshot();
 		}
+
+		if(periodDetector.isPeriodic()){
+			target.copy(periodDetector.getCurrentState(), currentWidth, currentHeight, cycle);
+		} else {
+			target.copy(engine, cycle);
+		}
+		publishedSnapshot = target;
 	}
 
 	/**
-	 * I overridden this method for convenience since I don't want to call setChanged every time.
+	 * Get the latest generation without waiting for the generation being computed. Unlike the other getters it can be
+	 * called from any thread. The snapshot must be closed once read, for example:
+	 * <pre>
+	 * try(GenerationSnapshot snapshot = gridModel.acquireSnapshot()){
+	 *     ...
+	 * }
+	 * </pre>
 	 */
-	@Override
-	public void notifyObservers() {
-		this.setChanged();
-		super.notifyObservers();
+	public GenerationSnapshot acquireSnapshot() {
+		while(true){
+			GenerationSnapshot snapshot = publishedSnapshot;
+			snapshot.readers.incrementAndGet();
+			// If it has been replaced in the meantime it may be rewritten, take the new one.
+			if(snapshot == publishedSnapshot){
+				return snapshot;
+			}
+			snapshot.readers.decrementAndGet();
+		}
 	}
 
 	/**
-	 * Convenient method to set a cell to the given state since we need to populate both the reference and the actual grid.
+	 * Notify the listeners of a change, or add it to the current batch.
+	 *
+	 * @param regions the regions (in cells) that may have changed, null for the whole grid.
+	 */
+	private void fireChange(EnumSet<GridEvent.Kind> kinds, long generations, List<Rectangle> regions) {
+		GridEvent event = new GridEvent(kinds, generations, regions, currentWidth, currentHeight);
+		pendingEvent = pendingEvent == null ? event : pendingEvent.merge(event);
+		if(batchDepth == 0){
+			endChanges();
+		}
+	}
+
+	private void fireCellsChanged(List<Rectangle> regions) {
+		fireChange(EnumSet.of(GridEvent.Kind.CELLS), 0, regions);
+	}
+
+	private void fireParametersChanged() {
+		fireChange(EnumSet.of(GridEvent.Kind.PARAMETERS), 0, Collections.<Rectangle>emptyList());
+	}
+
+	/**
+	 * Convenient method to set a cell to the given state.
 	 */
 	private void setCell(int i, int j, boolean alive) {
-		grid[i][j] = alive;
-		gridReference[i][j] = alive;
+		stopReplay();
+		engine.setCell(i, j, alive);
 	}
 
 	/**
-	 * If the size it within the max and min bound, it will set the grid size accordingly to the
-	 * given size.
-	 * @param newGridSize The new size for the grid.
+	 * Called before the world is changed by something else than a generation. The engine get back the replayed state
+	 * and the detection start over.
+	 */
+	private void stopReplay() {
+		BitSet current = periodDetector.reset();
+		if(current != null){
+			engine.readSnapshot(current);
+		}
+	}
+
+	/**
+	 * @return a hash of the cells of the grid, the same for the same cells whatever the engine.
+	 */
+	public long getFingerprint() {
+		return GridEngine.fingerprint(getWorldWords());
+	}
+
+	/**
+	 * @return a copy of the cells in the snapshot layout: the bit width * y + x of the words is the cell (y, x).
+	 */
+	public long[] getWorldWords() {
+		int wordCount = (int) (((long) currentWidth * currentHeight + Long.SIZE - 1) / Long.SIZE);
+		if(periodDetector.isPeriodic()){
+			return Arrays.copyOf(periodDetector.getCurrentState().toLongArray(), wordCount);
+		}
+		long words[] = new long[wordCount];
+		engine.copySnapshot(words);
+		return words;
+	}
+
+	/**
+	 * @return the period of the world or 0 if it is not known to be periodic.
+	 */
+	public int getPeriod() {
+		return periodDetector.getPeriod();
+	}
+
+	/**
+	 * Convenient method to set a square grid.
+	 * @param newGridSize The new size for both grid dimensions.
 	 */
 	public void setCurrentSize(int newGridSize) {
-		if(newGridSize >= DEFAULT_GRID_SIZE && newGridSize <= MAXIMUM_GRID_SIZE){
-			this.currentGridSize = newGridSize;
-			// Set all the cell beyond the grid border to dead.
-			for(int i = currentGridSize; i < grid.length; i++){
-				for (int j = currentGridSize; j < grid.length; j++) {
-					setCell(i, j, false);
-				}
-			}
-			notifyObservers();
+		setCurrentSize(newGridSize, newGridSize);
+	}
+
+	/**
+	 * If the dimensions are within the max and min bound, it will set the grid size accordingly to the
+	 * given dimensions.
+	 * @param newWidth The new width for the grid.
+	 * @param newHeight The new height for the grid.
+	 */
+	public void setCurrentSize(int newWidth, int newHeight) {
+		if(gridSizeCorrect(newWidth, newHeight)){
+			this.currentWidth = newWidth;
+			this.currentHeight = newHeight;
+			stopReplay();
+			// The storage is reallocated to the new dimensions, the cells beyond the new grid border are dropped.
+			engine.resize(newWidth, newHeight);
+			fireChange(EnumSet.of(GridEvent.Kind.PARAMETERS, GridEvent.Kind.CELLS), 0, null);
 		} else {
-			System.err.println("Invalid size given: "+ newGridSize);
+			System.err.println("Invalid size given: "+ newWidth+"x"+newHeight);
 		}
 	}
 
+	public static boolean gridSizeCorrect(int width, int height) {
+		return width >= DEFAULT_GRID_SIZE && width <= MAXIMUM_GRID_SIZE
+				&& height >= DEFAULT_GRID_SIZE && height <= MAXIMUM_GRID_SIZE;
+	}
+
 	public void setUpdateRate(int newUpdateRate) {
 		if(newUpdateRate >= Constants.MINIMUM_UPDATE_RATE && newUpdateRate <= Constants.MAXIMUM_UPDATE_RATE){
 			this.updateRate = newUpdateRate;
+			fireParametersChanged();
 		}
 	}
 
@@ -234,12 +408,45 @@ public class GridModel extends Observable {
 		return cycle;
 	}
 
+	/**
+	 * @return a copy of the current grid state (true = cell alive, false = dead cell).
+	 */
 	public boolean[][] getGrid() {
+		boolean grid[][] = new boolean[currentHeight][currentWidth];
+		for (int i = 0; i < currentHeight; i++) {
+			for (int j = 0; j < currentWidth; j++) {
+				grid[i][j] = isCellAlive(i, j);
+			}
+		}
 		return grid;
 	}
 
-	public int getCurrentGridSize() {
-		return currentGridSize;
+	/**
+	 * @return whether the cell at the given coordinates is alive.
+	 */
+	public boolean isCellAlive(int i, int j) {
+		if(periodDetector.isPeriodic()){
+			return periodDetector.getCurrentState().get(currentWidth * i + j);
+		}
+		return engine.getCell(i, j);
+	}
+
+	/**
+	 * @return the regions (in cells) changed by the last update or edited since, the rest of the grid is unchanged.
+	 */
+	public List<Rectangle> getDirtyRegions() {
+		if(periodDetector.isPeriodic()){
+			return Collections.singletonList(new Rectangle(0, 0, currentWidth, currentHeight));
+		}
+		return engine.getDirtyRegions();
+	}
+
+	public int getCurrentWidth() {
+		return currentWidth;
+	}
+
+	public int getCurrentHeight() {
+		return currentHeight;
 	}
 
 	public float getUpdateRate() {
@@ -248,26 +455,31 @@ public class GridModel extends Observable {
 
 	/**
 	 * To represent the world, I used a BitSet. Each bit represent a cell a bit set to 1 is a living cell and a bit set to 0
-	 * is a dead cell. I start from the top left corner.
+	 * is a dead cell. I start from the top left corner and go row by row, the cell (i, j) is the bit width * i + j.
 	 * 
 	 * @return A BitSet representing the current grid state.
 	 */
 	public BitSet getWorldSnapShot() {
-		BitSet bitField = new BitSet();
-		for (int i = 0; i < currentGridSize; i++) {
-			for (int j = 0; j < currentGridSize; j++) {
-				int idx = currentGridSize * i + j;
-				if(grid[i][j]){
-					bitField.set(idx);
-				} else {
-					bitField.clear(idx);
-				}
-			}
+		if(periodDetector.isPeriodic()){
+			return (BitSet) periodDetector.getCurrentState().clone();
 		}
-
+		BitSet bitField = new BitSet();
+		// Only the living cells are visited.
+		engine.writeSnapshot(bitField);
 		return bitField;
 	}
 
+	/**
+	 * @return the current grid state encoded like {@link BitSet#toByteArray()}, the engine may encode it straight from its
+	 * storage.
+	 */
+	public byte[] getWorldSnapShotBytes() {
+		if(periodDetector.isPeriodic()){
+			return periodDetector.getCurrentState().toByteArray();
+		}
+		return engine.encodeSnapshot();
+	}
+
 	/**
 	 * Use the BitSet to populate the world. The BitSet act as a bitField the bit num "x" correspond to a
 	 * cell in the grid. If the bit is set then the corresponding cell is alive if the bit is missing or unset then the corresponding
@@ -276,56 +488,152 @@ public class GridModel extends Observable {
 	 * @param bitField
 	 */
 	public void populateWithSnapshot(BitSet bitField) {
+		stopReplay();
+		engine.readSnapshot(bitField);
+		fireCellsChanged(null);
+	}
 
-		for (int i = 0; i < currentGridSize; i++) {
-			for (int j = 0; j < currentGridSize; j++) {
-				boolean alive = bitField.get(currentGridSize * i +j);
-				setCell(i, j, alive);
-			}
+	/**
+	 * Read a pattern (RLE or .cells) and set its living cells in the grid, its top left corner being at the given cell.
+	 * The pattern wrap on the grid borders. The runs of cells are written straight into the engine while they are read.
+	 *
+	 * @param reader the pattern text.
+	 * @return whether the pattern has been read completely, the cells read before an error are kept.
+	 */
+	public boolean stampPattern(Reader reader, int y, int x) {
+		stopReplay();
+		PatternReader patternReader = new PatternReader(reader);
+		boolean complete = true;
+		try {
+			patternReader.read((row, column, length) -> {
+				int i = Math.floorMod(y + row, currentHeight);
+				int j = Math.floorMod(x + column, currentWidth);
+				// Split the run where it wraps, a run longer than the grid set the whole row.
+				length = Math.min(length, currentWidth);
+				while (length > 0) {
+					int part = Math.min(length, currentWidth - j);
+					engine.setRun(i, j, part, true);
+					length -= part;
+					j = 0;
+				}
+			});
+		} catch (IOException e) {
+			System.err.println("Cannot read the pattern: "+e.getMessage());
+			complete = false;
 		}
-		notifyObservers();
+		fireCellsChanged(null);
+		return complete;
 	}
 
-	public void setCellRequirement(int min, int max) {
-		if(cellRequirementCorrect(min, max)){
-			this.minInterval = min;
-			this.maxInterval = max;
-		} else {
-			System.err.println("Wrong data received cell requirement is not correct. Min = "+min+" Max = "+max );
+	/**
+	 * Same as {@link #populateWithSnapshot(BitSet)} with a snapshot encoded like {@link BitSet#toByteArray()}, the engine
+	 * may decode it straight into its storage.
+	 */
+	public void populateWithSnapshot(ByteBuffer bytes) {
+		stopReplay();
+		engine.decodeSnapshot(bytes);
+		fireCellsChanged(null);
+	}
+
+	/**
+	 * @param rule the new rule, ignored if null.
+	 */
+	public void setRule(Rule rule) {
+		if(rule != null && !rule.equals(this.rule)){
+			stopReplay();
+			this.rule = rule;
+			fireParametersChanged();
+		}
+	}
+
+	public Rule getRule() {
+		return rule;
+	}
+
+	/**
+	 * @param topology what is beyond the grid borders, ignored if the engine does not support it.
+	 */
+	public void setTopology(Topology topology) {
+		if(topology != engine.getTopology()){
+			stopReplay();
+			if(engine.setTopology(topology)){
+				fireParametersChanged();
+			} else {
+				System.err.println("The engine does not support the topology "+topology);
+			}
 		}
 	}
 
-	public static boolean cellRequirementCorrect(int min, int max) {
-		return (min >= 0 && max >= 0 && min <= Constants.MAXIMUM_CELL_NEIGHBORS && max <= Constants.MAXIMUM_CELL_NEIGHBORS
-				&& min <= max);
+	public Topology getTopology() {
+		return engine.getTopology();
 	}
 
-	public int getMinimumCellRequirement() {
-		return minInterval;
+	/**
+	 * @return whether the cells beyond the grid borders keep living, the grid is then only a window on the plane.
+	 */
+	public boolean isUnbounded() {
+		return engine.isUnbounded();
 	}
 
-	public int getMaximumCellRequirement() {
-		return maxInterval;
+	/**
+	 * Replace the engine, the world and the topology are given to the new one. The previous engine is released, it
+	 * must not be used anymore.
+	 *
+	 * @param newEngine the engine that will hold the cells and compute the generations.
+	 */
+	public void setEngine(GridEngine newEngine) {
+		if(newEngine == engine){
+			return;
+		}
+		stopReplay();
+		BitSet world = getWorldSnapShot();
+		newEngine.resize(currentWidth, currentHeight);
+		if(!newEngine.setTopology(engine.getTopology())){
+			System.err.println("The engine does not support the topology "+engine.getTopology());
+		}
+		newEngine.readSnapshot(world);
+
+		GridEngine previous = engine;
+		engine = newEngine;
+		previous.release();
+		fireChange(EnumSet.of(GridEvent.Kind.PARAMETERS, GridEvent.Kind.CELLS), 0, null);
 	}
 
 	public void setCurrentCycle(int cycle) {
-		this.cycle = cycle;		
+		this.cycle = cycle;
+		fireParametersChanged();
 	}
 
 	public void setCellApparitionPercentage(int appationPercentage) {
-		this.apparitionPercentage = appationPercentage;		
+		this.apparitionPercentage = appationPercentage;
+		fireParametersChanged();
+	}
+
+	/**
+	 * @return whether the given position is a cell of the grid.
+	 */
+	public boolean isCellPosition(int cellPosition) {
+		return cellPosition >= 0 && cellPosition < (long) currentWidth * currentHeight;
 	}
 
 	public int getApparitionPercentage() {
 		return apparitionPercentage;
 	}
 
+	/**
+	 * Set the cell at the given position alive, the position is the row times the width plus the column. A position
+	 * outside of the grid is ignored, it would write in the cells kept around the grid by the engines.
+	 */
 	public void setCell(int cellPosition) {
-		
-		int i = cellPosition/currentGridSize;
-		int j = cellPosition%currentGridSize;
+		if(!isCellPosition(cellPosition)){
+			System.err.println("Invalid cell position: "+cellPosition);
+			return;
+		}
+
+		int i = cellPosition/currentWidth;
+		int j = cellPosition%currentWidth;
 		setCell(i, j , true);
-		notifyObservers();
+		fireCellsChanged(Collections.singletonList(new Rectangle(j, i, 1, 1)));
 	}
 
 }
@@ -0,0 +1,187 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import engine.GridEngine;
+
+/**
+ * This class find out when the world has become periodic (a still life has a period of 1, a blinker a period of 2...).
+ * The fingerprints of the last generations are kept in a ring, when the current fingerprint was already seen p
+ * generations ago the next p states are recorded. A fingerprint is only computed when the population of the generation
+ * was already seen too, so the world is not hashed at every generation while it is still evolving. If the state after them is exactly the first recorded one the period is
+ * confirmed and the recorded states can be replayed instead of computing the generations again.
+ *
+ * @author Jean-Hugo
+ */
+public class PeriodDetector {
+
+	// The longest period that can be detected.
+	public static final int MAXIMUM_PERIOD = 64;
+	// The memory that the recorded states can use, the longer periods of the big grids are not detected.
+	public static final long MAXIMUM_RECORDED_BYTES = 64L << 20;
+
+	// The fingerprints of the last generations, position is the index of the next one.
+	private final long fingerprints[] = new long[MAXIMUM_PERIOD];
+	// Whether the fingerprint of each generation of the ring has been computed.
+	private final boolean hashed[] = new boolean[MAXIMUM_PERIOD];
+	// The populations of the last generations, in the same ring.
+	private final long populations[] = new long[MAXIMUM_PERIOD];
+	private int position = 0;
+	// The number of valid fingerprints in the ring.
+	private int count = 0;
+
+	// The period being checked or confirmed, 0 if there is none.
+	private int period = 0;
+	// The states of a whole period, the first one is the state where the period was found.
+	private List<BitSet> states = new ArrayList<BitSet>();
+	// Whether the recorded states have been checked and are replayed.
+	private boolean confirmed = false;
+	// The index of the current state in the recorded states while they are replayed.
+	private int replayIndex = 0;
+
+	/**
+	 * Called after each generation computed by the engine.
+	 */
+	public void record(GridEngine engine) {
+		long population = engine.getPopulation();
+		if(period == 0 && !isPopulationSeen(population)){
+			// The world cannot be the same as one of the last generations.
+			add(population, false, 0);
+			return;
+		}
+		long fingerprint = engine.fingerprint();
+
+		if(period > 0){
+			// The fingerprints of a periodic world repeat every period, the generations before the period was found may
+			// only have their population.
+			boolean repeated = isHashed(period) ? fingerprint == getFingerprint(period)
+					: population == populations[getIndex(period)];
+			if(!repeated){
+				forget();
+			} else if(states.size() < period){
+				states.add(getSnapshot(engine));
+			} else {
+				// The state one period after the first recorded one must be exactly the same.
+				confirmed = getSnapshot(engine).equals(states.get(0));
+				replayIndex = 0;
+				if(!confirmed){
+					forget();
+				}
+				return;
+			}
+		} else {
+			for (int p = 1; p <= count; p++) {
+				if(isHashed(p) && getFingerprint(p) == fingerprint){
+					long bytes = (long) p * engine.getWidth() * engine.getHeight() / Byte.SIZE;
+					if(bytes <= MAXIMUM_RECORDED_BYTES){
+						period = p;
+						states.add(getSnapshot(engine));
+					}
+					break;
+				}
+			}
+		}
+
+		add(population, true, fingerprint);
+	}
+
+	/**
+	 * Add the current generation to the ring.
+	 */
+	private void add(long population, boolean isHashed, long fingerprint) {
+		populations[position] = population;
+		hashed[position] = isHashed;
+		fingerprints[position] = fingerprint;
+		position = (position + 1) % MAXIMUM_PERIOD;
+		count = Math.min(count + 1, MAXIMUM_PERIOD);
+	}
+
+	/**
+	 * @return whether one of the generations of the ring had the given population.
+	 */
+	private boolean isPopulationSeen(long population) {
+		for (int p = 1; p <= count; p++) {
+			if(populations[getIndex(p)] == population){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the fingerprint recorded the given number of generations ago (1 is the previous generation).
+	 */
+	private long getFingerprint(int generationsAgo) {
+		return fingerprints[getIndex(generationsAgo)];
+	}
+
+	/**
+	 * @return whether the fingerprint of the generation the given number of generations ago has been computed.
+	 */
+	private boolean isHashed(int generationsAgo) {
+		return hashed[getIndex(generationsAgo)];
+	}
+
+	private int getIndex(int generationsAgo) {
+		return (position - generationsAgo + MAXIMUM_PERIOD) % MAXIMUM_PERIOD;
+	}
+
+	private BitSet getSnapshot(GridEngine engine) {
+		BitSet bitField = new BitSet();
+		engine.writeSnapshot(bitField);
+		return bitField;
+	}
+
+	/**
+	 * Forget the candidate period and its recorded states, but keep the fingerprints.
+	 */
+	private void forget() {
+		period = 0;
+		states.clear();
+		confirmed = false;
+	}
+
+	/**
+	 * Replay the given number of generations.
+	 */
+	public void advance(long generations) {
+		replayIndex = (int) ((replayIndex + generations) % period);
+	}
+
+	/**
+	 * Forget everything, called when the world is changed by something else than a generation.
+	 *
+	 * @return the current state if the recorded states were replayed, since the engine has not computed it, null
+	 * otherwise.
+	 */
+	public BitSet reset() {
+		BitSet current = confirmed ? states.get(replayIndex) : null;
+		forget();
+		count = 0;
+		return current;
+	}
+
+	/**
+	 * @return whether the period is confirmed and the recorded states are replayed.
+	 */
+	public boolean isPeriodic() {
+		return confirmed;
+	}
+
+	/**
+	 * @return the confirmed period or 0 if the world is not known to be periodic.
+	 */
+	public int getPeriod() {
+		return confirmed ? period : 0;
+	}
+
+	/**
+	 * @return the current state while the recorded states are replayed, it must not be modified.
+	 */
+	public BitSet getCurrentState() {
+		return states.get(replayIndex);
+	}
+
+}
@@ -0,0 +1,93 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Generate a random world from a seed, the same seed always give the same world whatever the engine or the machine. So
+ * the clients can build the world of a reset themselves from its seed instead of receiving it.
+ *
+ * The world is generated in the snapshot layout (the cells row after row, 64 cells per long) a whole long at a time.
+ * Each band of longs use its own random stream split from the seed, so the bands are generated in parallel.
+ *
+ * @author Jean-Hugo
+ */
+public class RandomSoup {
+
+	// The number of longs generated by one random stream.
+	static final int WORDS_PER_BAND = 4096;
+	// The precision of the apparition probability, in bits.
+	private static final int PROBABILITY_BITS = 16;
+
+	private RandomSoup() {
+	}
+
+	/**
+	 * @param width the grid width.
+	 * @param height the grid height.
+	 * @param percentage the percentage of living cells, from 0 to 100.
+	 * @param seed the seed of the world.
+	 * @return the world snapshot, in the format read by GridModel.populateWithSnapshot.
+	 */
+	public static ByteBuffer generate(int width, int height, int percentage, long seed) {
+		long cells = (long) width * height;
+		int words = (int) ((cells + Long.SIZE - 1) / Long.SIZE);
+		ByteBuffer snapshot = ByteBuffer.allocate(words * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		if (percentage <= 0 || words == 0) {
+			return snapshot;
+		}
+
+		// The probability of a living cell as a fixed point number.
+		int probability = (int) Math.min(1L << PROBABILITY_BITS, Math.round(percentage * (double) (1 << PROBABILITY_BITS) / 100));
+
+		int bands = (words + WORDS_PER_BAND - 1) / WORDS_PER_BAND;
+		// Split the streams in order so they do not depend on the order in which the bands are generated.
+		SplittableRandom root = new SplittableRandom(seed);
+		SplittableRandom streams[] = new SplittableRandom[bands];
+		for (int band = 0; band < bands; band++) {
+			streams[band] = root.split();
+		}
+
+		IntStream range = IntStream.range(0, bands);
+		(bands > 1 ? range.parallel() : range).forEach(band -> {
+			int last = Math.min(words, (band + 1) * WORDS_PER_BAND);
+			for (int i = band * WORDS_PER_BAND; i < last; i++) {
+				snapshot.putLong(i * Long.BYTES, randomWord(streams[band], probability));
+			}
+		});
+
+		// Kill the bits after the last cell.
+		int lastBits = (int) (cells % Long.SIZE);
+		if (lastBits != 0) {
+			int idx = (words - 1) * Long.BYTES;
+			snapshot.putLong(idx, snapshot.getLong(idx) & ((1L << lastBits) - 1));
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Draw 64 cells at once, each one alive with the given probability. The bits of the probability are read from the
+	 * lowest one: a 1 bit give (word | random) and a 0 bit give (word & random), so after the highest bit each cell is
+	 * alive with the probability written in binary. Only one long is drawn for 50% and at most 16 for any percentage.
+	 *
+	 * @param probability the probability of a living cell, out of 2^16.
+	 */
+	static long randomWord(SplittableRandom random, int probability) {
+		if (probability >= 1 << PROBABILITY_BITS) {
+			return -1L;
+		}
+		long word = 0;
+		// The lower 0 bits would only clear an empty word.
+		for (int bit = Integer.numberOfTrailingZeros(probability); bit < PROBABILITY_BITS; bit++) {
+			if ((probability & (1 << bit)) != 0) {
+				word |= random.nextLong();
+			} else {
+				word &= random.nextLong();
+			}
+		}
+		return word;
+	}
+
+}
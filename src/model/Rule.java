@@ -0,0 +1,133 @@
+package model;
+
+import utils.Constants;
+
+/**
+ * A Life-like rule in the B/S notation, for example B3/S23 for the Conway's game of life or B36/S23 for HighLife. The
+ * rule is stored as 2 masks where the bit n is set if a cell with n neighbors is born (birth mask) or stay alive
+ * (survival mask), the engines compile these masks into their own transition tables.
+ *
+ * @author Jean-Hugo
+ */
+public class Rule {
+
+	// The rule of the original game.
+	public static final Rule CONWAY = new Rule(1 << 3, (1 << 2) | (1 << 3));
+
+	// A mask with a bit for every possible number of neighbors.
+	private static final int ALL_COUNTS = (1 << (Constants.MAXIMUM_CELL_NEIGHBORS + 1)) - 1;
+
+	// The bit n is set if a dead cell with n neighbors become alive.
+	private final int birthMask;
+	// The bit n is set if a living cell with n neighbors stay alive.
+	private final int survivalMask;
+
+	/**
+	 * Use {@link #fromMasks(int, int)} or {@link #parse(String)} to check the values.
+	 */
+	private Rule(int birthMask, int survivalMask) {
+		this.birthMask = birthMask;
+		this.survivalMask = survivalMask;
+	}
+
+	/**
+	 * @return the rule with the given masks or null if they are not correct.
+	 */
+	public static Rule fromMasks(int birthMask, int survivalMask) {
+		if(!masksCorrect(birthMask, survivalMask)){
+			System.err.println("Wrong rule masks: birth = "+Integer.toBinaryString(birthMask)
+					+" survival = "+Integer.toBinaryString(survivalMask));
+			return null;
+		}
+		return new Rule(birthMask, survivalMask);
+	}
+
+	/**
+	 * The sparse engines never compute the empty regions, so a birth without neighbors (B0) is not allowed.
+	 *
+	 * @return whether the masks only use the possible numbers of neighbors.
+	 */
+	public static boolean masksCorrect(int birthMask, int survivalMask) {
+		return (birthMask & ~ALL_COUNTS) == 0 && (survivalMask & ~ALL_COUNTS) == 0 && (birthMask & 1) == 0;
+	}
+
+	/**
+	 * Parse a rule written as B{digits}/S{digits}, the case and the spaces are ignored.
+	 *
+	 * @return the rule or null if the text is not a correct rule.
+	 */
+	public static Rule parse(String text) {
+		String parts[] = text.replace(" ", "").toUpperCase().split("/", -1);
+		if(parts.length != 2 || !parts[0].startsWith("B") || !parts[1].startsWith("S")){
+			System.err.println("Wrong rule: "+text+". The rule must be written like B3/S23.");
+			return null;
+		}
+
+		int birthMask = parseCounts(parts[0].substring(1));
+		int survivalMask = parseCounts(parts[1].substring(1));
+		if(birthMask < 0 || survivalMask < 0){
+			System.err.println("Wrong rule: "+text+". The neighbors counts must be digits from "
+					+Constants.MINIMUM_CELL_NEIGHBORS+" to "+Constants.MAXIMUM_CELL_NEIGHBORS+".");
+			return null;
+		}
+		return fromMasks(birthMask, survivalMask);
+	}
+
+	/**
+	 * @return the mask of the given digits or -1 if a character is not a possible number of neighbors.
+	 */
+	private static int parseCounts(String digits) {
+		int mask = 0;
+		for (int i = 0; i < digits.length(); i++) {
+			int count = digits.charAt(i) - '0';
+			if(count < Constants.MINIMUM_CELL_NEIGHBORS || count > Constants.MAXIMUM_CELL_NEIGHBORS){
+				return -1;
+			}
+			mask |= 1 << count;
+		}
+		return mask;
+	}
+
+	public int getBirthMask() {
+		return birthMask;
+	}
+
+	public int getSurvivalMask() {
+		return survivalMask;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(!(other instanceof Rule)){
+			return false;
+		}
+		Rule rule = (Rule) other;
+		return birthMask == rule.birthMask && survivalMask == rule.survivalMask;
+	}
+
+	@Override
+	public int hashCode() {
+		return (birthMask << 16) | survivalMask;
+	}
+
+	/**
+	 * @return the rule in the B/S notation.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("B");
+		appendCounts(builder, birthMask);
+		builder.append("/S");
+		appendCounts(builder, survivalMask);
+		return builder.toString();
+	}
+
+	private static void appendCounts(StringBuilder builder, int mask) {
+		for (int count = Constants.MINIMUM_CELL_NEIGHBORS; count <= Constants.MAXIMUM_CELL_NEIGHBORS; count++) {
+			if(((mask >> count) & 1) != 0){
+				builder.append(count);
+			}
+		}
+	}
+
+}
@@ -1,12 +1,19 @@
 package networkcontroller;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
 import java.util.Arrays;
 import java.util.BitSet;
 
 import javax.swing.JLabel;
 
+import engine.Topology;
 import model.GridModel;
+import model.Rule;
 import utils.Constants;
 import view.CommandPanel;
 
@@ -25,6 +32,22 @@ public class ClientGridController extends NetworkedGridController{
 	private byte[] lastSnapshotMessageReceived;
 	// This is the label displayed on top of the grid view. It should be updated accordingly.
 	private JLabel cycleLabel;
+	// The period sent by the server, while it is not 0 the generations are computed locally.
+	private int period = 0;
+	// Whether the commands of a lockstep tick are being processed, they are then applied here like on the server.
+	private boolean inLockstepTick = false;
+	// Whether the world state has been asked again after a desync, the ticks are ignored until it is received.
+	private boolean awaitingResync = false;
+	// The connection to the server, used to ask for the world state. Null if not connected.
+	private SocketChannel socket;
+	// The last world received in the snapshot layout, the deltas are applied to it. Null until a whole world is received.
+	private long[] lastWords;
+	// The number of the last world received.
+	private int lastSequence;
+	// Whether the next world has been asked whole after a missed one, the deltas are ignored until it is received.
+	private boolean awaitingKeyframe = false;
+	// Decode the worlds sent whole.
+	private final SnapshotCodec snapshotCodec = new SnapshotCodec();
 
 	public ClientGridController(GridModel gridModel, CommandPanel commandPanel, JLabel cycleLabel) {
 		super(gridModel);
@@ -37,26 +60,63 @@ public class ClientGridController extends NetworkedGridController{
 		boolean needUpdate = false;
 
 		synchronized (pendingCommands) {
-			for(byte[] message : pendingCommands){
-
-				// When a command has been received, an update is necessary.
-				needUpdate = true;
-
-				if(isWorldSnapshot(message)){
-					this.lastSnapshotMessageReceived = message;
-					// Skip the message code.
-					processGridSnapshot(Arrays.copyOfRange(message, Short.BYTES, message.length));
-				} else if(isWorldInit(message)){
-					processWorldInit(message);
-				} else {
-					processCommand(message);
+			// The view is repainted once for all the messages.
+			gridModel.beginChanges();
+			try {
+				for(byte[] message : pendingCommands){
+
+					// When a command has been received, an update is necessary.
+					needUpdate = true;
+					try {
+						processMessage(message);
+					} catch (RuntimeException e) {
+						// A message that cannot be applied is skipped, the next ones are still applied.
+						System.err.println("[CLIENT] Cannot process the message "+getCodeFromMessage(message)+": "+e);
+					}
 				}
+			} finally {
+				// A message is never processed twice.
+				pendingCommands.clear();
+				gridModel.endChanges();
 			}
-			pendingCommands.clear();
 		}
 		return needUpdate;
 	}
 
+	/**
+	 * Apply a message of the server to the world.
+	 */
+	private void processMessage(byte[] message) {
+		// Any change of the world from the server stop the local loop, except the update rate.
+		if(getCodeFromMessage(message) != Constants.CHANGE_GRID_UPDATE_RATE_COMMAND){
+			period = 0;
+		}
+
+		if(isWorldSnapshot(message)){
+			this.lastSnapshotMessageReceived = message;
+			processKeyframe(message);
+		} else if(getCodeFromMessage(message) == Constants.GRID_DELTA){
+			this.lastSnapshotMessageReceived = message;
+			processGridDelta(message);
+		} else if(isWorldInit(message)){
+			processWorldInit(message);
+		} else if(getCodeFromMessage(message) == Constants.LOCKSTEP_TICK){
+			processLockstepTick(message);
+		} else if(getCodeFromMessage(message) == Constants.GRID_PERIOD){
+			ByteBuffer buffer = ByteBuffer.wrap(message, Short.BYTES, Integer.BYTES * 2);
+			int newPeriod = buffer.getInt();
+			int cycle = buffer.getInt();
+			processGridSnapshot(Arrays.copyOfRange(message, Short.BYTES + Integer.BYTES * 2, message.length));
+			gridModel.setCurrentCycle(cycle);
+			updateLabelCycle();
+			period = newPeriod;
+			// The generations are computed here from now on, the next world will be sent whole.
+			lastWords = null;
+		} else {
+			processCommand(message);
+		}
+	}
+
 	/**
 	 * Initialize the game with the server data by reading parameter from a byte array.
 	 * 
@@ -69,30 +129,219 @@ public class ClientGridController extends NetworkedGridController{
 		// Skip the first 2 byte (message code).
 		buffer.position(Short.BYTES);
 		
-		short currentGridSize = buffer.getShort();
+		int currentWidth = buffer.getInt();
+		int currentHeight = buffer.getInt();
 		int currentUpdateRate =  buffer.getInt();
-		int min = buffer.getShort();
-		int max = buffer.getShort();
+		Rule rule = Rule.fromMasks(buffer.getShort(), buffer.getShort());
 		int apparitionPercentage = buffer.getShort();
 		int cycle = buffer.getInt();
+		int worldPeriod = buffer.getInt();
+		Topology topology = readTopology(buffer.get());
 
 		// Update the model accordingly.
-		gridModel.setCurrentSize(currentGridSize);
-		gridModel.setCellRequirement(min, max);
+		gridModel.setCurrentSize(currentWidth, currentHeight);
+		gridModel.setRule(rule);
 		gridModel.setCellApparitionPercentage(apparitionPercentage);
 		gridModel.setCurrentCycle(cycle);
+		gridModel.setUpdateRate(currentUpdateRate);
+		// The periodic worlds are computed here, on the same topology as the server.
+		gridModel.setTopology(topology);
 
 		// Update the GUI.
-		commandPanel.setCurrentGridSize(currentGridSize);
+		commandPanel.setCurrentGridSize(currentWidth, currentHeight);
 		commandPanel.setCurrentUpdateRate(currentUpdateRate);
-		commandPanel.setCellRequirement(min, max);
+		commandPanel.setRule(gridModel.getRule());
 		commandPanel.setApparitionPercentage(apparitionPercentage);
 		updateLabelCycle();
 		
 		
-		// Initialize the grid tab.
-		byte[] snapshot = Arrays.copyOfRange(message, buffer.position(), message.length);
-		processGridSnapshot(snapshot);
+		// Initialize the grid tab, the snapshot is the generation of the cycle above.
+		gridModel.populateWithSnapshot(BitSet.valueOf(buffer));
+		period = worldPeriod;
+		awaitingResync = false;
+		// The server send the next world whole.
+		lastWords = null;
+		awaitingKeyframe = false;
+	}
+
+	/**
+	 * Do what the server did during a tick in lockstep mode: compute the generation if it did, then apply the commands
+	 * it processed. If the client is not at the cycle the tick start from, or if the world hash sent with the tick is not
+	 * the one of the client world, the world state is asked again.
+	 *
+	 * @param message the tick sent by the server.
+	 */
+	private void processLockstepTick(byte[] message) {
+		if(awaitingResync){
+			return;
+		}
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(message);
+			buffer.position(Short.BYTES);
+			int cycle = buffer.getInt();
+			byte flags = buffer.get();
+			long hash = buffer.getLong();
+			int count = buffer.getShort();
+			if(cycle != gridModel.getCycle()){
+				requestResync();
+				return;
+			}
+
+			if((flags & TICK_STEPPED) != 0){
+				gridModel.update();
+			}
+			inLockstepTick = true;
+			try {
+				for(int i = 0; i < count; i++){
+					byte[] command = new byte[buffer.getShort()];
+					buffer.get(command);
+					processCommand(command);
+				}
+			} finally {
+				inLockstepTick = false;
+			}
+			updateLabelCycle();
+
+			if((flags & TICK_HASHED) != 0 && hash != gridModel.getFingerprint()){
+				requestResync();
+			}
+		} catch (BufferUnderflowException e) {
+			// A truncated tick cannot be applied.
+			requestResync();
+		}
+	}
+
+	/**
+	 * Replace the world with the one sent whole by the server: its number, its cycle, then the cells encoded by the
+	 * {@link SnapshotCodec}. The following deltas apply to it.
+	 *
+	 * @param message the keyframe sent by the server.
+	 */
+	private void processKeyframe(byte[] message) {
+		long[] words;
+		int sequence;
+		int cycle;
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(message);
+			buffer.position(Short.BYTES);
+			sequence = buffer.getInt();
+			cycle = buffer.getInt();
+			long bits = (long) gridModel.getCurrentWidth() * gridModel.getCurrentHeight();
+			words = snapshotCodec.decode(buffer, (int) ((bits + Long.SIZE - 1) / Long.SIZE));
+		} catch (IllegalArgumentException | BufferUnderflowException e) {
+			System.err.println("[CLIENT] Cannot decode the world: "+e.getMessage());
+			requestKeyframe();
+			return;
+		}
+
+		ByteBuffer snapshot = ByteBuffer.allocate(words.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		snapshot.asLongBuffer().put(words);
+		gridModel.populateWithSnapshot(snapshot);
+		// The cycle of the server, the worlds dropped for a slow client are not counted here.
+		gridModel.setCurrentCycle(cycle);
+		updateLabelCycle();
+		lastWords = words;
+		lastSequence = sequence;
+		awaitingKeyframe = false;
+	}
+
+	/**
+	 * Apply the words changed since the previous world: the number of the world, its cycle, the grid dimensions, the
+	 * number of words then each word index and the XOR of the word. The delta is ignored and the next world is asked whole if the
+	 * previous one is not the last one received.
+	 *
+	 * @param message the delta sent by the server.
+	 */
+	private void processGridDelta(byte[] message) {
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(message);
+			buffer.position(Short.BYTES);
+			int sequence = buffer.getInt();
+			int cycle = buffer.getInt();
+			int width = buffer.getInt();
+			int height = buffer.getInt();
+			int count = buffer.getInt();
+			if(lastWords == null || sequence != lastSequence + 1 || width != gridModel.getCurrentWidth()
+					|| height != gridModel.getCurrentHeight()){
+				requestKeyframe();
+				return;
+			}
+
+			long[] words = lastWords.clone();
+			for(int i = 0; i < count; i++){
+				int index = buffer.getInt();
+				long change = buffer.getLong();
+				if(index < 0 || index >= words.length){
+					requestKeyframe();
+					return;
+				}
+				words[index] ^= change;
+			}
+
+			ByteBuffer snapshot = ByteBuffer.allocate(words.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			snapshot.asLongBuffer().put(words);
+			gridModel.populateWithSnapshot(snapshot);
+			gridModel.setCurrentCycle(cycle);
+			updateLabelCycle();
+			lastWords = words;
+			lastSequence = sequence;
+		} catch (BufferUnderflowException e) {
+			// A truncated delta cannot be applied.
+			requestKeyframe();
+		}
+	}
+
+	/**
+	 * Ask the server to send the next world whole, the deltas are ignored until it is received.
+	 */
+	private void requestKeyframe() {
+		lastWords = null;
+		if(!awaitingKeyframe){
+			awaitingKeyframe = true;
+			sendResyncRequest();
+		}
+	}
+
+	/**
+	 * Ask the server to send the world state again, the ticks are ignored until it is received.
+	 */
+	private void requestResync() {
+		awaitingResync = true;
+		System.err.println("The world is not the same as the server one at cycle "+gridModel.getCycle()+", resync.");
+		sendResyncRequest();
+	}
+
+	/**
+	 * Send the resync request to the server: in lockstep mode it answer with the world state, otherwise with the next
+	 * world sent whole.
+	 */
+	private void sendResyncRequest() {
+		if(socket == null){
+			return;
+		}
+		try {
+			MessageFramer.write(socket, ByteBuffer.allocate(Short.BYTES).putShort(Constants.RESYNC_REQUEST_COMMAND).array());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return whether the client wait for the world state after a desync in lockstep mode.
+	 */
+	public boolean isAwaitingResync() {
+		return awaitingResync;
+	}
+
+	/**
+	 * @return whether the client wait for a whole world after a missed one.
+	 */
+	public boolean isAwaitingKeyframe() {
+		return awaitingKeyframe;
+	}
+
+	public void setSocket(SocketChannel socket) {
+		this.socket = socket;
 	}
 
 	private void updateLabelCycle() {
@@ -100,9 +349,9 @@ public class ClientGridController extends NetworkedGridController{
 	}
 
 	@Override
-	protected void processGridSizeChange(int newSize) {
-		super.processGridSizeChange(newSize);
-		commandPanel.setCurrentGridSize(newSize);
+	protected void processGridSizeChange(int newWidth, int newHeight) {
+		super.processGridSizeChange(newWidth, newHeight);
+		commandPanel.setCurrentGridSize(newWidth, newHeight);
 	}
 
 	@Override
@@ -112,20 +361,68 @@ public class ClientGridController extends NetworkedGridController{
 	}
 
 	@Override
-	protected void processGridCellRequirement(int min, int max) {
-		super.processGridCellRequirement(min, max);
-		commandPanel.setCellRequirement(min, max);
+	protected void processGridRule(Rule rule) {
+		super.processGridRule(rule);
+		commandPanel.setRule(rule);
 	}
 
+	/**
+	 * In lockstep mode the generations are computed here, otherwise the world and its cycle come with the next world sent
+	 * by the server.
+	 */
 	@Override
-	protected void processGridReset(int appationPercentage) {
-		gridModel.setCellApparitionPercentage(appationPercentage);
-		gridModel.setCurrentCycle(0);
+	protected void processAdvance(int generations) {
+		if(inLockstepTick){
+			gridModel.advance(generations);
+			updateLabelCycle();
+		}
+	}
+
+	/**
+	 * The cells are set by the snapshots, except in lockstep mode.
+	 */
+	@Override
+	protected void processSettingCell(int cellPosition) {
+		if(inLockstepTick){
+			gridModel.setCell(cellPosition);
+		}
+	}
+
+	@Override
+	protected void processStampPattern(int y, int x, String pattern) {
+		if(inLockstepTick){
+			gridModel.stampPattern(new StringReader(pattern), y, x);
+		}
+	}
+
+	@Override
+	protected void processGridReset(int appationPercentage, long seed) {
+		super.processGridReset(appationPercentage, seed);
+		// The server does not send the world built from the seed, the next delta apply to it.
+		if(!awaitingKeyframe){
+			lastWords = gridModel.getWorldWords();
+		}
 		updateLabelCycle();
 		commandPanel.setApparitionPercentage(appationPercentage);
 	}
 
 
+	/**
+	 * @return whether the world is periodic, the server then stop sending the snapshots and the generations have to be
+	 * computed locally.
+	 */
+	public boolean isLoopingLocally() {
+		return period != 0;
+	}
+
+	/**
+	 * Compute locally the next generation of the periodic world.
+	 */
+	public void updateLocally() {
+		gridModel.update();
+		updateLabelCycle();
+	}
+
 	/**
 	 * Parse the server message, get the server snapshot and fill the grid with it.
 	 * 
@@ -136,8 +433,6 @@ public class ClientGridController extends NetworkedGridController{
 		BitSet bitField = BitSet.valueOf(snapShot);
 
 		gridModel.populateWithSnapshot(bitField);
-		gridModel.incrementCycle();
-		updateLabelCycle();
 
 		if(Constants.DEBUG_BITSET){
 			System.out.println("[CLIENT] bitSetCardinality = "+bitField.cardinality());
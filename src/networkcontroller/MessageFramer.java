@@ -0,0 +1,117 @@
+package networkcontroller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import utils.Constants;
+
+/**
+ * Cut the bytes read from a connection between the clients and the server in messages. Every message is sent after its
+ * length as an int, so a read can hold several messages or only a part of one: the bytes are kept until the message is
+ * complete. There is one framer per connection.
+ *
+ * @author Jean-Hugo
+ */
+public class MessageFramer {
+
+	// The bytes read and not yet cut in messages, ready to be written.
+	private ByteBuffer buffer = ByteBuffer.allocate(Constants.BUFFER_SIZE);
+	// The biggest message accepted, a bigger length means the connection is broken.
+	private final int maximumMessageSize;
+
+	/**
+	 * @param maximumMessageSize the biggest message accepted from the connection.
+	 */
+	public MessageFramer(int maximumMessageSize) {
+		this.maximumMessageSize = maximumMessageSize;
+	}
+
+	/**
+	 * Read what the channel has and cut it in messages.
+	 *
+	 * @return the messages completed by this read, in order. Empty if none is complete yet.
+	 * @throws IOException if the connection is closed or a message is bigger than the maximum.
+	 */
+	public List<byte[]> read(ReadableByteChannel channel) throws IOException {
+		if(channel.read(buffer) < 0){
+			throw new IOException("Connection closed");
+		}
+		return getMessages();
+	}
+
+	/**
+	 * Take the complete messages out of the buffer and make room for the next one.
+	 */
+	private List<byte[]> getMessages() throws IOException {
+		List<byte[]> messages = new ArrayList<byte[]>();
+		buffer.flip();
+		while(buffer.remaining() >= Integer.BYTES){
+			int length = buffer.getInt(buffer.position());
+			if(length < 0 || length > maximumMessageSize){
+				throw new IOException("Invalid message length: "+length);
+			}
+			if(buffer.remaining() < Integer.BYTES + length){
+				break;
+			}
+			byte[] message = new byte[length];
+			buffer.position(buffer.position() + Integer.BYTES);
+			buffer.get(message);
+			messages.add(message);
+		}
+		buffer.compact();
+
+		// Grow the buffer when the next message does not fit in it, shrink it back once the big messages are read.
+		int needed = buffer.position() >= Integer.BYTES ? Integer.BYTES + buffer.getInt(0) : buffer.position();
+		if(needed > buffer.capacity()){
+			resize(needed);
+		} else if(buffer.capacity() > Constants.BUFFER_SIZE && needed <= Constants.BUFFER_SIZE){
+			resize(Constants.BUFFER_SIZE);
+		}
+		return messages;
+	}
+
+	/**
+	 * Move the bytes read to a buffer of the given capacity, it must be able to hold them.
+	 */
+	private void resize(int capacity) {
+		ByteBuffer resized = ByteBuffer.allocate(capacity);
+		buffer.flip();
+		resized.put(buffer);
+		buffer = resized;
+	}
+
+	/**
+	 * @return the bytes the framer can hold before growing, back to {@link Constants#BUFFER_SIZE} after a big message.
+	 */
+	public int getCapacity() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * @return the message after its length, ready to be written. The frame is read only so it can be shared by several
+	 * connections, each one writing a {@link ByteBuffer#duplicate()} of it.
+	 */
+	public static ByteBuffer frame(byte[] message) {
+		ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + message.length);
+		frame.putInt(message.length).put(message).flip();
+		return frame.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Write the whole message after its length on a blocking channel.
+	 */
+	public static void write(WritableByteChannel channel, byte[] message) throws IOException {
+		ByteBuffer frame = frame(message);
+		// The listener thread and the interface may send at the same time.
+		synchronized (channel) {
+			while(frame.hasRemaining()){
+				channel.write(frame);
+			}
+		}
+	}
+
+}
@@ -1,9 +1,12 @@
 package networkcontroller;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
+import engine.Topology;
 import model.GridModel;
+import model.Rule;
 import utils.Constants;
 
 /**
@@ -15,6 +18,9 @@ public abstract class NetworkedGridController {
 
 	protected static final int DATA = 1;
 	protected static final int TYPE = 0;
+	// The flags of a lockstep tick: whether a generation has been computed and whether the hash of the world is given.
+	protected static final byte TICK_STEPPED = 1;
+	protected static final byte TICK_HASHED = 2;
 
 	// The game model.
 	protected GridModel gridModel;
@@ -48,56 +54,101 @@ public abstract class NetworkedGridController {
 
 		synchronized (pendingCommands) {
 
-			for(byte[] message : pendingCommands){
-				// When a command has been received, an update is necessary.
-				needUpdate = true;
-				processCommand(message);
+			// The listeners receive a single event for all the commands.
+			gridModel.beginChanges();
+			try {
+				for(byte[] message : pendingCommands){
+					// When a command has been received, an update is necessary.
+					needUpdate = true;
+					try {
+						processCommand(message);
+					} catch (RuntimeException e) {
+						// A command that cannot be applied is skipped, the next ones are still applied.
+						System.err.println("Cannot process the command "+getCodeFromMessage(message)+": "+e);
+					}
+				}
+			} finally {
+				// A command is never processed twice.
+				pendingCommands.clear();
+				gridModel.endChanges();
 			}
-			pendingCommands.clear();
 		}
 
 		return needUpdate;
 	}
 
 	/**
-	 * Update the grid according to the given command.
-	 * TODO check for malformed commands ?
+	 * Update the grid according to the given command. The truncated and unknown commands are ignored.
 	 * 
 	 * @param message the server command to process.
 	 */
 	protected void processCommand(byte[] message) {
 
+		if(getCommandLength(message) < 0){
+			return;
+		}
 		ByteBuffer buf = ByteBuffer.wrap(message);
 		int code = buf.getShort();
 		
 		switch (code) {
 		case Constants.CHANGE_GRID_SIZE_COMMAND:
-			if(message.length > 1){
-				processGridSizeChange(buf.getShort());
-			}
+			int width = buf.getInt();
+			int height = buf.getInt();
+			processGridSizeChange(width, height);
 			break;
 			
 		case Constants.CHANGE_GRID_UPDATE_RATE_COMMAND:
-			if(message.length > 1){
-				processGridUpdateRate(buf.getInt());
-			}
+			processGridUpdateRate(buf.getInt());
 			break;
 			
 		case Constants.RESET_GRID_COMMAND:
-			processGridReset(buf.getShort());
+			// The apparition percentage then the seed of the new world.
+			int apparitionPercentage = buf.getShort();
+			processGridReset(apparitionPercentage, buf.getLong());
 			break;
 			
 		case Constants.CHANGE_GRID_CELL_REQUIREMENT_COMMAND:
-			// Here we need to retrieve 2 values in the message.
-			int minValue = buf.getShort();
-			int maxValue = buf.getShort();
-			
-			processGridCellRequirement(minValue, maxValue);
+			// Here we need to retrieve the birth and the survival masks of the rule.
+			int birthMask = buf.getShort();
+			int survivalMask = buf.getShort();
+
+			Rule rule = Rule.fromMasks(birthMask, survivalMask);
+			if(rule != null){
+				processGridRule(rule);
+			}
 			break;
 			
 		case Constants.GRID_SET_CELL:
+			// The position must be a cell of the current grid, whatever the engine keep around it.
 			int cellPosition = buf.getInt();
-			processSettingCell(cellPosition);
+			if(gridModel.isCellPosition(cellPosition)){
+				processSettingCell(cellPosition);
+			} else {
+				System.err.println("Dropped a cell outside the grid: "+cellPosition);
+			}
+			break;
+
+		case Constants.STAMP_PATTERN_COMMAND:
+			// The position of the pattern, then the length of its text.
+			int patternY = buf.getInt();
+			int patternX = buf.getInt();
+			int length = buf.getInt();
+			if(length >= 0 && length <= buf.remaining()){
+				byte[] text = new byte[length];
+				buf.get(text);
+				processStampPattern(patternY, patternX, new String(text, StandardCharsets.UTF_8));
+			}
+			break;
+
+		case Constants.CHECKPOINT_COMMAND:
+			processCheckpoint();
+			break;
+
+		case Constants.ADVANCE_GENERATIONS_COMMAND:
+			int generations = buf.getInt();
+			if(generations > 0 && generations <= Constants.MAXIMUM_ADVANCE_GENERATIONS){
+				processAdvance(generations);
+			}
 			break;
 			
 		default:
@@ -105,6 +156,44 @@ public abstract class NetworkedGridController {
 		}
 	}
 	
+	/**
+	 * @return the number of bytes of the given command, the rest of the message is not part of it. -1 if the command is
+	 * unknown or truncated.
+	 */
+	public static int getCommandLength(byte[] message) {
+		if(message.length < Short.BYTES){
+			return -1;
+		}
+		ByteBuffer buf = ByteBuffer.wrap(message);
+		int length;
+		switch (buf.getShort()) {
+		case Constants.CHANGE_GRID_SIZE_COMMAND:
+			length = Short.BYTES + Integer.BYTES * 2;
+			break;
+		case Constants.RESET_GRID_COMMAND:
+			length = Short.BYTES * 2 + Long.BYTES;
+			break;
+		case Constants.CHANGE_GRID_UPDATE_RATE_COMMAND:
+		case Constants.CHANGE_GRID_CELL_REQUIREMENT_COMMAND:
+		case Constants.GRID_SET_CELL:
+		case Constants.ADVANCE_GENERATIONS_COMMAND:
+			length = Short.BYTES + Integer.BYTES;
+			break;
+		case Constants.STAMP_PATTERN_COMMAND:
+			// The position, then the length of the text.
+			length = message.length >= Short.BYTES + Integer.BYTES * 3
+					? Short.BYTES + Integer.BYTES * 3 + Math.max(0, buf.getInt(Short.BYTES + Integer.BYTES * 2)) : -1;
+			break;
+		case Constants.CHECKPOINT_COMMAND:
+			length = Short.BYTES;
+			break;
+		default:
+			length = -1;
+			break;
+		}
+		return length <= message.length ? length : -1;
+	}
+
 	/**
 	 *  Return the code associated to the given message.
 	 *  
@@ -120,21 +209,47 @@ public abstract class NetworkedGridController {
 		// Do nothing by default.
 	}
 
-	protected void processGridCellRequirement(int min, int max) {
-		gridModel.setCellRequirement(min, max);
+	protected void processAdvance(int generations) {
+		// Do nothing by default.
+	}
+
+	protected void processCheckpoint() {
+		// Do nothing by default.
+	}
+
+	protected void processStampPattern(int y, int x, String pattern) {
+		// Do nothing by default.
+	}
+
+	/**
+	 * @return the topology written as its ordinal in the initialization message, the torus if it is unknown.
+	 */
+	protected static Topology readTopology(byte ordinal) {
+		if(ordinal >= 0 && ordinal < Topology.values().length){
+			return Topology.values()[ordinal];
+		}
+		return Topology.TORUS;
+	}
+
+	protected void processGridRule(Rule rule) {
+		gridModel.setRule(rule);
 	}
 
 	protected void processGridUpdateRate(int newUpdateRate) {
 		gridModel.setUpdateRate(newUpdateRate);
 	}
 
-	protected void processGridReset(int appationPercentage) {
+	/**
+	 * Reset the cycle and build the random world of the given seed, it is the same on the server and on the clients.
+	 */
+	protected void processGridReset(int appationPercentage, long seed) {
 		gridModel.setCellApparitionPercentage(appationPercentage);
 		gridModel.resetGrid();
+		gridModel.populateRandomly(seed);
 	}
 
-	protected void processGridSizeChange(int newSize) {
-		gridModel.setCurrentSize(newSize);
+	protected void processGridSizeChange(int newWidth, int newHeight) {
+		gridModel.setCurrentSize(newWidth, newHeight);
 	}
 
 }
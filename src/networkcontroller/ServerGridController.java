@@ -1,15 +1,21 @@
 package networkcontroller;
 
-import java.io.IOException;
+import java.io.StringReader;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.nio.channels.ServerSocketChannel;
-import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import engine.Topology;
+import model.GenerationSnapshot;
 import model.GridModel;
+import model.Rule;
+import server.CheckpointStore;
+import server.ClientConnection;
 import utils.Constants;
 import utils.Timer;
 import utils.UtilsFunctions;
@@ -25,10 +31,42 @@ public class ServerGridController extends NetworkedGridController{
 	// Allow to easily switch debug log on/off.
 	private final static boolean DEBUG = false;
 
-	// Used to retrieve connected players.
-	private Selector selector;
+	// The players that joined this world.
+	private final Set<SelectionKey> clients = ConcurrentHashMap.newKeySet();
 	// The timer used to calculate when the game need to be updated.
 	protected Timer timer;
+	// The period sent to the clients, they loop over the generations themselves until the world is changed.
+	private int announcedPeriod = 0;
+	// Whether the world comes from the seed of the last reset, the clients already built it so it is not sent.
+	private boolean resetFromSeed = false;
+	// Save the world state periodically or on demand, null if the server has no checkpoint.
+	private CheckpointStore checkpointStore;
+	// The initialization message of the checkpoint the server started from. It is sent to the clients as it is until
+	// the world change.
+	private volatile ByteBuffer restoredInitializationMessage;
+	// Whether the clients compute the generations themselves, they are then only sent the commands of each tick.
+	private volatile boolean lockstep = false;
+	// The commands processed during the current tick, sent with it in lockstep mode.
+	private final List<byte[]> tickCommands = new ArrayList<byte[]>();
+	// The clients waiting for the world state, in lockstep mode it is sent to them at the end of the next tick.
+	private final Set<SelectionKey> pendingInitializations = ConcurrentHashMap.newKeySet();
+	// The number of ticks sent since the last one holding the hash of the world.
+	private int ticksSinceHash = 0;
+	// The last world sent to the clients in the snapshot layout and its dimensions, the next one is sent as a delta
+	// from it. Null if the clients may not have it, the next one is then sent whole.
+	private long[] previousWords;
+	private int previousWidth;
+	private int previousHeight;
+	// The number of the last world sent, a delta only apply to the world just before it.
+	private int snapshotSequence = 0;
+	// The number of deltas sent since the last whole world.
+	private int deltasSinceKeyframe = 0;
+	// The clients that will be sent the next world whole instead of a delta: the new ones and the ones that missed one.
+	private final Set<SelectionKey> keyframeRequests = ConcurrentHashMap.newKeySet();
+	// Encode the worlds sent whole.
+	private final SnapshotCodec snapshotCodec = new SnapshotCodec();
+	// The number of worlds encoded since the codec report was last printed.
+	private int keyframesSinceReport = 0;
 
 	public ServerGridController(GridModel gridModel, Timer timer) {
 		super(gridModel);
@@ -40,74 +78,340 @@ public class ServerGridController extends NetworkedGridController{
 		gridModel.setCell(cellPosition);
 	}
 	
+	/**
+	 * Compute all the generations at once, the snapshot will be sent only once after them.
+	 */
+	@Override
+	protected void processAdvance(int generations) {
+		gridModel.advance(generations);
+		// The next generation will be computed after a full update period.
+		timer.resetTimer();
+	}
+
+	@Override
+	protected void processStampPattern(int y, int x, String pattern) {
+		gridModel.stampPattern(new StringReader(pattern), y, x);
+	}
+
+	@Override
+	protected void processCommand(byte[] message) {
+		// Only a reset processed last leave the clients with the same world as the server.
+		resetFromSeed = false;
+		super.processCommand(message);
+		if(lockstep){
+			int length = getCommandLength(message);
+			if(length > 0){
+				tickCommands.add(Arrays.copyOf(message, length));
+			}
+		}
+	}
+
+	/**
+	 * The clients build the same world from the seed, so the world is not sent: the next delta apply to it. Out of
+	 * lockstep mode the command is sent to the clients from here, after the worlds computed before it.
+	 */
 	@Override
-	protected void processGridReset(int appationPercentage) {
-		super.processGridReset(appationPercentage);
+	protected void processGridReset(int appationPercentage, long seed) {
+		super.processGridReset(appationPercentage, seed);
 		timer.resetTimer();
-		// Server side a reset trigger a randomized world.
-		gridModel.populateRandomly();
+		resetFromSeed = true;
+		if(!lockstep){
+			previousWords = gridModel.getWorldWords();
+			previousWidth = gridModel.getCurrentWidth();
+			previousHeight = gridModel.getCurrentHeight();
+			sendToClients(ByteBuffer.allocate(Short.BYTES * 2 + Long.BYTES).putShort(Constants.RESET_GRID_COMMAND)
+					.putShort((short) appationPercentage).putLong(seed).array());
+		}
+	}
+
+	/**
+	 * Send the world state to the clients after an update or a command. Once the world is periodic, its period is sent
+	 * with the snapshot and nothing more is sent until the world is changed, the clients loop over the generations
+	 * themselves.
+	 */
+	public void publishWorldState() {
+		// The world may have changed since the checkpoint.
+		restoredInitializationMessage = null;
+
+		if(resetFromSeed){
+			resetFromSeed = false;
+			announcedPeriod = 0;
+			return;
+		}
+
+		int period = gridModel.getPeriod();
+		if(period == 0){
+			announcedPeriod = 0;
+			sendWorldSnapShotToClients();
+		} else if(period != announcedPeriod){
+			announcedPeriod = period;
+			// The clients loop over the generations from now on.
+			previousWords = null;
+			if(clientsConnected()){
+				// The period, the cycle of the world then the world.
+				byte[] code = ByteBuffer.allocate(Short.BYTES + Integer.BYTES * 2).putShort(Constants.GRID_PERIOD)
+						.putInt(period).putInt(gridModel.getCycle()).array();
+				sendToClients(UtilsFunctions.concatArray(code, gridModel.getWorldSnapShotBytes()));
+			}
+		}
 	}
 
 	/**
-	 * Send a world snapshot to the connected client.
+	 * In lockstep mode, send the tick to the clients instead of the world state: whether a generation has been
+	 * computed, then the commands processed after it. The clients do the same and check the hash of the world sent every
+	 * {@link Constants#LOCKSTEP_HASH_INTERVAL} ticks. Then the clients that joined or asked for a resync during the tick
+	 * are sent the world state.
+	 *
+	 * @param cycle the cycle of the world at the start of the tick, the clients check they are at the same one.
+	 * @param stepped whether a generation has been computed during the tick.
+	 * @return the tick message sent to the clients, null if nothing happened during the tick.
+	 */
+	public byte[] publishTick(int cycle, boolean stepped) {
+		byte[] message = null;
+		if(stepped || !tickCommands.isEmpty()){
+			// The world may have changed since the checkpoint.
+			restoredInitializationMessage = null;
+			message = getTickMessage(cycle, stepped);
+			tickCommands.clear();
+			sendToClients(message);
+		}
+
+		if(!pendingInitializations.isEmpty()){
+			ByteBuffer initialization = MessageFramer.frame(getInitializationMessage());
+			for(SelectionKey client : pendingInitializations){
+				pendingInitializations.remove(client);
+				if(ClientConnection.of(client).sendInitialization(initialization)){
+					clients.add(client);
+				}
+			}
+		}
+		return message;
+	}
+
+	private byte[] getTickMessage(int cycle, boolean stepped) {
+		byte flags = stepped ? TICK_STEPPED : 0;
+		long hash = 0;
+		if(++ticksSinceHash >= Constants.LOCKSTEP_HASH_INTERVAL){
+			ticksSinceHash = 0;
+			flags |= TICK_HASHED;
+			hash = gridModel.getFingerprint();
+		}
+
+		int length = Short.BYTES + Integer.BYTES + 1 + Long.BYTES + Short.BYTES;
+		for(byte[] command : tickCommands){
+			length += Short.BYTES + command.length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.putShort(Constants.LOCKSTEP_TICK).putInt(cycle).put(flags).putLong(hash);
+		buffer.putShort((short) tickCommands.size());
+		for(byte[] command : tickCommands){
+			buffer.putShort((short) command.length).put(command);
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Send the world to the connected clients. Only the words of cells that changed since the previous world are sent,
+	 * unless they are many or the clients may not have the previous world: the world is then sent whole (a keyframe).
+	 * A keyframe is also sent every {@link Constants#KEYFRAME_INTERVAL} worlds, and to the clients that joined or missed
+	 * a world.
 	 * 
 	 * @return The message representing the world current state send to the clients.
 	 */
 	public byte[] sendWorldSnapShotToClients() {
 
-		if(clientsConnected()){
+		if(!clientsConnected()){
+			// The clients that will join get a keyframe anyway.
+			previousWords = null;
+			return null;
+		}
+
+		long[] words;
+		int width;
+		int height;
+		int cycle;
+		try(GenerationSnapshot generation = gridModel.acquireSnapshot()){
+			words = generation.toLongArray();
+			width = generation.getWidth();
+			height = generation.getHeight();
+			cycle = generation.getCycle();
+		}
+		snapshotSequence++;
 
-			BitSet bs = gridModel.getWorldSnapShot();
+		byte[] toSend = null;
+		if(previousWords != null && width == previousWidth && height == previousHeight
+				&& ++deltasSinceKeyframe < Constants.KEYFRAME_INTERVAL){
+			toSend = getDeltaMessage(previousWords, words, width, height, cycle);
+		}
+		byte[] keyframe = null;
+		if(toSend == null){
+			keyframe = getKeyframeMessage(words, cycle);
+			toSend = keyframe;
+			deltasSinceKeyframe = 0;
+		}
+		previousWords = words;
+		previousWidth = width;
+		previousHeight = height;
 
-			// Create the snapshot message.
-			byte[] code = ByteBuffer.allocate(Short.BYTES).putShort(Constants.GRID_SNAPSHOT).array();
-			byte[] snapshot = bs.toByteArray();
-			byte[] toSend = UtilsFunctions.concatArray(code, snapshot);
+		if(Constants.DEBUG_BITSET){
+			System.out.println("[Server] bitSetCardinality = "+BitSet.valueOf(words).cardinality());
+		}
 
-			if(Constants.DEBUG_BITSET){
-				System.out.println("[Server] bitSetCardinality = "+bs.cardinality());
+		// The messages are framed once, every client write the same frames.
+		ByteBuffer frame = MessageFramer.frame(toSend);
+		ByteBuffer keyframeFrame = keyframe == toSend ? frame : null;
+		for(SelectionKey client : clients){
+			ClientConnection connection = ClientConnection.of(client);
+			// The world still waiting for a slow client is replaced, it will not have the world the delta apply to.
+			boolean whole = keyframeRequests.remove(client) | connection.hasPendingWorld();
+			if(whole && keyframeFrame == null){
+				keyframeFrame = MessageFramer.frame(getKeyframeMessage(words, cycle));
 			}
-			
-			sendToClients(toSend);
-			return toSend;
-		} else {
+			if(!connection.sendWorld(whole ? keyframeFrame : frame)){
+				clients.remove(client);
+			}
+		}
+		return toSend;
+	}
+
+	/**
+	 * @return the message holding the whole world: its number, its cycle, then the cells encoded by the
+	 * {@link SnapshotCodec}.
+	 */
+	private byte[] getKeyframeMessage(long[] words, int cycle) {
+		byte[] header = ByteBuffer.allocate(Short.BYTES + Integer.BYTES * 2).putShort(Constants.GRID_SNAPSHOT)
+				.putInt(snapshotSequence).putInt(cycle).array();
+		byte[] message = snapshotCodec.encode(header, words);
+		if(++keyframesSinceReport >= Constants.CODEC_REPORT_INTERVAL){
+			keyframesSinceReport = 0;
+			System.out.println("[Server] Snapshot codec: "+snapshotCodec.getReport());
+		}
+		return message;
+	}
+
+	/**
+	 * @return the codec of the worlds sent whole, with what it achieved so far.
+	 */
+	public SnapshotCodec getSnapshotCodec() {
+		return snapshotCodec;
+	}
+
+	/**
+	 * The delta hold the words that are not the same in both worlds, as their index and the XOR of both words. The
+	 * receiver XOR them again in its previous world and take the cycle of the world.
+	 *
+	 * @return the delta message, or null if it would not be smaller than the whole world.
+	 */
+	private byte[] getDeltaMessage(long[] previous, long[] words, int width, int height, int cycle) {
+		int changed = 0;
+		for(int i = 0; i < words.length; i++){
+			if(words[i] != previous[i]){
+				changed++;
+			}
+		}
+		int deltaSize = changed * (Integer.BYTES + Long.BYTES);
+		if(deltaSize >= words.length * Long.BYTES){
 			return null;
 		}
+
+		ByteBuffer delta = ByteBuffer.allocate(Short.BYTES + Integer.BYTES * 5 + deltaSize);
+		delta.putShort(Constants.GRID_DELTA).putInt(snapshotSequence).putInt(cycle).putInt(width).putInt(height)
+				.putInt(changed);
+		for(int i = 0; i < words.length; i++){
+			if(words[i] != previous[i]){
+				delta.putInt(i).putLong(words[i] ^ previous[i]);
+			}
+		}
+		return delta.array();
 	}
 
 	/**
-	 * If there is more than one channel registered then there is clients that are connected.
-	 * 
 	 * @return true if there is a least a client connected false otherwise.
 	 */
 	private boolean clientsConnected() {
-		return selector.keys().size() > 1;
+		return !clients.isEmpty();
 	}
 
-	private void sendToClients(byte[] toSend) {
-		
-		Iterator<SelectionKey> iterator = selector.keys().iterator();
-
-		// Iterate through all the connected clients.
-		while (iterator.hasNext()) {
-			SelectionKey selectionKey = iterator.next();
-			// If it is the server channel continue.
-			if(selectionKey.channel() instanceof ServerSocketChannel){
-				continue;
+	/**
+	 * Send the given message to the players of this world, like the commands forwarded by the listener.
+	 */
+	public void sendToClients(byte[] toSend) {
+
+		// Iterate through all the clients of this world, they share the same frame.
+		ByteBuffer frame = MessageFramer.frame(toSend);
+		for(SelectionKey selectionKey : clients){
+			if(!sendToClient(selectionKey, frame)){
+				clients.remove(selectionKey);
 			}
-			// Valid client channel.
-			SocketChannel clientChannel = (SocketChannel) selectionKey.channel();
-			try {
+		}
 
-				int byteSend = clientChannel.write(ByteBuffer.wrap(toSend));
+		if(Constants.DEBUG_BITSET){
+			System.out.println("[Server] send "+toSend.length+" bytes");
+		}
+	}
 
-				if(Constants.DEBUG_BITSET){
-					System.out.println("[Server] send "+byteSend+" bytes");
-				}
-			} catch (IOException e) {
-				selectionKey.cancel();
-			}
+	/**
+	 * Queue the given message for a single player, the commands are never dropped.
+	 *
+	 * @return whether the player is still connected.
+	 */
+	private boolean sendToClient(SelectionKey selectionKey, ByteBuffer frame) {
+		return ClientConnection.of(selectionKey).send(frame);
+	}
+
+	/**
+	 * Add a player to this world. The listener send it the initialization message, except in lockstep mode where it is
+	 * sent at the end of the next tick so the player does not miss or replay a tick. Otherwise the next world is sent
+	 * whole to the player, it cannot apply a delta to the initialization message.
+	 */
+	public void addClient(SelectionKey client) {
+		if(lockstep){
+			pendingInitializations.add(client);
+		} else {
+			keyframeRequests.add(client);
+			clients.add(client);
+		}
+	}
+
+	public void removeClient(SelectionKey client) {
+		clients.remove(client);
+		pendingInitializations.remove(client);
+		keyframeRequests.remove(client);
+	}
+
+	/**
+	 * Send the world state again to a player whose world is not the same as the server one anymore. In lockstep mode it
+	 * stop receiving the ticks until the end of the next one, otherwise the next world is sent whole to it.
+	 */
+	public void requestResync(SelectionKey client) {
+		if(!lockstep){
+			keyframeRequests.add(client);
+		} else if(clients.remove(client)){
+			pendingInitializations.add(client);
+		}
+	}
+
+	/**
+	 * The players compute the generations on the grid only, with the topology sent in the initialization message. A
+	 * world whose cells keep living beyond the grid cannot be reproduced by them, it is never in lockstep mode.
+	 *
+	 * @param lockstep whether the players compute the generations themselves and are only sent the commands.
+	 */
+	public void setLockstep(boolean lockstep) {
+		if(lockstep && gridModel.isUnbounded()){
+			System.err.println("[Server] The world is unbounded, the players cannot compute it in lockstep mode.");
+			this.lockstep = false;
+			return;
 		}
+		this.lockstep = lockstep;
+	}
+
+	public boolean isLockstep() {
+		return lockstep;
+	}
+
+	public int getClientCount() {
+		return clients.size();
 	}
 
 	/**
@@ -116,22 +420,47 @@ public class ServerGridController extends NetworkedGridController{
 	 * @return The initialization message sent to the client on first connection.
 	 */
 	public byte[] getInitializationMessage() {
+		ByteBuffer restored = restoredInitializationMessage;
+		if(restored != null){
+			byte[] message = new byte[restored.remaining()];
+			restored.duplicate().get(message);
+			return message;
+		}
+		// In lockstep mode the players never loop over a period by themselves, they follow the ticks.
+		return getInitializationMessage(lockstep ? 0 : gridModel.getPeriod());
+	}
+
+	/**
+	 * The message is built from the generation published by the model, so it can be called from the listener thread
+	 * while a generation is being computed.
+	 *
+	 * @param worldPeriod the period of the world written in the message.
+	 * @return The initialization message representing the current grid state.
+	 */
+	private byte[] getInitializationMessage(int worldPeriod) {
+		try(GenerationSnapshot generation = gridModel.acquireSnapshot()){
+			return getInitializationMessage(generation, worldPeriod);
+		}
+	}
+
+	private byte[] getInitializationMessage(GenerationSnapshot generation, int worldPeriod) {
 
-		
 		// Add the message code.
 		byte[] code = ByteBuffer.allocate(Short.BYTES).putShort(Constants.GRID_INITIALIZATION).array();
 
-		// Only allocate 1 byte because the size can never be bigger than 100.
-		byte[] gridSize = ByteBuffer.allocate(Short.BYTES).putShort((short)gridModel.getCurrentGridSize()).array();
+		byte[] gridSize = ByteBuffer.allocate(Integer.BYTES * 2).putInt(generation.getWidth())
+				.putInt(generation.getHeight()).array();
 		
 		// The update rate only allocate 2 because we only need 13 bit (2 bytes) to store the update rate (which is 0 to 5000).
 		byte[] gridUpdateRate = ByteBuffer.allocate(Integer.BYTES).putInt((int)gridModel.getUpdateRate()).array();
-		byte[] minCellRequirement = ByteBuffer.allocate(Short.BYTES).putShort((short)gridModel.getMinimumCellRequirement()).array();
-		byte[] maxCellRequirement = ByteBuffer.allocate(Short.BYTES).putShort((short)gridModel.getMaximumCellRequirement()).array();
+		byte[] rule = ByteBuffer.allocate(Short.BYTES * 2).putShort((short)gridModel.getRule().getBirthMask())
+				.putShort((short)gridModel.getRule().getSurvivalMask()).array();
 		byte[] apparitionPercentage = ByteBuffer.allocate(Short.BYTES).putShort((short)gridModel.getApparitionPercentage()).array();
-		byte[] currentCycle = ByteBuffer.allocate(Integer.BYTES).putInt(gridModel.getCycle()).array();
+		byte[] currentCycle = ByteBuffer.allocate(Integer.BYTES).putInt(generation.getCycle()).array();
+		byte[] period = ByteBuffer.allocate(Integer.BYTES).putInt(worldPeriod).array();
+		byte[] topology = {(byte) gridModel.getTopology().ordinal()};
 		
-		byte[] snapshot = gridModel.getWorldSnapShot().toByteArray();
+		byte[] snapshot = generation.toByteArray();
 
 		if(DEBUG){
 			System.out.println("grid size length = "+gridSize.length);
@@ -139,14 +468,65 @@ public class ServerGridController extends NetworkedGridController{
 
 		return UtilsFunctions.concatArray(code, gridSize,
 				gridUpdateRate,
-				minCellRequirement, maxCellRequirement,
+				rule,
 				apparitionPercentage,
 				currentCycle,
+				period,
+				topology,
 				snapshot);
 	}
 
-	public void setSelector(Selector selector) {
-		this.selector = selector;
+	/**
+	 * Save the current world state in the background, the server keep running during the write.
+	 */
+	public void saveCheckpoint() {
+		if(checkpointStore != null){
+			// A restarted server detect the period again, so it is not saved.
+			checkpointStore.saveAsync(getInitializationMessage(0));
+		}
+	}
+
+	@Override
+	protected void processCheckpoint() {
+		saveCheckpoint();
+	}
+
+	/**
+	 * Restore the world from the latest checkpoint of the given store, if there is one. The checkpoint is also used as
+	 * the initialization message until the world change.
+	 *
+	 * @return whether a checkpoint has been restored.
+	 */
+	public boolean restoreCheckpoint(CheckpointStore store) {
+		this.checkpointStore = store;
+		ByteBuffer message = store.load();
+		if(message == null){
+			return false;
+		}
+
+		ByteBuffer buffer = message.duplicate();
+		// Skip the message code.
+		buffer.position(Short.BYTES);
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		int updateRate = buffer.getInt();
+		Rule rule = Rule.fromMasks(buffer.getShort(), buffer.getShort());
+		int apparitionPercentage = buffer.getShort();
+		int cycle = buffer.getInt();
+		// The period is detected again.
+		buffer.getInt();
+		Topology topology = readTopology(buffer.get());
+
+		gridModel.setCurrentSize(width, height);
+		gridModel.setUpdateRate(updateRate);
+		gridModel.setRule(rule);
+		gridModel.setCellApparitionPercentage(apparitionPercentage);
+		gridModel.setCurrentCycle(cycle);
+		gridModel.setTopology(topology);
+		gridModel.populateWithSnapshot(buffer.slice());
+
+		restoredInitializationMessage = message;
+		return true;
 	}
 
 }
@@ -0,0 +1,371 @@
+package networkcontroller;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encode the worlds sent whole to the clients, choosing for each world the codec that suits its density:
+ * <ul>
+ * <li>{@link #RAW}: the cells like {@link java.util.BitSet#toByteArray()}, for the dense and chaotic worlds.</li>
+ * <li>{@link #RUNS}: the lengths of the runs of dead and living cells, starting with dead cells, for the worlds made of
+ * large blocks.</li>
+ * <li>{@link #SPARSE}: the number of dead cells before each living cell, for the worlds with a few scattered cells.</li>
+ * <li>{@link #DEFLATE}: the raw cells compressed, only tried when the cheap codecs do not halve the world since it cost
+ * much more time.</li>
+ * </ul>
+ * The lengths are written as variable length integers, 7 bits per byte. The encoded world start with the codec id.
+ *
+ * The buffers and the deflater are kept from a world to the next, only the returned message is allocated. The codec
+ * count the bytes it saved and the time it spent so the server can tell if it is worth it.
+ *
+ * @author Jean-Hugo
+ */
+public class SnapshotCodec {
+
+	public static final byte RAW = 0;
+	public static final byte RUNS = 1;
+	public static final byte SPARSE = 2;
+	public static final byte DEFLATE = 3;
+	private static final String NAMES[] = {"raw", "runs", "sparse", "deflate"};
+
+	// The deflate output must save at least this part of the raw world to be kept.
+	private static final int DEFLATE_MINIMUM_GAIN = 8;
+
+	// Reused from a world to the next.
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final Inflater inflater = new Inflater();
+	// The world as raw bytes.
+	private byte[] raw = new byte[0];
+	// The encoded world and its length.
+	private byte[] encoded = new byte[0];
+	private int encodedLength;
+
+	// What the codec achieved since it was created.
+	private final long framesByCodec[] = new long[NAMES.length];
+	private long rawBytes = 0;
+	private long encodedBytes = 0;
+	private long encodeNanos = 0;
+
+	/**
+	 * @param header the start of the message, copied before the encoded world.
+	 * @param words the world in the snapshot layout.
+	 * @return the message: the header, the codec id then the encoded world.
+	 */
+	public synchronized byte[] encode(byte[] header, long[] words) {
+		long start = System.nanoTime();
+
+		int rawLength = toRawBytes(words);
+		long population = 0;
+		long transitions = 0;
+		long previousBit = 0;
+		for(long word : words){
+			population += Long.bitCount(word);
+			// A bit differing from the one before it start a new run.
+			transitions += Long.bitCount(word ^ ((word << 1) | previousBit));
+			previousBit = word >>> (Long.SIZE - 1);
+		}
+		long cells = (long) rawLength * Byte.SIZE;
+		long sparseEstimate = population * getVarintLength(population == 0 ? 0 : cells / population);
+		long runsEstimate = transitions * getVarintLength(transitions == 0 ? 0 : cells / transitions);
+
+		byte codec;
+		if(Math.min(sparseEstimate, runsEstimate) * 2 < rawLength){
+			if(sparseEstimate <= runsEstimate){
+				codec = SPARSE;
+				encodeSparse(words);
+			} else {
+				codec = RUNS;
+				encodeRuns(words);
+			}
+		} else {
+			codec = DEFLATE;
+			if(!encodeDeflate(rawLength) || encodedLength > rawLength - rawLength / DEFLATE_MINIMUM_GAIN){
+				codec = RAW;
+				ensureEncodedCapacity(rawLength);
+				System.arraycopy(raw, 0, encoded, 0, rawLength);
+				encodedLength = rawLength;
+			}
+		}
+
+		byte[] message = new byte[header.length + 1 + encodedLength];
+		System.arraycopy(header, 0, message, 0, header.length);
+		message[header.length] = codec;
+		System.arraycopy(encoded, 0, message, header.length + 1, encodedLength);
+
+		framesByCodec[codec]++;
+		rawBytes += rawLength;
+		encodedBytes += encodedLength;
+		encodeNanos += System.nanoTime() - start;
+		return message;
+	}
+
+	/**
+	 * Read an encoded world.
+	 *
+	 * @param buffer the codec id then the encoded world, up to the limit of the buffer.
+	 * @param wordCount the number of words of the world.
+	 * @return the world in the snapshot layout.
+	 * @throws IllegalArgumentException if the encoded world is not valid or is bigger than the world.
+	 */
+	public synchronized long[] decode(ByteBuffer buffer, int wordCount) {
+		long[] words = new long[wordCount];
+		long cells = (long) wordCount * Long.SIZE;
+		byte codec = buffer.get();
+		switch (codec) {
+		case RAW:
+			readRawBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), words);
+			break;
+		case DEFLATE:
+			int rawLength = inflate(buffer, wordCount * Long.BYTES);
+			readRawBytes(raw, 0, rawLength, words);
+			break;
+		case RUNS:
+			long position = 0;
+			boolean alive = false;
+			while(buffer.hasRemaining()){
+				long length = readVarint(buffer);
+				if(length > cells - position){
+					throw new IllegalArgumentException("Run out of the world at cell "+position);
+				}
+				if(alive){
+					setBits(words, position, length);
+				}
+				position += length;
+				alive = !alive;
+			}
+			break;
+		case SPARSE:
+			long cell = 0;
+			while(buffer.hasRemaining()){
+				long gap = readVarint(buffer);
+				if(gap >= cells - cell){
+					throw new IllegalArgumentException("Cell out of the world after cell "+cell);
+				}
+				cell += gap;
+				words[(int) (cell / Long.SIZE)] |= 1L << cell;
+				cell++;
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown codec: "+codec);
+		}
+		return words;
+	}
+
+	/**
+	 * @return the frames encoded with each codec, the size of the encoded worlds compared to the raw ones and the mean
+	 * time spent to encode a world.
+	 */
+	public synchronized String getReport() {
+		long frames = 0;
+		StringBuilder report = new StringBuilder();
+		for(int i = 0; i < NAMES.length; i++){
+			frames += framesByCodec[i];
+			report.append(NAMES[i]).append(' ').append(framesByCodec[i]).append(", ");
+		}
+		report.append(String.format("ratio %.3f, %d bytes saved, %.1f us per world", getRatio(), rawBytes - encodedBytes,
+				frames == 0 ? 0.0 : encodeNanos / 1000.0 / frames));
+		return report.toString();
+	}
+
+	/**
+	 * @return the size of the encoded worlds divided by the size of the raw ones.
+	 */
+	public synchronized double getRatio() {
+		return rawBytes == 0 ? 1.0 : (double) encodedBytes / rawBytes;
+	}
+
+	/**
+	 * @return the number of worlds encoded with the given codec.
+	 */
+	public synchronized long getFrames(byte codec) {
+		return framesByCodec[codec];
+	}
+
+	/**
+	 * @return the mean time in nanoseconds spent to encode a world.
+	 */
+	public synchronized long getMeanEncodeNanos() {
+		long frames = 0;
+		for(long count : framesByCodec){
+			frames += count;
+		}
+		return frames == 0 ? 0 : encodeNanos / frames;
+	}
+
+	/**
+	 * Write the words in the raw buffer without the trailing dead cells.
+	 *
+	 * @return the number of bytes written.
+	 */
+	private int toRawBytes(long[] words) {
+		int last = words.length - 1;
+		while(last >= 0 && words[last] == 0){
+			last--;
+		}
+		if(raw.length < (last + 1) * Long.BYTES){
+			raw = new byte[(last + 1) * Long.BYTES];
+		}
+		ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().put(words, 0, last + 1);
+		if(last < 0){
+			return 0;
+		}
+		return last * Long.BYTES + (Long.SIZE - Long.numberOfLeadingZeros(words[last]) + Byte.SIZE - 1) / Byte.SIZE;
+	}
+
+	private static void readRawBytes(byte[] bytes, int offset, int length, long[] words) {
+		if(length > words.length * Long.BYTES){
+			throw new IllegalArgumentException("World bigger than the grid: "+length+" bytes");
+		}
+		for(int i = 0; i < length; i++){
+			words[i / Long.BYTES] |= (bytes[offset + i] & 0xFFL) << (i % Long.BYTES * Byte.SIZE);
+		}
+	}
+
+	private void encodeSparse(long[] words) {
+		encodedLength = 0;
+		long next = 0;
+		for(int i = 0; i < words.length; i++){
+			long word = words[i];
+			while(word != 0){
+				long cell = (long) i * Long.SIZE + Long.numberOfTrailingZeros(word);
+				putVarint(cell - next);
+				next = cell + 1;
+				word &= word - 1;
+			}
+		}
+	}
+
+	private void encodeRuns(long[] words) {
+		encodedLength = 0;
+		long runStart = 0;
+		boolean alive = false;
+		for(int i = 0; i < words.length; i++){
+			// Flip the word when in a run of living cells, the run end at the next set bit either way.
+			long word = alive ? ~words[i] : words[i];
+			int bit = 0;
+			while(bit < Long.SIZE){
+				long remaining = word >>> bit;
+				if(remaining == 0){
+					break;
+				}
+				bit += Long.numberOfTrailingZeros(remaining);
+				long cell = (long) i * Long.SIZE + bit;
+				putVarint(cell - runStart);
+				runStart = cell;
+				alive = !alive;
+				word = ~word;
+			}
+		}
+		// The trailing dead cells are implicit.
+		if(alive){
+			putVarint((long) words.length * Long.SIZE - runStart);
+		}
+	}
+
+	/**
+	 * Compress the raw bytes in the encoded buffer.
+	 *
+	 * @return whether the raw bytes have been compressed, false if it got bigger than the raw bytes.
+	 */
+	private boolean encodeDeflate(int rawLength) {
+		ensureEncodedCapacity(rawLength);
+		deflater.reset();
+		deflater.setInput(raw, 0, rawLength);
+		deflater.finish();
+		encodedLength = 0;
+		while(!deflater.finished()){
+			if(encodedLength == encoded.length){
+				return false;
+			}
+			encodedLength += deflater.deflate(encoded, encodedLength, encoded.length - encodedLength);
+		}
+		return true;
+	}
+
+	/**
+	 * Decompress the rest of the buffer in the raw buffer.
+	 *
+	 * @return the number of raw bytes.
+	 */
+	private int inflate(ByteBuffer buffer, int maximumLength) {
+		if(raw.length < maximumLength){
+			raw = new byte[maximumLength];
+		}
+		inflater.reset();
+		inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		int length = 0;
+		try {
+			while(!inflater.finished()){
+				int inflated = inflater.inflate(raw, length, maximumLength - length);
+				length += inflated;
+				// The whole input is given at once, no progress means it is truncated, oversized or needs a dictionary.
+				if(inflated == 0 && !inflater.finished()){
+					throw new IllegalArgumentException(inflater.needsDictionary() ? "Deflated world with a dictionary"
+							: "Truncated or oversized deflated world");
+				}
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("Malformed deflated world: "+e.getMessage());
+		}
+		return length;
+	}
+
+	private void putVarint(long value) {
+		ensureEncodedCapacity(encodedLength + 10);
+		while((value & ~0x7FL) != 0){
+			encoded[encodedLength++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		encoded[encodedLength++] = (byte) value;
+	}
+
+	private static long readVarint(ByteBuffer buffer) {
+		long value = 0;
+		for(int shift = 0; shift < Long.SIZE; shift += 7){
+			byte b = buffer.get();
+			value |= (b & 0x7FL) << shift;
+			if(b >= 0){
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed length");
+	}
+
+	private static int getVarintLength(long value) {
+		int length = 1;
+		while((value & ~0x7FL) != 0){
+			value >>>= 7;
+			length++;
+		}
+		return length;
+	}
+
+	/**
+	 * Set the given number of bits from the given position.
+	 */
+	private static void setBits(long[] words, long position, long length) {
+		while(length > 0){
+			int bit = (int) (position % Long.SIZE);
+			int count = (int) Math.min(length, Long.SIZE - bit);
+			words[(int) (position / Long.SIZE)] |= (count == Long.SIZE ? -1L : ((1L << count) - 1)) << bit;
+			position += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Grow the encoded buffer to hold at least the given number of bytes, keeping its content.
+	 */
+	private void ensureEncodedCapacity(int capacity) {
+		if(encoded.length < capacity){
+			byte[] grown = new byte[Math.max(capacity, encoded.length * 2)];
+			System.arraycopy(encoded, 0, grown, 0, encodedLength);
+			encoded = grown;
+		}
+	}
+
+}
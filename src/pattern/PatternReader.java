@@ -0,0 +1,184 @@
+package pattern;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Read a pattern in the RLE format (like "x = 3, y = 3, rule = B3/S23" followed by "bo$2bo$3o!") or in the plain text
+ * .cells format (lines of '.' and 'O', the comments start with '!'). The format is found from the first line that is not
+ * a comment.
+ *
+ * The pattern is read line by line and each run of living cells is given to a sink as soon as it is read, so the memory
+ * used does not depend on the pattern size but only on its longest line.
+ *
+ * @author Jean-Hugo
+ */
+public class PatternReader {
+
+	// The pattern being read.
+	private final BufferedReader reader;
+
+	// The pattern dimensions, from the RLE header or from the cells read.
+	private int width = 0;
+	private int height = 0;
+	// The rule given in the RLE header, null if there is none.
+	private String rule;
+
+	// The position of the next cell to read.
+	private int y = 0;
+	private int x = 0;
+	// The number of the line being read, used in the error messages.
+	private int lineNumber = 0;
+
+	public PatternReader(Reader reader) {
+		this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+	}
+
+	/**
+	 * Read the whole pattern.
+	 *
+	 * @param sink receive the runs of living cells.
+	 * @throws IOException if the pattern cannot be read or is malformed.
+	 */
+	public void read(PatternSink sink) throws IOException {
+		String line;
+		while ((line = nextLine()) != null) {
+			String trimmed = line.trim();
+			if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+				// Empty line or RLE comment.
+				continue;
+			}
+			if (trimmed.startsWith("!")) {
+				// Comment of the .cells format.
+				continue;
+			}
+			if (trimmed.startsWith("x")) {
+				readRleHeader(trimmed);
+				readRle(sink);
+			} else {
+				readCells(line, sink);
+			}
+			return;
+		}
+	}
+
+	private String nextLine() throws IOException {
+		lineNumber++;
+		return reader.readLine();
+	}
+
+	/**
+	 * Read the dimensions and the rule of a header like "x = 3, y = 3, rule = B3/S23".
+	 */
+	private void readRleHeader(String header) throws IOException {
+		for (String field : header.split(",")) {
+			String parts[] = field.split("=");
+			if (parts.length != 2) {
+				throw malformed("wrong header field \"" + field.trim() + "\"");
+			}
+			String key = parts[0].trim();
+			String value = parts[1].trim();
+			try {
+				if (key.equals("x")) {
+					width = Integer.parseInt(value);
+				} else if (key.equals("y")) {
+					height = Integer.parseInt(value);
+				} else if (key.equals("rule")) {
+					rule = value;
+				}
+			} catch (NumberFormatException e) {
+				throw malformed("wrong dimension \"" + value + "\"");
+			}
+		}
+	}
+
+	/**
+	 * Read the runs of the RLE body until the '!'. A run is an optional count followed by 'b' (dead cells), 'o' (living
+	 * cells) or '$' (end of rows). The other letters are the states of other rules and are read as living cells.
+	 */
+	private void readRle(PatternSink sink) throws IOException {
+		String line;
+		while ((line = nextLine()) != null) {
+			if (line.startsWith("#")) {
+				continue;
+			}
+			int count = 0;
+			for (int i = 0; i < line.length(); i++) {
+				char c = line.charAt(i);
+				if (c >= '0' && c <= '9') {
+					count = count * 10 + c - '0';
+					if (count < 0) {
+						throw malformed("run too long");
+					}
+					continue;
+				}
+				int run = count == 0 ? 1 : count;
+				count = 0;
+
+				if (c == 'b' || c == '.') {
+					x += run;
+				} else if (c == '$') {
+					y += run;
+					x = 0;
+				} else if (c == '!') {
+					height = Math.max(height, y + 1);
+					return;
+				} else if (Character.isLetter(c)) {
+					sink.addRun(y, x, run);
+					x += run;
+					width = Math.max(width, x);
+				} else if (!Character.isWhitespace(c)) {
+					throw malformed("unexpected character '" + c + "'");
+				}
+			}
+		}
+		// Some files forget the final '!'.
+		height = Math.max(height, y + 1);
+	}
+
+	/**
+	 * Read the lines of the .cells format, starting with the given one.
+	 */
+	private void readCells(String line, PatternSink sink) throws IOException {
+		while (line != null) {
+			if (!line.startsWith("!")) {
+				int first = -1;
+				for (int i = 0; i <= line.length(); i++) {
+					boolean alive = i < line.length() && (line.charAt(i) == 'O' || line.charAt(i) == 'o'
+							|| line.charAt(i) == '*');
+					if (alive && first < 0) {
+						first = i;
+					} else if (!alive && first >= 0) {
+						sink.addRun(y, first, i - first);
+						width = Math.max(width, i);
+						first = -1;
+					}
+				}
+				y++;
+				height = y;
+			}
+			line = nextLine();
+		}
+	}
+
+	private IOException malformed(String reason) {
+		return new IOException("Malformed pattern at line " + lineNumber + ": " + reason);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the rule given in the RLE header, null if there is none.
+	 */
+	public String getRule() {
+		return rule;
+	}
+
+}
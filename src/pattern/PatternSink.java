@@ -0,0 +1,17 @@
+package pattern;
+
+/**
+ * Receive the living cells of a pattern while it is read, run by run.
+ *
+ * @author Jean-Hugo
+ */
+public interface PatternSink {
+
+	/**
+	 * @param y the row of the run in the pattern.
+	 * @param x the column of the first cell of the run in the pattern.
+	 * @param length the number of living cells of the run.
+	 */
+	void addRun(int y, int x, int length);
+
+}
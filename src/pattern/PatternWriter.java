@@ -0,0 +1,109 @@
+package pattern;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import model.GridModel;
+
+/**
+ * Write the grid of a model in the RLE or in the plain text .cells format. The grid is written row by row while it is
+ * read, so the memory used does not depend on the grid size.
+ *
+ * @author Jean-Hugo
+ */
+public class PatternWriter {
+
+	// The RLE lines should not be longer than this.
+	private static final int MAXIMUM_RLE_LINE_LENGTH = 70;
+
+	// Where the pattern is written.
+	private final Writer writer;
+	// The length of the RLE line being written.
+	private int lineLength = 0;
+
+	public PatternWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Write the whole grid of the model in the RLE format with its rule, the dead cells at the end of the rows and of
+	 * the grid are not written.
+	 */
+	public void writeRle(GridModel model) throws IOException {
+		int width = model.getCurrentWidth();
+		int height = model.getCurrentHeight();
+		writer.write("#C Cycle " + model.getCycle() + "\n");
+		writer.write("x = " + width + ", y = " + height + ", rule = " + model.getRule() + "\n");
+
+		// The ends of rows not written yet, they are written only if a living cell follows them.
+		int pendingRows = 0;
+		for (int i = 0; i < height; i++) {
+			boolean emptyRow = true;
+			int j = 0;
+			while (j < width) {
+				boolean alive = model.isCellAlive(i, j);
+				int run = 1;
+				while (j + run < width && model.isCellAlive(i, j + run) == alive) {
+					run++;
+				}
+				if (alive) {
+					if (pendingRows > 0) {
+						writeRun(pendingRows, '$');
+						pendingRows = 0;
+					}
+					if (emptyRow && j > 0) {
+						writeRun(j, 'b');
+					}
+					writeRun(run, 'o');
+					emptyRow = false;
+				} else if (!emptyRow && j + run < width) {
+					// The dead cells before a living one.
+					writeRun(run, 'b');
+				}
+				j += run;
+			}
+			pendingRows++;
+		}
+		writeRun(1, '!');
+		writer.write("\n");
+		writer.flush();
+	}
+
+	/**
+	 * Write a run like "12o", the count is omitted when it is 1.
+	 */
+	private void writeRun(int count, char tag) throws IOException {
+		String run = count == 1 ? String.valueOf(tag) : count + String.valueOf(tag);
+		if (lineLength + run.length() > MAXIMUM_RLE_LINE_LENGTH) {
+			writer.write("\n");
+			lineLength = 0;
+		}
+		writer.write(run);
+		lineLength += run.length();
+	}
+
+	/**
+	 * Write the whole grid of the model in the .cells format, the dead cells at the end of the rows are not written.
+	 */
+	public void writeCells(GridModel model) throws IOException {
+		int width = model.getCurrentWidth();
+		int height = model.getCurrentHeight();
+		writer.write("!Cycle " + model.getCycle() + "\n");
+
+		StringBuilder row = new StringBuilder(width);
+		for (int i = 0; i < height; i++) {
+			row.setLength(0);
+			for (int j = 0; j < width; j++) {
+				row.append(model.isCellAlive(i, j) ? 'O' : '.');
+			}
+			int length = row.length();
+			while (length > 0 && row.charAt(length - 1) == '.') {
+				length--;
+			}
+			row.setLength(length);
+			writer.write(row.append('\n').toString());
+		}
+		writer.flush();
+	}
+
+}
@@ -0,0 +1,160 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+/**
+ * Save the world state in memory mapped files so a restarted server can start from it. A checkpoint is the
+ * initialization message sent to the clients (grid size, update rate, rule, apparition percentage, cycle, topology and
+ * snapshot) preceded by a small header, so the restarted server can send it to its first clients as it is.
+ *
+ * Two files are written in turn: while one is being written the other one still hold the previous checkpoint, so a crash
+ * during a write never lose both. The header (written last) hold a sequence number and a checksum of the message, the
+ * valid checkpoint with the highest sequence number is loaded.
+ *
+ * The writes are done by a background thread, the tick thread only copy the world state in the message.
+ *
+ * @author Jean-Hugo
+ */
+public class CheckpointStore {
+
+	// Used to recognize a checkpoint file ("GOLC").
+	private static final int MAGIC = 0x474F4C43;
+	// Increased when the message format change, the checkpoints of another version are ignored.
+	private static final int VERSION = 2;
+	// Magic, version, sequence number, message length, message checksum.
+	private static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES + Integer.BYTES * 2;
+
+	// The 2 files written in turn.
+	private final Path files[];
+	// The sequence number of the last checkpoint written or loaded.
+	private long sequence = 0;
+	// The message waiting to be written, a newer one replace it if the previous write is not over.
+	private final AtomicReference<byte[]> pending = new AtomicReference<byte[]>();
+	// Write the checkpoints without blocking the tick.
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "checkpoint-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * @param path the checkpoint path, the files path.0 and path.1 are used.
+	 */
+	public CheckpointStore(String path) {
+		this.files = new Path[] {Paths.get(path + ".0"), Paths.get(path + ".1")};
+	}
+
+	/**
+	 * Map the latest valid checkpoint.
+	 *
+	 * @return a read only buffer holding the initialization message of the checkpoint, null if there is none.
+	 */
+	public ByteBuffer load() {
+		ByteBuffer latest = null;
+		for (Path file : files) {
+			if (!Files.exists(file)) {
+				continue;
+			}
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, 0, channel.size());
+				ByteBuffer message = readCheckpoint(mapped);
+				if (message != null && (latest == null || mapped.getLong(Integer.BYTES * 2) > sequence)) {
+					latest = message;
+					sequence = mapped.getLong(Integer.BYTES * 2);
+				}
+			} catch (IOException e) {
+				System.err.println("Cannot read the checkpoint " + file + ": " + e);
+			}
+		}
+		return latest;
+	}
+
+	/**
+	 * @return the message of the given checkpoint or null if it is not valid.
+	 */
+	private ByteBuffer readCheckpoint(MappedByteBuffer mapped) {
+		if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) != MAGIC || mapped.getInt(Integer.BYTES) != VERSION) {
+			return null;
+		}
+		int length = mapped.getInt(Integer.BYTES * 2 + Long.BYTES);
+		int checksum = mapped.getInt(Integer.BYTES * 3 + Long.BYTES);
+		if (length < 0 || length > mapped.capacity() - HEADER_SIZE) {
+			return null;
+		}
+		ByteBuffer message = mapped.slice(HEADER_SIZE, length);
+		CRC32 crc = new CRC32();
+		crc.update(message.duplicate());
+		return (int) crc.getValue() == checksum ? message : null;
+	}
+
+	/**
+	 * Write the given initialization message in the background. If a checkpoint is still being written, only the latest
+	 * message given in the meantime is written after it.
+	 */
+	public void saveAsync(byte[] message) {
+		if (pending.getAndSet(message) == null) {
+			writer.execute(() -> {
+				byte[] latest = pending.getAndSet(null);
+				if (latest != null) {
+					save(latest);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Write the given initialization message in the file that does not hold the latest checkpoint.
+	 */
+	private void save(byte[] message) {
+		long nextSequence = sequence + 1;
+		Path file = files[(int) (nextSequence % files.length)];
+		CRC32 crc = new CRC32();
+		crc.update(message);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			channel.truncate(HEADER_SIZE + message.length);
+			MappedByteBuffer mapped = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + message.length);
+			// Invalidate the file while it is written.
+			mapped.putInt(0, 0);
+			mapped.force();
+			mapped.put(HEADER_SIZE, message);
+			mapped.putInt(Integer.BYTES, VERSION);
+			mapped.putLong(Integer.BYTES * 2, nextSequence);
+			mapped.putInt(Integer.BYTES * 2 + Long.BYTES, message.length);
+			mapped.putInt(Integer.BYTES * 3 + Long.BYTES, (int) crc.getValue());
+			mapped.force();
+			// The header is valid only once everything else is on the disk.
+			mapped.putInt(0, MAGIC);
+			mapped.force();
+			sequence = nextSequence;
+		} catch (IOException e) {
+			System.err.println("Cannot write the checkpoint " + file + ": " + e);
+		}
+	}
+
+	/**
+	 * Wait for the checkpoint being written, if any.
+	 */
+	public void flush() {
+		try {
+			writer.submit(() -> {
+			}).get();
+		} catch (Exception e) {
+			System.err.println("Cannot wait for the checkpoint: " + e);
+		}
+	}
+
+}
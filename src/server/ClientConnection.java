@@ -0,0 +1,289 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import networkcontroller.MessageFramer;
+import utils.Constants;
+
+/**
+ * The connection of a client to the server, attached to its selection key. It cut the bytes read from the client in
+ * messages and queue the messages sent to it: the world threads and the listener never wait for a slow client, what
+ * the socket cannot take right away is written by the listener when the socket is writable again.
+ *
+ * A world sent to the client replace the one still waiting in the queue, only the newest world matter. The commands are
+ * never dropped: when the client let too many bytes of commands pile up it is disconnected. The initializations are
+ * never dropped either but they are not counted, a big world must not disconnect the client.
+ *
+ * @author Jean-Hugo
+ */
+public class ClientConnection {
+
+	// The client key, its interest ops follow the queue.
+	private final SelectionKey key;
+	// Cut the bytes read from the client in messages.
+	private final MessageFramer framer = new MessageFramer(Constants.MAXIMUM_COMMAND_SIZE);
+	// The bytes of commands the client can have waiting before being disconnected.
+	private final int highWaterMark;
+	// The world the client play in, null until it joined one.
+	private volatile World world;
+
+	// The messages waiting to be written, the first one may be partly written.
+	private final ArrayDeque<Outgoing> outbound = new ArrayDeque<Outgoing>();
+	// The world waiting in the queue and not started yet, null if there is none.
+	private Outgoing pendingWorld;
+	// The bytes of the commands in the queue.
+	private long commandBytes = 0;
+	// The worlds replaced by a newer one before being sent.
+	private long droppedWorlds = 0;
+	// Whether the client has been disconnected.
+	private boolean closed = false;
+
+	/**
+	 * A message in the queue.
+	 */
+	private static class Outgoing {
+		// The message after its length, this connection's own view of a frame shared with the other connections.
+		private final ByteBuffer frame;
+		// The bytes of the frame.
+		private final int size;
+		// Whether the message is a world that a newer one can replace.
+		private final boolean world;
+		// Whether the bytes of the message count toward the high water mark.
+		private final boolean counted;
+
+		private Outgoing(ByteBuffer frame, boolean world, boolean counted) {
+			this.frame = frame.duplicate();
+			this.size = frame.remaining();
+			this.world = world;
+			this.counted = counted;
+		}
+	}
+
+	/**
+	 * @param key the key of the client, the connection is attached to it.
+	 * @param highWaterMark the bytes of commands the client can have waiting before being disconnected.
+	 */
+	public ClientConnection(SelectionKey key, int highWaterMark) {
+		this.key = key;
+		this.highWaterMark = highWaterMark;
+		key.attach(this);
+	}
+
+	/**
+	 * @return the connection attached to the key, attached with the default high water mark if there is none.
+	 */
+	public static ClientConnection of(SelectionKey key) {
+		synchronized (key) {
+			Object attachment = key.attachment();
+			if(attachment instanceof ClientConnection){
+				return (ClientConnection) attachment;
+			}
+			return new ClientConnection(key, Constants.CLIENT_HIGH_WATER_MARK);
+		}
+	}
+
+	/**
+	 * Queue a command, it is never dropped.
+	 *
+	 * @return whether the client is still connected.
+	 */
+	public boolean send(byte[] message) {
+		return send(MessageFramer.frame(message));
+	}
+
+	/**
+	 * Queue a command framed by {@link MessageFramer#frame(byte[])}, the frame can be sent to other clients too.
+	 *
+	 * @return whether the client is still connected.
+	 */
+	public boolean send(ByteBuffer frame) {
+		return enqueue(new Outgoing(frame, false, true));
+	}
+
+	/**
+	 * Queue the initialization of a world, it is never dropped and never counted as waiting bytes.
+	 *
+	 * @return whether the client is still connected.
+	 */
+	public boolean sendInitialization(byte[] message) {
+		return sendInitialization(MessageFramer.frame(message));
+	}
+
+	/**
+	 * Queue the initialization of a world framed by {@link MessageFramer#frame(byte[])}, the frame can be sent to other
+	 * clients too.
+	 *
+	 * @return whether the client is still connected.
+	 */
+	public boolean sendInitialization(ByteBuffer frame) {
+		return enqueue(new Outgoing(frame, false, false));
+	}
+
+	/**
+	 * Queue a world, it replace the previous world if it is still waiting. The world must then be sent whole, a delta
+	 * would not apply: see {@link #hasPendingWorld()}.
+	 *
+	 * @return whether the client is still connected.
+	 */
+	public boolean sendWorld(byte[] message) {
+		return sendWorld(MessageFramer.frame(message));
+	}
+
+	/**
+	 * Queue a world framed by {@link MessageFramer#frame(byte[])}, the frame can be sent to other clients too.
+	 *
+	 * @return whether the client is still connected.
+	 */
+	public boolean sendWorld(ByteBuffer frame) {
+		return enqueue(new Outgoing(frame, true, false));
+	}
+
+	/**
+	 * @return whether a world is waiting in the queue, the next one will replace it.
+	 */
+	public synchronized boolean hasPendingWorld() {
+		return pendingWorld != null;
+	}
+
+	private synchronized boolean enqueue(Outgoing message) {
+		if(closed || !key.isValid()){
+			return false;
+		}
+		if(message.world){
+			if(pendingWorld != null){
+				removePendingWorld();
+				droppedWorlds++;
+			}
+			pendingWorld = message;
+		} else if(message.counted){
+			commandBytes += message.size;
+		}
+		outbound.add(message);
+		if(!flush()){
+			return false;
+		}
+		long waiting = getWaitingBytes();
+		if(waiting > highWaterMark){
+			System.err.println("[Server] Disconnecting a slow client, "+waiting+" bytes are waiting.");
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the pending world from the queue, it is not always the last message.
+	 */
+	private void removePendingWorld() {
+		Iterator<Outgoing> iterator = outbound.iterator();
+		while(iterator.hasNext()){
+			if(iterator.next() == pendingWorld){
+				iterator.remove();
+				break;
+			}
+		}
+		pendingWorld = null;
+	}
+
+	/**
+	 * Write the queue until the socket cannot take more, then wait for the socket to be writable again if some is left.
+	 *
+	 * @return whether the client is still connected.
+	 */
+	public synchronized boolean flush() {
+		if(closed){
+			return false;
+		}
+		try {
+			SocketChannel channel = (SocketChannel) key.channel();
+			while(!outbound.isEmpty()){
+				Outgoing message = outbound.peek();
+				channel.write(message.frame);
+				// Once started the world must be written whole.
+				if(message == pendingWorld && message.frame.position() > 0){
+					pendingWorld = null;
+				}
+				if(message.frame.hasRemaining()){
+					break;
+				}
+				outbound.poll();
+				if(message.counted){
+					commandBytes -= message.size;
+				}
+			}
+
+			if(outbound.isEmpty()){
+				key.interestOps(SelectionKey.OP_READ);
+			} else if((key.interestOps() & SelectionKey.OP_WRITE) == 0){
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				// The listener may be waiting without the write interest.
+				key.selector().wakeup();
+			}
+			return true;
+		} catch (IOException | CancelledKeyException e) {
+			close();
+			return false;
+		}
+	}
+
+	/**
+	 * Disconnect the client and forget its queue.
+	 */
+	public synchronized void close() {
+		closed = true;
+		outbound.clear();
+		pendingWorld = null;
+		commandBytes = 0;
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return the bytes of the commands waiting behind the message being written. The worlds and the initializations are
+	 * not counted.
+	 */
+	public synchronized long getWaitingBytes() {
+		Outgoing head = outbound.peek();
+		if(head == null || !head.counted){
+			return commandBytes;
+		}
+		return commandBytes - head.size;
+	}
+
+	/**
+	 * @return the number of messages waiting to be written, the first one may be partly written.
+	 */
+	public synchronized int getQueueLength() {
+		return outbound.size();
+	}
+
+	/**
+	 * @return the number of worlds replaced by a newer one before being sent.
+	 */
+	public synchronized long getDroppedWorlds() {
+		return droppedWorlds;
+	}
+
+	MessageFramer getFramer() {
+		return framer;
+	}
+
+	World getWorld() {
+		return world;
+	}
+
+	void setWorld(World world) {
+		this.world = world;
+	}
+
+}
@@ -3,20 +3,24 @@ package server;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
-import networkcontroller.ServerGridController;
+import networkcontroller.NetworkedGridController;
 import utils.Constants;
 import utils.UtilsFunctions;
 
 /**
  * This class is responsible for listening to any clients message and to store them in a list for a later processing.
+ * A client first send the name of the world it join, its messages then go to the controller of that world.
  * 
  * @author Jean-Hugo
  *
@@ -27,18 +31,19 @@ public class ServerListener implements Runnable{
 	private final static boolean DEBUG = false;
 	// The port the server will listen on.
 	public static final int SERVER_PORT = 9999;
-	// The controller that will handle data received from client.
-	private ServerGridController serverController;
+	// The worlds the clients can join.
+	private WorldRegistry worlds;
 
 	// The selector allow to watch multiple socket without being blocked.
 	private Selector selector;
 	// The socket channel to listen for client connection/inputs.
 	private ServerSocketChannel serverSocketChannel;
+	// The bytes of commands waiting to be sent to a client before it is disconnected.
+	private volatile int highWaterMark = Constants.CLIENT_HIGH_WATER_MARK;
 
-	public ServerListener(ServerGridController controller) {
-		this.serverController = controller;
+	public ServerListener(WorldRegistry worlds) {
+		this.worlds = worlds;
 		initSocket();
-		this.serverController.setSelector(selector);
 	}
 
 	/**
@@ -59,6 +64,14 @@ public class ServerListener implements Runnable{
 	}
 
 
+	/**
+	 * @param highWaterMark the bytes of commands waiting to be sent to a client before it is disconnected, for the
+	 * clients connecting afterward.
+	 */
+	public void setHighWaterMark(int highWaterMark) {
+		this.highWaterMark = highWaterMark;
+	}
+
 	/**
 	 * Continuously read messages from all clients.
 	 */
@@ -92,33 +105,29 @@ public class ServerListener implements Runnable{
 				try {
 					SocketChannel clientChannel = (SocketChannel) serverSocketChannel.accept();
 					clientChannel.configureBlocking(false);
-					SelectionKey clientSelectionKey = clientChannel.register(selectionKey.selector(), SelectionKey.OP_READ);
+					// The client is sent the state of its world once it has joined one.
+					SelectionKey clientKey = clientChannel.register(selectionKey.selector(), SelectionKey.OP_READ);
+					new ClientConnection(clientKey, highWaterMark);
 					System.out.println("[Server]: New client connected with ip address: "+clientChannel.getRemoteAddress());
-					sendClientGridInit(clientSelectionKey);
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
 
 			}
-			if (selectionKey.isReadable()) {
+			// Write what the world threads could not write right away.
+			if (selectionKey.isValid() && selectionKey.isWritable() && !ClientConnection.of(selectionKey).flush()) {
+				leaveWorld(selectionKey);
+			}
+			if (selectionKey.isValid() && selectionKey.isReadable()) {
 				try {
-					// Get the client message.
-					byte[] message = processRead(selectionKey);
-					
-					if (message.length > 0) {
-
-						// Add the command to the pending command list so it will be processed later.
-						serverController.addPendingCommand(message);
-						// Send the command to the others clients.
-						sendCommandToClients(message);
-						if(DEBUG){
-							System.out.println("[Server] received command: "+new String(message).trim());
-						}
-
+					// Get the client messages, a read can hold several of them or only a part of one.
+					for(byte[] message : processRead(selectionKey)){
+						processMessage(selectionKey, message);
 					}
 				} catch (IOException e) {
 					// Cancel this selection key on write error (Client disconnected ?).
-					selectionKey.cancel();
+					leaveWorld(selectionKey);
+					ClientConnection.of(selectionKey).close();
 				}
 			}
 			iterator.remove();
@@ -126,65 +135,118 @@ public class ServerListener implements Runnable{
 	}
 
 	/**
-	 * Send to the client the complete grid state (snapshot + grid parameter).
-	 * 
-	 * @param selectionKey the client SocketChannel.
+	 * Process a message of the client: join a world, ask for the world state or a command for its world.
 	 */
-	private void sendClientGridInit(SelectionKey selectionKey) {
+	private void processMessage(SelectionKey selectionKey, byte[] message) throws IOException {
+		if (message.length < Short.BYTES) {
+			return;
+		}
+		short code = ByteBuffer.wrap(message).getShort();
+		if (code == Constants.JOIN_WORLD_COMMAND) {
+			joinWorld(selectionKey, message);
+		} else if (code == Constants.RESYNC_REQUEST_COMMAND) {
+			World world = ClientConnection.of(selectionKey).getWorld();
+			if(world != null){
+				world.getServerGridController().requestResync(selectionKey);
+			}
+		} else {
 
-		try {
+			// A truncated or unknown command would break the world of every player, it is dropped.
+			int length = NetworkedGridController.getCommandLength(message);
+			if(length < 0){
+				System.err.println("[Server] Dropped a malformed command: "+code);
+				return;
+			}
+			message = Arrays.copyOf(message, length);
 
-			byte[] toSend = serverController.getInitializationMessage();
-			// Send the data.
-			SocketChannel clientChannel = (SocketChannel) selectionKey.channel();
-			clientChannel.write(ByteBuffer.wrap(toSend));
+			World world = ClientConnection.of(selectionKey).getWorld();
+			if(world == null){
+				// A client that does not choose a world play in the default one.
+				world = worlds.getDefaultWorld();
+				moveClient(selectionKey, world);
+			}
+
+			// Add the command to the pending command list so it will be processed later.
+			world.getServerGridController().addPendingCommand(message);
+			// Send the command to the others clients of the world, in lockstep mode it is sent with its tick. A reset is sent
+			// by the world once processed, the clients must not get a world computed before it after it.
+			if(!world.getServerGridController().isLockstep() && code != Constants.RESET_GRID_COMMAND){
+				world.getServerGridController().sendToClients(message);
+			}
 			if(DEBUG){
-				BitSet bs = BitSet.valueOf(toSend);
-				UtilsFunctions.displayBitField(bs, "On send");
+				System.out.println("[Server] received command: "+new String(message).trim());
 			}
-		} catch (IOException e) {
-			// Cancel this selection key on write error (Client disconnected ?).
-			selectionKey.cancel();
 		}
 	}
 
 	/**
-	 * Forward this message to all the clients.
-	 * 
-	 * @param message the message to be forwarded.
+	 * Move the client to the world named in the message: the length of the name then the name in UTF-8. A client that
+	 * give an invalid name stay in its current world, or is disconnected if it has none.
+	 */
+	private void joinWorld(SelectionKey selectionKey, byte[] message) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(message);
+		buffer.getShort();
+		int length = buffer.getShort();
+		World world = null;
+		if(length > 0 && length <= buffer.remaining()){
+			world = worlds.join(new String(message, buffer.position(), length, StandardCharsets.UTF_8));
+		}
+
+		if(world != null){
+			moveClient(selectionKey, world);
+		} else if(ClientConnection.of(selectionKey).getWorld() == null){
+			ClientConnection.of(selectionKey).close();
+		}
+	}
+
+	/**
+	 * Remove the client from its current world and send it the state of the given one.
 	 */
-	private void sendCommandToClients(byte[] message) {
+	private void moveClient(SelectionKey selectionKey, World world) {
+		leaveWorld(selectionKey);
+		ClientConnection.of(selectionKey).setWorld(world);
+		// The initialization is queued before the worlds sent to the client.
+		if(!world.getServerGridController().isLockstep()){
+			sendClientGridInit(selectionKey, world);
+		}
+		world.getServerGridController().addClient(selectionKey);
+	}
 
-		Iterator<SelectionKey> iterator = selector.keys().iterator();
+	private void leaveWorld(SelectionKey selectionKey) {
+		World world = ClientConnection.of(selectionKey).getWorld();
+		if(world != null){
+			world.getServerGridController().removeClient(selectionKey);
+		}
+	}
 
-		// Iterate through all the connected clients.
-		while (iterator.hasNext()) {
-			SelectionKey selectionKey = iterator.next();
-			if(selectionKey.channel() == serverSocketChannel){
-				continue;
-			}
-			SocketChannel clientChannel = (SocketChannel) selectionKey.channel();
-			try {
-				clientChannel.write(ByteBuffer.wrap(message));
-			} catch (IOException e) {
-				// Cancel this selection key on write error (Client disconnected ?).
-				selectionKey.cancel();
-			}
+	/**
+	 * Send to the client the complete grid state (snapshot + grid parameter) of its world.
+	 * 
+	 * @param selectionKey the client SocketChannel.
+	 */
+	private void sendClientGridInit(SelectionKey selectionKey, World world) {
+
+		byte[] toSend = world.getServerGridController().getInitializationMessage();
+		// Queue the data, it is written when the client can take it.
+		if(!ClientConnection.of(selectionKey).sendInitialization(toSend)){
+			leaveWorld(selectionKey);
+			return;
+		}
+		if(DEBUG){
+			BitSet bs = BitSet.valueOf(toSend);
+			UtilsFunctions.displayBitField(bs, "On send");
 		}
 	}
 
 	/**
-	 * Read a byte array from the client.
+	 * Read the messages completed by the bytes the client sent.
 	 * 
 	 * @param key The client SelectionKey
-	 * @return a byte array filled with the client message.
-	 * @throws IOException
+	 * @return the client messages, without their length.
+	 * @throws IOException if the client closed the connection or sent an invalid message length.
 	 */
-	public byte[] processRead(SelectionKey key) throws IOException {
-		SocketChannel clientChannel = (SocketChannel) key.channel();
-		ByteBuffer buffer = ByteBuffer.allocate(Constants.BUFFER_SIZE);
-		clientChannel.read(buffer);
-		return buffer.array();
+	public List<byte[]> processRead(SelectionKey key) throws IOException {
+		return ClientConnection.of(key).getFramer().read((SocketChannel) key.channel());
 	}
 
 }
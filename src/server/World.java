@@ -0,0 +1,139 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import engine.EngineFactory;
+import engine.Topology;
+import model.GridModel;
+import networkcontroller.ServerGridController;
+import utils.Constants;
+import utils.Timer;
+
+/**
+ * A named world hosted by the server: its grid, its parameters and the clients that joined it. The worlds do not have
+ * their own thread, the registry tick them on a shared pool.
+ *
+ * @author Jean-Hugo
+ */
+public class World {
+
+	// The name chosen by the clients to join this world.
+	private final String name;
+	// The grid that hold the game simulation.
+	private final GridModel gridModel;
+	// This class handle all the updates from the network.
+	private final ServerGridController serverController;
+	// Used to know when to perform an update.
+	private final Timer timer = new Timer();
+	// Used to know when to save a checkpoint of the world.
+	private final Timer checkpointTimer = new Timer();
+	// Whether the world has been restored from a checkpoint, it is then sent to the clients as it is.
+	private final boolean restored;
+	// Whether the game state has changed and need to be sent to the players.
+	private boolean needUpdate;
+	// Whether a tick is waiting or running, a world is never ticked by 2 threads at once.
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	/**
+	 * @param name the world name.
+	 * @param engineFactory Create the engine used to store the cells and compute the generations.
+	 * @param topology What is beyond the grid borders, a restored world keep the topology of its checkpoint.
+	 * @param checkpointPath The path of the checkpoint files, the world is restored from them and saved in them
+	 * periodically. Null to start from an empty world without checkpoint.
+	 */
+	public World(String name, EngineFactory engineFactory, Topology topology, String checkpointPath) {
+		this.name = name;
+		gridModel = new GridModel(GridModel.DEFAULT_GRID_SIZE, GridModel.DEFAULT_GRID_SIZE,
+				engineFactory.createEngine(GridModel.DEFAULT_GRID_SIZE, GridModel.DEFAULT_GRID_SIZE));
+		gridModel.setTopology(topology);
+		serverController = new ServerGridController(gridModel, timer);
+		if(checkpointPath != null && serverController.restoreCheckpoint(new CheckpointStore(checkpointPath))){
+			restored = true;
+			System.out.println("[Server]: World "+name+" restored at cycle "+gridModel.getCycle()+" from "+checkpointPath);
+		} else {
+			restored = false;
+		}
+		// A restored world is already in the initialization message.
+		needUpdate = !restored;
+	}
+
+	/**
+	 * Update the world if its update period is over, process the commands sent by its clients and send them the game
+	 * state. Does nothing if the world is already being ticked by another thread.
+	 */
+	public void tick() {
+		if(schedule()){
+			runScheduledTick();
+		}
+	}
+
+	/**
+	 * @return whether the world can be ticked, false if a tick is already waiting or running.
+	 */
+	boolean schedule() {
+		return scheduled.compareAndSet(false, true);
+	}
+
+	/**
+	 * Run the tick reserved by {@link #schedule()}.
+	 */
+	void runScheduledTick() {
+		try {
+			checkpointTimer.updateTimer();
+			if(checkpointTimer.isTimerOver(Constants.CHECKPOINT_RATE)){
+				checkpointTimer.resetTimer();
+				serverController.saveCheckpoint();
+			}
+
+			// The generation and the commands of a tick are sent to the listeners as a single event.
+			gridModel.beginChanges();
+			int cycle = gridModel.getCycle();
+			boolean stepped = false;
+			boolean needUpdate2;
+			try {
+				timer.updateTimer();
+				if(timer.isTimerOver(gridModel.getUpdateRate())){
+					timer.resetTimer();
+					gridModel.update();
+					stepped = true;
+				}
+
+				// Process the commands sent by the clients. The result tell us whether we should send an update to the players.
+				needUpdate2 = serverController.processPendingCommands();
+			} finally {
+				// The listeners would never be notified again otherwise.
+				gridModel.endChanges();
+			}
+
+			needUpdate = needUpdate || stepped || needUpdate2;
+
+			if(serverController.isLockstep()){
+				// The players compute the generation and apply the commands themselves.
+				needUpdate = false;
+				serverController.publishTick(cycle, stepped);
+			} else if(needUpdate){
+				needUpdate = false;
+				serverController.publishWorldState();
+			}
+		} finally {
+			scheduled.set(false);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public GridModel getModel() {
+		return gridModel;
+	}
+
+	public ServerGridController getServerGridController() {
+		return serverController;
+	}
+
+	public boolean isRestored() {
+		return restored;
+	}
+
+}
@@ -0,0 +1,154 @@
+package server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import engine.EngineFactory;
+import engine.Topology;
+import utils.Constants;
+
+/**
+ * Hold the worlds hosted by the server, a world is created the first time a client join it. A single scheduler thread
+ * dispatch the ticks of all the worlds on a pool of workers sized to the processors, instead of one busy thread per
+ * world.
+ *
+ * @author Jean-Hugo
+ */
+public class WorldRegistry {
+
+	// The names allowed for the worlds, they are also used in the checkpoint file names.
+	private static final Pattern WORLD_NAME = Pattern.compile("[A-Za-z0-9_-]{1," + Constants.MAXIMUM_WORLD_NAME_LENGTH + "}");
+
+	// The worlds by name.
+	private final ConcurrentHashMap<String, World> worlds = new ConcurrentHashMap<String, World>();
+	// Create the engines of the new worlds.
+	private final EngineFactory engineFactory;
+	// The topology of the new worlds.
+	private final Topology topology;
+	// The path of the checkpoint files of the default world, the other worlds add their name to it. Null if there is no
+	// checkpoint.
+	private final String checkpointPath;
+	// Whether the players of the worlds compute the generations themselves.
+	private volatile boolean lockstep = false;
+
+	// Dispatch the ticks, null until started.
+	private ScheduledExecutorService scheduler;
+	// Run the ticks.
+	private ExecutorService workers;
+
+	/**
+	 * Create the registry with its default world, the worlds are tori.
+	 *
+	 * @param engineFactory Create the engines used by the worlds.
+	 * @param checkpointPath The path of the checkpoint files of the default world, null for no checkpoint.
+	 */
+	public WorldRegistry(EngineFactory engineFactory, String checkpointPath) {
+		this(engineFactory, Topology.TORUS, checkpointPath);
+	}
+
+	/**
+	 * Create the registry with its default world.
+	 *
+	 * @param engineFactory Create the engines used by the worlds.
+	 * @param topology What is beyond the borders of the new worlds.
+	 * @param checkpointPath The path of the checkpoint files of the default world, null for no checkpoint.
+	 */
+	public WorldRegistry(EngineFactory engineFactory, Topology topology, String checkpointPath) {
+		this.engineFactory = engineFactory;
+		this.topology = topology;
+		this.checkpointPath = checkpointPath;
+		worlds.put(Constants.DEFAULT_WORLD_NAME, new World(Constants.DEFAULT_WORLD_NAME, engineFactory, topology, checkpointPath));
+	}
+
+	/**
+	 * @return the world with the given name, created if needed. Null if the name is not valid or if there are too many
+	 * worlds already.
+	 */
+	public World join(String name) {
+		if(name == null || !WORLD_NAME.matcher(name).matches()){
+			System.err.println("Invalid world name: "+name);
+			return null;
+		}
+		World world = worlds.get(name);
+		if(world != null){
+			return world;
+		}
+		synchronized (worlds) {
+			if(worlds.size() >= Constants.MAXIMUM_WORLDS && !worlds.containsKey(name)){
+				System.err.println("Cannot create the world "+name+", there are already "+worlds.size()+" worlds.");
+				return null;
+			}
+			return worlds.computeIfAbsent(name, key -> {
+				World created = new World(key, engineFactory, topology, checkpointPath == null ? null : checkpointPath + "-" + key);
+				created.getServerGridController().setLockstep(lockstep);
+				return created;
+			});
+		}
+	}
+
+	/**
+	 * Choose whether the players of all the worlds compute the generations themselves and are only sent the commands of
+	 * each tick. It should be chosen before the players join.
+	 */
+	public void setLockstep(boolean lockstep) {
+		this.lockstep = lockstep;
+		for(World world : worlds.values()){
+			world.getServerGridController().setLockstep(lockstep);
+		}
+	}
+
+	public World getDefaultWorld() {
+		return worlds.get(Constants.DEFAULT_WORLD_NAME);
+	}
+
+	public Collection<World> getWorlds() {
+		return Collections.unmodifiableCollection(worlds.values());
+	}
+
+	/**
+	 * Start ticking the worlds.
+	 */
+	public synchronized void start() {
+		if(scheduler != null){
+			return;
+		}
+		workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+			Thread thread = new Thread(runnable, "world-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "world-scheduler"));
+		scheduler.scheduleAtFixedRate(this::dispatchTicks, 0, Constants.TICK_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Give a tick to the workers for every world that is not already waiting for one or running one, so a slow world
+	 * never pile up ticks.
+	 */
+	private void dispatchTicks() {
+		for(World world : worlds.values()){
+			if(world.schedule()){
+				workers.execute(world::runScheduledTick);
+			}
+		}
+	}
+
+	/**
+	 * Stop ticking the worlds.
+	 */
+	public synchronized void stop() {
+		if(scheduler != null){
+			scheduler.shutdownNow();
+			workers.shutdown();
+			scheduler = null;
+			workers = null;
+		}
+	}
+
+}
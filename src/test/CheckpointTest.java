@@ -0,0 +1,78 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import model.GridModel;
+import model.Rule;
+import networkcontroller.ServerGridController;
+import server.CheckpointStore;
+import utils.Timer;
+
+/**
+ * This class allow me to ensure that a server world is restored from its checkpoint, and that a damaged checkpoint is
+ * ignored in favor of the previous one.
+ *
+ * @author Jean-Hugo
+ */
+public class CheckpointTest {
+
+	@org.junit.Test
+	public void testRestoreLatestCheckpoint() throws IOException{
+		Path directory = Files.createTempDirectory("checkpoint");
+		String path = directory.resolve("world").toString();
+
+		GridModel model = new GridModel(130, 70);
+		model.setRule(Rule.parse("B36/S23"));
+		model.setCellApparitionPercentage(30);
+		model.populateRandomly();
+		ServerGridController controller = new ServerGridController(model, new Timer());
+		CheckpointStore store = new CheckpointStore(path);
+		assertFalse(controller.restoreCheckpoint(store));
+
+		model.update();
+		controller.saveCheckpoint();
+		store.flush();
+		byte[] firstSnapshot = model.getWorldSnapShotBytes();
+
+		model.update();
+		controller.saveCheckpoint();
+		store.flush();
+
+		// The latest checkpoint is restored and sent as it is.
+		GridModel restoredModel = new GridModel();
+		ServerGridController restoredController = new ServerGridController(restoredModel, new Timer());
+		assertTrue(restoredController.restoreCheckpoint(new CheckpointStore(path)));
+		assertEquals(130, restoredModel.getCurrentWidth());
+		assertEquals(70, restoredModel.getCurrentHeight());
+		assertEquals(model.getRule(), restoredModel.getRule());
+		assertEquals(model.getCycle(), restoredModel.getCycle());
+		assertEquals(30, restoredModel.getApparitionPercentage());
+		assertEquals(model.getWorldSnapShot(), restoredModel.getWorldSnapShot());
+		assertArrayEquals(controller.getInitializationMessage(), restoredController.getInitializationMessage());
+
+		// Damage the latest checkpoint, the previous one is restored.
+		try (RandomAccessFile file = new RandomAccessFile(path + ".0", "rw")) {
+			file.seek(file.length() - 1);
+			int last = file.read();
+			file.seek(file.length() - 1);
+			file.write(last ^ 0xFF);
+		}
+		GridModel previousModel = new GridModel();
+		assertTrue(new ServerGridController(previousModel, new Timer()).restoreCheckpoint(new CheckpointStore(path)));
+		assertEquals(model.getCycle() - 1, previousModel.getCycle());
+		assertArrayEquals(firstSnapshot, previousModel.getWorldSnapShotBytes());
+
+		Files.delete(directory.resolve("world.0"));
+		Files.delete(directory.resolve("world.1"));
+		Files.delete(directory);
+	}
+
+}
@@ -0,0 +1,184 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import networkcontroller.MessageFramer;
+import server.ClientConnection;
+import utils.Constants;
+
+/**
+ * This class allow me to ensure that a client that does not read fast enough get the newest world instead of all of
+ * them, never miss a command and is disconnected when too many commands wait for it, without disturbing the other
+ * clients. A big initialization never disconnect it.
+ *
+ * @author Jean-Hugo
+ */
+public class ClientConnectionTest {
+
+	// The size of the worlds sent, much bigger than the socket buffers.
+	private static final int WORLD_SIZE = 20000;
+
+	private ServerSocketChannel listener;
+	private Selector selector;
+
+	@org.junit.Test
+	public void testNewestWorldAndAllCommands() throws IOException{
+		open();
+		try {
+			SocketChannel clientSide = SocketChannel.open(listener.getLocalAddress());
+			ClientConnection connection = new ClientConnection(accept(), Constants.CLIENT_HIGH_WATER_MARK);
+
+			// The client does not read, the worlds replace each other but the commands pile up.
+			for(int i = 0; i < 100; i++){
+				assertTrue(connection.sendWorld(message(Constants.GRID_SNAPSHOT, i, WORLD_SIZE)));
+				assertTrue(connection.send(message(Constants.GRID_SET_CELL, i, 2)));
+			}
+			assertTrue(connection.getDroppedWorlds() > 0);
+			assertTrue(connection.hasPendingWorld());
+
+			List<byte[]> received = read(connection, clientSide, new MessageFramer(Constants.MAXIMUM_MESSAGE_SIZE),
+					100 + (int) (100 - connection.getDroppedWorlds()));
+			int commands = 0;
+			int lastWorld = -1;
+			for(byte[] message : received){
+				ByteBuffer buffer = ByteBuffer.wrap(message);
+				short code = buffer.getShort();
+				int number = buffer.getInt();
+				if(code == Constants.GRID_SET_CELL){
+					assertEquals(commands++, number);
+				} else {
+					assertEquals(WORLD_SIZE, message.length);
+					assertTrue(number > lastWorld);
+					lastWorld = number;
+				}
+			}
+			assertEquals(100, commands);
+			// The newest world is always sent.
+			assertEquals(99, lastWorld);
+			clientSide.close();
+		} finally {
+			close();
+		}
+	}
+
+	@org.junit.Test
+	public void testSlowClientDisconnected() throws IOException{
+		open();
+		try {
+			SocketChannel slowSide = SocketChannel.open(listener.getLocalAddress());
+			SelectionKey slowKey = accept();
+			ClientConnection slow = new ClientConnection(slowKey, 64 * 1024);
+			SocketChannel fastSide = SocketChannel.open(listener.getLocalAddress());
+			ClientConnection fast = new ClientConnection(accept(), 64 * 1024);
+			MessageFramer fastFramer = new MessageFramer(Constants.MAXIMUM_MESSAGE_SIZE);
+
+			boolean connected = true;
+			int sent = 0;
+			while(connected && sent < 10000){
+				// Both clients write the same frame.
+				ByteBuffer command = MessageFramer.frame(message(Constants.GRID_SET_CELL, sent++, 1000));
+				connected = slow.send(command);
+				assertTrue(fast.send(command));
+				// The fast client read everything.
+				byte[] received = read(fast, fastSide, fastFramer, 1).get(0);
+				assertEquals(sent - 1, ByteBuffer.wrap(received, Short.BYTES, Integer.BYTES).getInt());
+			}
+			assertFalse(connected);
+			assertFalse(slowKey.isValid());
+			assertFalse(slow.send(message(Constants.GRID_SET_CELL, 0, 2)));
+			slowSide.close();
+			fastSide.close();
+		} finally {
+			close();
+		}
+	}
+
+	@org.junit.Test
+	public void testBigInitializationNotCounted() throws IOException{
+		open();
+		try {
+			SocketChannel clientSide = SocketChannel.open(listener.getLocalAddress());
+			int highWaterMark = 64 * 1024;
+			ClientConnection connection = new ClientConnection(accept(), highWaterMark);
+
+			// The client does not read yet, the initialization wait behind a command and is much bigger than the mark.
+			assertTrue(connection.send(message(Constants.GRID_SET_CELL, 0, 1000)));
+			assertTrue(connection.sendInitialization(message(Constants.GRID_INITIALIZATION, 1, highWaterMark * 16)));
+			assertTrue(connection.send(message(Constants.GRID_SET_CELL, 2, 1000)));
+			assertTrue(connection.getWaitingBytes() < highWaterMark);
+
+			List<byte[]> received = read(connection, clientSide, new MessageFramer(Constants.MAXIMUM_MESSAGE_SIZE), 3);
+			for(int i = 0; i < 3; i++){
+				assertEquals(i, ByteBuffer.wrap(received.get(i), Short.BYTES, Integer.BYTES).getInt());
+			}
+			assertEquals(highWaterMark * 16, received.get(1).length);
+			assertEquals(0, connection.getWaitingBytes());
+			clientSide.close();
+		} finally {
+			close();
+		}
+	}
+
+	private void open() throws IOException{
+		listener = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+		selector = Selector.open();
+	}
+
+	private void close() throws IOException{
+		selector.close();
+		listener.close();
+	}
+
+	/**
+	 * @return the key of the next connection, with small socket buffers.
+	 */
+	private SelectionKey accept() throws IOException{
+		SocketChannel serverSide = listener.accept();
+		serverSide.socket().setSendBufferSize(4096);
+		serverSide.configureBlocking(false);
+		return serverSide.register(selector, SelectionKey.OP_READ);
+	}
+
+	/**
+	 * @return a message of the given size starting with the given code and number.
+	 */
+	private static byte[] message(short code, int number, int size){
+		byte[] message = new byte[Math.max(size, Short.BYTES + Integer.BYTES)];
+		ByteBuffer.wrap(message).putShort(code).putInt(number);
+		return message;
+	}
+
+	/**
+	 * Let the client read the given number of messages, writing the queue like the listener when the socket is
+	 * writable.
+	 *
+	 * @return the messages read.
+	 */
+	private static List<byte[]> read(ClientConnection connection, SocketChannel channel, MessageFramer framer, int count)
+			throws IOException{
+		List<byte[]> messages = new ArrayList<byte[]>();
+		channel.configureBlocking(false);
+		long deadline = System.currentTimeMillis() + 10000;
+		while(messages.size() < count){
+			assertTrue("The messages did not arrive", System.currentTimeMillis() < deadline);
+			assertTrue(connection.flush());
+			messages.addAll(framer.read(channel));
+		}
+		assertEquals(count, messages.size());
+		assertEquals(0, connection.getQueueLength());
+		return messages;
+	}
+
+}
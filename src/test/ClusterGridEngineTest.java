@@ -0,0 +1,147 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import cluster.ClusterGridEngine;
+import cluster.StripeNode;
+import engine.EngineType;
+import engine.GridEngine;
+import engine.PackedGridEngine;
+import engine.Topology;
+
+/**
+ * This class allow me to ensure that a world split between several nodes compute the same generations as a single
+ * engine. The nodes run in threads of the test but talk through real sockets, like separate processes on localhost.
+ *
+ * @author Jean-Hugo
+ */
+public class ClusterGridEngineTest {
+
+	// Birth with 3 neighbors, survival with 2 or 3 neighbors.
+	private static final int BIRTH = 1 << 3;
+	private static final int SURVIVAL = (1 << 2) | (1 << 3);
+	// The number of nodes of the cluster.
+	private static final int NODES = 3;
+
+	@org.junit.Test
+	public void testSameResultAsPackedEngine(){
+		List<StripeNode> nodes = startNodes();
+		try {
+			Random random = new Random(20);
+			for(Topology topology : Topology.values()){
+				PackedGridEngine packed = new PackedGridEngine(75, 40);
+				ClusterGridEngine cluster = new ClusterGridEngine(75, 40, getAddresses(nodes));
+				packed.setTopology(topology);
+				cluster.setTopology(topology);
+				randomize(random, packed, cluster);
+
+				for (int generation = 0; generation < 20; generation++) {
+					packed.step(BIRTH, SURVIVAL);
+					cluster.step(BIRTH, SURVIVAL);
+					assertEquals(topology+" at generation "+generation, snapshot(packed), snapshot(cluster));
+				}
+				// Many generations at once, the nodes exchange their rows without the coordinator.
+				packed.advance(50, BIRTH, SURVIVAL);
+				cluster.advance(50, BIRTH, SURVIVAL);
+				assertEquals(snapshot(packed), snapshot(cluster));
+				assertEquals(packed.getPopulation(), cluster.getPopulation());
+
+				// Edits between generations.
+				packed.setCell(13, 74, true);
+				cluster.setCell(13, 74, true);
+				packed.setRun(27, 3, 40, true);
+				cluster.setRun(27, 3, 40, true);
+				assertTrue(cluster.getCell(13, 74));
+				for (int generation = 0; generation < 10; generation++) {
+					packed.step(BIRTH, SURVIVAL);
+					cluster.step(BIRTH, SURVIVAL);
+				}
+				assertEquals(snapshot(packed), snapshot(cluster));
+				cluster.release();
+			}
+		} finally {
+			stopNodes(nodes);
+		}
+	}
+
+	@org.junit.Test
+	public void testResize(){
+		List<StripeNode> nodes = startNodes();
+		try {
+			PackedGridEngine packed = new PackedGridEngine(50, 30);
+			ClusterGridEngine cluster = new ClusterGridEngine(50, 30, getAddresses(nodes));
+			randomize(new Random(21), packed, cluster);
+
+			// Fewer rows than nodes, a node is left without stripe.
+			packed.resize(70, 2);
+			cluster.resize(70, 2);
+			assertEquals(snapshot(packed), snapshot(cluster));
+			packed.step(BIRTH, SURVIVAL);
+			cluster.step(BIRTH, SURVIVAL);
+			assertEquals(snapshot(packed), snapshot(cluster));
+
+			packed.resize(130, 65);
+			cluster.resize(130, 65);
+			randomize(new Random(22), packed, cluster);
+			packed.advance(30, BIRTH, SURVIVAL);
+			cluster.advance(30, BIRTH, SURVIVAL);
+			assertEquals(snapshot(packed), snapshot(cluster));
+
+			cluster.fill(true);
+			assertEquals(130 * 65, cluster.getPopulation());
+			cluster.release();
+		} finally {
+			stopNodes(nodes);
+		}
+	}
+
+	private static List<StripeNode> startNodes(){
+		List<StripeNode> nodes = new ArrayList<StripeNode>();
+		for(int i = 0; i < NODES; i++){
+			StripeNode node = new StripeNode(0, EngineType.PACKED);
+			Thread thread = new Thread(node);
+			thread.setDaemon(true);
+			thread.start();
+			nodes.add(node);
+		}
+		return nodes;
+	}
+
+	private static void stopNodes(List<StripeNode> nodes){
+		for(StripeNode node : nodes){
+			node.close();
+		}
+	}
+
+	private static List<InetSocketAddress> getAddresses(List<StripeNode> nodes){
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		for(StripeNode node : nodes){
+			addresses.add(new InetSocketAddress("localhost", node.getPort()));
+		}
+		return addresses;
+	}
+
+	private static void randomize(Random random, GridEngine expected, GridEngine actual){
+		for (int i = 0; i < expected.getHeight(); i++) {
+			for (int j = 0; j < expected.getWidth(); j++) {
+				boolean alive = random.nextInt(100) < 35;
+				expected.setCell(i, j, alive);
+				actual.setCell(i, j, alive);
+			}
+		}
+	}
+
+	private static BitSet snapshot(GridEngine engine){
+		BitSet snapshot = new BitSet();
+		engine.writeSnapshot(snapshot);
+		return snapshot;
+	}
+
+}
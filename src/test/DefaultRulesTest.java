@@ -1,6 +1,7 @@
 package test;
 
 import model.GridModel;
+import model.Rule;
 import static org.junit.Assert.*;
 /**
  * This class allow me to ensure that the default rules of the game are respected.
@@ -17,8 +18,8 @@ public class DefaultRulesTest {
 		GridModel model = new GridModel();
 		
 		// The position for the structure center.
-		int x = model.getCurrentGridSize()/2;
-		int y = model.getCurrentGridSize()/2;
+		int x = model.getCurrentWidth()/2;
+		int y = model.getCurrentHeight()/2;
 		
 		model.createBar(x, y);
 
@@ -46,4 +47,105 @@ public class DefaultRulesTest {
 
 	}
 
+	/**
+	 * Test that a periodic structure crossing the border of a rectangular grid wrap correctly.
+	 */
+	@org.junit.Test
+	public void testBarWrapOnRectangularGrid(){
+		GridModel model = new GridModel(300, 12);
+
+		// The bar is centered on the first column so it wraps to the last one.
+		model.createBar(0, 5);
+
+		for(int i = 0; i < 10; i++){
+
+			boolean[][] grid = model.getGrid();
+			assertEquals(12, grid.length);
+			assertEquals(300, grid[0].length);
+
+			if((i % 2) == 0){
+				assertTrue(grid[5][299]);
+				assertTrue(grid[5][0]);
+				assertTrue(grid[5][1]);
+			} else {
+				assertTrue(grid[4][0]);
+				assertTrue(grid[5][0]);
+				assertTrue(grid[6][0]);
+			}
+
+			model.update();
+		}
+	}
+
+	/**
+	 * Test that the rules are read and written in the B/S notation, and that the wrong ones are refused.
+	 */
+	@org.junit.Test
+	public void testRuleNotation(){
+		assertEquals(Rule.CONWAY, Rule.parse("B3/S23"));
+		assertEquals("B36/S23", Rule.parse("b63 / s32").toString());
+		assertEquals("B2/S", Rule.parse("B2/S").toString());
+		assertNull(Rule.parse("B3S23"));
+		assertNull(Rule.parse("B39/S23"));
+		// The sparse engines cannot give birth to cells without neighbors.
+		assertNull(Rule.parse("B03/S23"));
+	}
+
+	/**
+	 * Test that a HighLife replicator is copied, which never happens with the default rule.
+	 */
+	@org.junit.Test
+	public void testHighLifeReplicator(){
+		GridModel model = new GridModel(64, 64);
+		model.setRule(Rule.parse("B36/S23"));
+
+		int replicator[][] = {{30, 31}, {30, 32}, {30, 33}, {31, 30}, {31, 33}, {32, 29}, {32, 33}, {33, 29}, {33, 32}, {34, 29}, {34, 30}, {34, 31}};
+		for(int cell[] : replicator){
+			model.setCell(cell[0] * model.getCurrentWidth() + cell[1]);
+		}
+		for(int i = 0; i < 12; i++){
+			model.update();
+		}
+		// After 12 generations, there are 2 replicators.
+		assertEquals(24, countLivingCells(model.getGrid()));
+	}
+
+	private int countLivingCells(boolean grid[][]) {
+		int count = 0;
+		for(boolean row[] : grid){
+			for(boolean cell : row){
+				count += cell ? 1 : 0;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Test that advancing several generations at once give the same grid as updating them one by one, with a single
+	 * notification.
+	 */
+	@org.junit.Test
+	public void testAdvanceSameAsUpdates(){
+		GridModel updated = new GridModel(50, 40);
+		GridModel advanced = new GridModel(50, 40);
+		// Both start from the same soup.
+		updated.populateRandomly(123);
+		advanced.populateRandomly(123);
+		assertEquals(updated.getWorldSnapShot(), advanced.getWorldSnapShot());
+		assertTrue(updated.getWorldSnapShot().cardinality() > 0);
+
+		final int notifications[] = {0};
+		advanced.addGridListener(event -> notifications[0]++);
+
+		for(int i = 0; i < 123; i++){
+			updated.update();
+		}
+		advanced.advance(123);
+
+		assertEquals(1, notifications[0]);
+		assertEquals(updated.getCycle(), advanced.getCycle());
+		assertTrue(advanced.getWorldSnapShot().cardinality() > 0);
+		assertEquals(updated.getWorldSnapShot(), advanced.getWorldSnapShot());
+	}
+
 }
@@ -0,0 +1,201 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import javax.swing.JLabel;
+
+import model.GridModel;
+import networkcontroller.ClientGridController;
+import networkcontroller.MessageFramer;
+import networkcontroller.ServerGridController;
+import utils.Constants;
+import utils.Timer;
+import view.CommandPanel;
+
+/**
+ * This class allow me to ensure that a client following the deltas sent by the server has the same world as the server,
+ * and that it get a whole world again when it missed a delta.
+ *
+ * @author Jean-Hugo
+ */
+public class DeltaSnapshotTest {
+
+	// Cut the bytes sent by the server in messages.
+	private final MessageFramer framer = new MessageFramer(Constants.MAXIMUM_MESSAGE_SIZE);
+	// The messages read and not yet given to the client.
+	private final Queue<byte[]> received = new ArrayDeque<byte[]>();
+
+	@org.junit.Test
+	public void testDeltas() throws IOException{
+		GridModel serverModel = new GridModel(256, 256);
+		ServerGridController server = new ServerGridController(serverModel, new Timer());
+		// A few gliders, most of the world stay the same from a generation to the next.
+		for(int i = 0; i < 5; i++){
+			assertTrue(serverModel.stampPattern(new StringReader("x = 3, y = 3\nbo$2bo$3o!\n"), i * 50, i * 40));
+		}
+		GridModel clientModel = new GridModel(256, 256);
+		ClientGridController client = new ClientGridController(clientModel, new CommandPanel(clientModel), new JLabel());
+
+		try(ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+				SocketChannel clientSide = SocketChannel.open(listener.getLocalAddress());
+				SocketChannel serverSide = listener.accept();
+				Selector selector = Selector.open()){
+			serverSide.configureBlocking(false);
+			SelectionKey key = serverSide.register(selector, SelectionKey.OP_READ);
+			server.addClient(key);
+
+			// A new client get the whole world first.
+			serverModel.update();
+			byte[] keyframe = server.sendWorldSnapShotToClients();
+			assertEquals(Constants.GRID_SNAPSHOT, ByteBuffer.wrap(keyframe).getShort());
+			assertArrayEquals(keyframe, receive(client, clientSide));
+			assertEquals(serverModel.getWorldSnapShot(), clientModel.getWorldSnapShot());
+			assertEquals(serverModel.getCycle(), clientModel.getCycle());
+
+			for(int i = 1; i < Constants.KEYFRAME_INTERVAL; i++){
+				serverModel.update();
+				byte[] delta = server.sendWorldSnapShotToClients();
+				assertEquals(Constants.GRID_DELTA, ByteBuffer.wrap(delta).getShort());
+				assertTrue(delta.length * 10 < serverModel.getWorldSnapShotBytes().length);
+				assertArrayEquals(delta, receive(client, clientSide));
+				assertEquals("generation "+i, serverModel.getWorldSnapShot(), clientModel.getWorldSnapShot());
+				assertEquals(serverModel.getCycle(), clientModel.getCycle());
+			}
+			// A keyframe every once in a while.
+			serverModel.update();
+			byte[] periodicKeyframe = server.sendWorldSnapShotToClients();
+			assertEquals(Constants.GRID_SNAPSHOT, ByteBuffer.wrap(periodicKeyframe).getShort());
+			assertArrayEquals(periodicKeyframe, receive(client, clientSide));
+
+			// A missed delta is found with the next one, which is ignored.
+			serverModel.update();
+			server.sendWorldSnapShotToClients();
+			read(clientSide);
+			serverModel.update();
+			server.sendWorldSnapShotToClients();
+			receive(client, clientSide);
+			assertTrue(client.isAwaitingKeyframe());
+			assertFalse(serverModel.getWorldSnapShot().equals(clientModel.getWorldSnapShot()));
+
+			// The client get the whole world while the others get the delta.
+			server.requestResync(key);
+			serverModel.update();
+			byte[] delta = server.sendWorldSnapShotToClients();
+			assertEquals(Constants.GRID_DELTA, ByteBuffer.wrap(delta).getShort());
+			assertEquals(Constants.GRID_SNAPSHOT, ByteBuffer.wrap(receive(client, clientSide)).getShort());
+			assertFalse(client.isAwaitingKeyframe());
+			assertEquals(serverModel.getWorldSnapShot(), clientModel.getWorldSnapShot());
+			// The worlds missed are counted in the cycle.
+			assertEquals(serverModel.getCycle(), clientModel.getCycle());
+		}
+	}
+
+	@org.junit.Test
+	public void testPeriodAnnouncedWithCycle() throws IOException{
+		GridModel serverModel = new GridModel(30, 30);
+		ServerGridController server = new ServerGridController(serverModel, new Timer());
+		// A blinker.
+		for(int x = 10; x < 13; x++){
+			serverModel.setCell(10 * 30 + x);
+		}
+		GridModel clientModel = new GridModel(30, 30);
+		ClientGridController client = new ClientGridController(clientModel, new CommandPanel(clientModel), new JLabel());
+
+		try(ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+				SocketChannel clientSide = SocketChannel.open(listener.getLocalAddress());
+				SocketChannel serverSide = listener.accept();
+				Selector selector = Selector.open()){
+			serverSide.configureBlocking(false);
+			server.addClient(serverSide.register(selector, SelectionKey.OP_READ));
+
+			// The client miss the worlds sent until the period is found, then get the world with the period.
+			boolean announced = false;
+			for(int i = 0; i < 20 && !announced; i++){
+				serverModel.update();
+				server.publishWorldState();
+				byte[] message = read(clientSide);
+				announced = ByteBuffer.wrap(message).getShort() == Constants.GRID_PERIOD;
+				if(announced){
+					client.addPendingCommand(message);
+					client.processPendingCommands();
+				}
+			}
+			assertTrue(announced);
+			assertEquals(serverModel.getWorldSnapShot(), clientModel.getWorldSnapShot());
+			assertEquals(serverModel.getCycle(), clientModel.getCycle());
+		}
+	}
+
+	@org.junit.Test
+	public void testDeltaAfterSeededReset() throws IOException{
+		GridModel serverModel = new GridModel(1000, 1000);
+		ServerGridController server = new ServerGridController(serverModel, new Timer());
+		GridModel clientModel = new GridModel(1000, 1000);
+		ClientGridController client = new ClientGridController(clientModel, new CommandPanel(clientModel), new JLabel());
+
+		try(ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+				SocketChannel clientSide = SocketChannel.open(listener.getLocalAddress());
+				SocketChannel serverSide = listener.accept();
+				Selector selector = Selector.open()){
+			serverSide.configureBlocking(false);
+			server.addClient(serverSide.register(selector, SelectionKey.OP_READ));
+			serverModel.update();
+			server.sendWorldSnapShotToClients();
+			receive(client, clientSide);
+
+			// The reset is sent by the world, the clients build the world from its seed. The cells are few so the next
+			// generation change less than most of the words.
+			server.addPendingCommand(ByteBuffer.allocate(12).putShort(Constants.RESET_GRID_COMMAND).putShort((short) 1)
+					.putLong(42).array());
+			server.processPendingCommands();
+			server.publishWorldState();
+			assertEquals(Constants.RESET_GRID_COMMAND, ByteBuffer.wrap(receive(client, clientSide)).getShort());
+			assertEquals(serverModel.getWorldSnapShot(), clientModel.getWorldSnapShot());
+
+			// The next generation is only a delta from the seeded world.
+			serverModel.update();
+			server.publishWorldState();
+			assertEquals(Constants.GRID_DELTA, ByteBuffer.wrap(receive(client, clientSide)).getShort());
+			assertFalse(client.isAwaitingKeyframe());
+			assertEquals(serverModel.getWorldSnapShot(), clientModel.getWorldSnapShot());
+			assertEquals(serverModel.getCycle(), clientModel.getCycle());
+		}
+	}
+
+	/**
+	 * Give the next message sent by the server to the client.
+	 *
+	 * @return the message.
+	 */
+	private byte[] receive(ClientGridController client, SocketChannel channel) throws IOException{
+		byte[] message = read(channel);
+		client.addPendingCommand(message);
+		client.processPendingCommands();
+		return message;
+	}
+
+	/**
+	 * @return the next message sent by the server, waiting for it if needed.
+	 */
+	private byte[] read(SocketChannel channel) throws IOException{
+		while(received.isEmpty()){
+			received.addAll(framer.read(channel));
+		}
+		return received.poll();
+	}
+
+}
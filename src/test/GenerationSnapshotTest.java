@@ -0,0 +1,91 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import engine.EngineType;
+import model.GenerationSnapshot;
+import model.GridModel;
+
+/**
+ * This class allow me to ensure that the published generations are complete copies of the grid, that they do not
+ * change while they are read and that they are recycled.
+ *
+ * @author Jean-Hugo
+ */
+public class GenerationSnapshotTest {
+
+	@org.junit.Test
+	public void testSameAsWorldSnapshot(){
+		for(EngineType type : new EngineType[] {EngineType.REFERENCE, EngineType.PACKED, EngineType.OFFHEAP}){
+			// A width multiple of 64 and another one.
+			for(int width : new int[] {128, 75}){
+				GridModel model = new GridModel(width, 50, type.createEngine(width, 50));
+				model.setCellApparitionPercentage(40);
+				model.populateRandomly(width);
+				model.update();
+				try(GenerationSnapshot snapshot = model.acquireSnapshot()){
+					assertEquals(type.name()+" "+width, model.getWorldSnapShot(), snapshot.toBitSet());
+					assertEquals(model.getCycle(), snapshot.getCycle());
+					BitSet decoded = BitSet.valueOf(snapshot.toByteArray());
+					assertEquals(model.getWorldSnapShot(), decoded);
+				}
+			}
+		}
+	}
+
+	@org.junit.Test
+	public void testUnchangedWhileAcquired(){
+		GridModel model = new GridModel(60, 60);
+		model.setCellApparitionPercentage(30);
+		model.populateRandomly(7);
+		BitSet expected = model.getWorldSnapShot();
+
+		Set<GenerationSnapshot> buffers = Collections.newSetFromMap(new IdentityHashMap<GenerationSnapshot, Boolean>());
+		try(GenerationSnapshot held = model.acquireSnapshot()){
+			for(int i = 0; i < 20; i++){
+				model.update();
+				try(GenerationSnapshot latest = model.acquireSnapshot()){
+					buffers.add(latest);
+					assertEquals(model.getWorldSnapShot(), latest.toBitSet());
+				}
+			}
+			assertEquals(expected, held.toBitSet());
+			// The held snapshot is not recycled, the 2 other buffers are.
+			assertTrue(buffers.size() <= 2);
+		}
+	}
+
+	@org.junit.Test
+	public void testConcurrentReaders() throws InterruptedException {
+		// A blinker is horizontal on the even cycles and vertical on the odd ones.
+		GridModel model = new GridModel(30, 30);
+		model.createBar(15, 15);
+		AtomicReference<String> failure = new AtomicReference<String>();
+
+		Thread reader = new Thread(() -> {
+			for(int i = 0; i < 20000 && failure.get() == null; i++){
+				try(GenerationSnapshot snapshot = model.acquireSnapshot()){
+					boolean horizontal = snapshot.getCycle() % 2 == 0;
+					if(snapshot.toBitSet().cardinality() != 3 || snapshot.isCellAlive(15, 14) != horizontal
+							|| snapshot.isCellAlive(14, 15) == horizontal){
+						failure.set("torn generation at cycle "+snapshot.getCycle());
+					}
+				}
+			}
+		});
+		reader.start();
+		for(int i = 0; i < 20000; i++){
+			model.update();
+		}
+		reader.join();
+		assertEquals(null, failure.get());
+	}
+
+}
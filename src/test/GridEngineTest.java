@@ -0,0 +1,62 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import engine.EngineType;
+import engine.GridEngine;
+import model.Rule;
+
+/**
+ * This class allow me to ensure that every engine on a torus compute the same generations as the reference engine
+ * for several rules.
+ *
+ * @author Jean-Hugo
+ */
+public class GridEngineTest {
+
+	// The rules tested: Conway, HighLife and Seeds.
+	private static final String RULES[] = {"B3/S23", "B36/S23", "B2/S"};
+	// The number of generations computed for every engine.
+	private static final int GENERATIONS = 30;
+
+	@org.junit.Test
+	public void testSameResultAsReferenceEngine(){
+		EngineType types[] = {EngineType.PACKED, EngineType.PARALLEL, EngineType.OFFHEAP, EngineType.SPARSE};
+		int width = 130;
+		int height = 70;
+
+		for(String text : RULES){
+			Rule rule = Rule.parse(text);
+			for(EngineType type : types){
+				GridEngine reference = EngineType.REFERENCE.createEngine(width, height);
+				GridEngine engine = type.createEngine(width, height);
+
+				Random random = new Random(7);
+				BitSet initial = new BitSet();
+				for (int i = 0; i < width * height; i++) {
+					if(random.nextInt(100) < 30){
+						initial.set(i);
+					}
+				}
+				reference.readSnapshot(initial);
+				engine.readSnapshot(initial);
+
+				for (int generation = 0; generation < GENERATIONS; generation++) {
+					reference.step(rule.getBirthMask(), rule.getSurvivalMask());
+					engine.step(rule.getBirthMask(), rule.getSurvivalMask());
+
+					BitSet expected = new BitSet();
+					BitSet actual = new BitSet();
+					reference.writeSnapshot(expected);
+					engine.writeSnapshot(actual);
+					assertEquals(type+" "+rule+" at generation "+generation, expected, actual);
+					assertEquals(type+" "+rule+" population at generation "+generation, expected.cardinality(), engine.getPopulation());
+				}
+			}
+		}
+	}
+
+}
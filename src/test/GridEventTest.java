@@ -0,0 +1,111 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import engine.EngineType;
+import engine.Topology;
+import model.GridEvent;
+import model.GridModel;
+import model.Rule;
+
+/**
+ * This class allow me to ensure that the listeners receive what changed in the model, once per batch of changes.
+ *
+ * @author Jean-Hugo
+ */
+public class GridEventTest {
+
+	@org.junit.Test
+	public void testSingleChange(){
+		GridModel model = new GridModel(30, 20);
+		List<GridEvent> events = new ArrayList<GridEvent>();
+		model.addGridListener(events::add);
+
+		model.setCell(2 * 30 + 5);
+		assertEquals(1, events.size());
+		GridEvent event = events.get(0);
+		assertTrue(event.is(GridEvent.Kind.CELLS));
+		assertFalse(event.is(GridEvent.Kind.GENERATION));
+		assertFalse(event.isWholeGrid());
+		assertEquals(new Rectangle(5, 2, 1, 1), event.getDirtyRegions().get(0));
+
+		model.setRule(Rule.parse("B36/S23"));
+		assertEquals(2, events.size());
+		assertTrue(events.get(1).is(GridEvent.Kind.PARAMETERS));
+		assertTrue(events.get(1).getDirtyRegions().isEmpty());
+	}
+
+	@org.junit.Test
+	public void testBatchMerged(){
+		GridModel model = new GridModel(30, 20);
+		List<GridEvent> events = new ArrayList<GridEvent>();
+		model.addGridListener(events::add);
+
+		model.beginChanges();
+		model.setCell(0);
+		model.setCell(31);
+		model.update();
+		model.beginChanges();
+		model.update();
+		model.endChanges();
+		assertEquals(0, events.size());
+		model.endChanges();
+
+		assertEquals(1, events.size());
+		GridEvent event = events.get(0);
+		assertTrue(event.is(GridEvent.Kind.CELLS));
+		assertTrue(event.is(GridEvent.Kind.GENERATION));
+		assertEquals(2, event.getGenerations());
+		assertFalse(event.isWholeGrid());
+		assertTrue(event.getDirtyRegions().contains(new Rectangle(1, 1, 1, 1)));
+	}
+
+	@org.junit.Test
+	public void testTooManyRegionsIsWholeGrid(){
+		GridModel model = new GridModel(100, 100);
+		List<GridEvent> events = new ArrayList<GridEvent>();
+		model.addGridListener(events::add);
+
+		model.beginChanges();
+		for(int i = 0; i <= GridEvent.MAXIMUM_REGIONS; i++){
+			model.setCell(i * 100 + i);
+		}
+		model.endChanges();
+		assertEquals(1, events.size());
+		assertTrue(events.get(0).isWholeGrid());
+		assertEquals(new Rectangle(0, 0, 100, 100), events.get(0).getDirtyRegions().get(0));
+
+		model.resetGrid();
+		assertEquals(2, events.size());
+		assertTrue(events.get(1).is(GridEvent.Kind.RESET));
+		assertTrue(events.get(1).isWholeGrid());
+	}
+
+	@org.junit.Test
+	public void testCellOutsideGridIgnored(){
+		for(EngineType type : new EngineType[] {EngineType.REFERENCE, EngineType.PACKED, EngineType.OFFHEAP}){
+			GridModel model = new GridModel(10, 10, type.createEngine(10, 10));
+			model.setTopology(Topology.BOUNDED);
+			List<GridEvent> events = new ArrayList<GridEvent>();
+			model.addGridListener(events::add);
+
+			// The row below a bounded grid, then before the first cell.
+			for(int position = 100; position < 103; position++){
+				model.setCell(position);
+			}
+			model.setCell(-1);
+			model.setCell(Integer.MAX_VALUE);
+			assertTrue(type.name(), events.isEmpty());
+
+			model.update();
+			assertEquals(type.name(), 0, model.getWorldSnapShot().cardinality());
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import engine.HashLifeGridEngine;
+import engine.SparseGridEngine;
+
+/**
+ * This class allow me to ensure that the HashLife engine jump to the same generations as the sparse engine on an
+ * unbounded plane.
+ *
+ * @author Jean-Hugo
+ */
+public class HashLifeGridEngineTest {
+
+	// Birth with 3 neighbors, survival with 2 or 3 neighbors.
+	private static final int BIRTH = 1 << 3;
+	private static final int SURVIVAL = (1 << 2) | (1 << 3);
+	// The size of the grid used for the test.
+	private static final int GRID_SIZE_FOR_TEST = 64;
+
+	/**
+	 * Test single steps and jumps of several generations from a random soup.
+	 */
+	@org.junit.Test
+	public void testSameResultAsSparseEngine(){
+		HashLifeGridEngine hashLife = new HashLifeGridEngine(GRID_SIZE_FOR_TEST, GRID_SIZE_FOR_TEST);
+		SparseGridEngine sparse = new SparseGridEngine(GRID_SIZE_FOR_TEST, GRID_SIZE_FOR_TEST, true);
+		populateRandomly(new Random(3), hashLife, sparse);
+
+		// Jump 1, 2, 4... 256 generations.
+		for (int power = 0; power <= 8; power++) {
+			hashLife.advance(1L << power, BIRTH, SURVIVAL);
+			sparse.advance(1L << power, BIRTH, SURVIVAL);
+			assertSameSnapshot(hashLife, sparse, "after a jump of 2^"+power);
+		}
+
+		// A number of generations that is not a power of 2.
+		hashLife.advance(300, BIRTH, SURVIVAL);
+		sparse.advance(300, BIRTH, SURVIVAL);
+		assertSameSnapshot(hashLife, sparse, "after a jump of 300");
+	}
+
+	/**
+	 * Test that the memory stay capped when the node table is full.
+	 */
+	@org.junit.Test
+	public void testNodeTableEviction(){
+		int maximumNodes = 1 << 12;
+		HashLifeGridEngine hashLife = new HashLifeGridEngine(GRID_SIZE_FOR_TEST, GRID_SIZE_FOR_TEST, maximumNodes);
+		SparseGridEngine sparse = new SparseGridEngine(GRID_SIZE_FOR_TEST, GRID_SIZE_FOR_TEST, true);
+		populateRandomly(new Random(5), hashLife, sparse);
+
+		for (int i = 0; i < 50; i++) {
+			hashLife.advance(16, BIRTH, SURVIVAL);
+			sparse.advance(16, BIRTH, SURVIVAL);
+			assertSameSnapshot(hashLife, sparse, "after "+(i + 1) * 16+" generations");
+		}
+		// The table can only exceed the maximum during a single jump.
+		hashLife.advance(1, BIRTH, SURVIVAL);
+		assertTrue(hashLife.getNodeCount() < maximumNodes * 4);
+	}
+
+	/**
+	 * Test that a single big jump split itself instead of filling the table.
+	 */
+	@org.junit.Test
+	public void testBigJumpStayCapped(){
+		int maximumNodes = 1 << 12;
+		HashLifeGridEngine hashLife = new HashLifeGridEngine(GRID_SIZE_FOR_TEST, GRID_SIZE_FOR_TEST, maximumNodes);
+		SparseGridEngine sparse = new SparseGridEngine(GRID_SIZE_FOR_TEST, GRID_SIZE_FOR_TEST, true);
+		populateRandomly(new Random(7), hashLife, sparse);
+
+		hashLife.advance(1 << 10, BIRTH, SURVIVAL);
+		sparse.advance(1 << 10, BIRTH, SURVIVAL);
+		assertSameSnapshot(hashLife, sparse, "after a jump of 2^10");
+		assertTrue(hashLife.getNodeCount() < maximumNodes + 100);
+	}
+
+	/**
+	 * Test jumps bigger than the root can hold.
+	 */
+	@org.junit.Test
+	public void testHugeJump(){
+		HashLifeGridEngine hashLife = new HashLifeGridEngine(GRID_SIZE_FOR_TEST, GRID_SIZE_FOR_TEST);
+		// A blinker and a glider flying away.
+		for (int x = 10; x < 13; x++) {
+			hashLife.setCell(10, x, true);
+		}
+		hashLife.setCell(30, 31, true);
+		hashLife.setCell(31, 32, true);
+		hashLife.setCell(32, 30, true);
+		hashLife.setCell(32, 31, true);
+		hashLife.setCell(32, 32, true);
+
+		hashLife.advance(Long.MAX_VALUE, BIRTH, SURVIVAL);
+		// The number of generations is odd, the blinker is vertical. The glider is too far away to be kept.
+		assertEquals(3, hashLife.getPopulation());
+		for (int y = 9; y < 12; y++) {
+			assertTrue(hashLife.getCell(y, 11));
+		}
+		assertFalse(hashLife.getCell(10, 10));
+	}
+
+	private void populateRandomly(Random random, HashLifeGridEngine hashLife, SparseGridEngine sparse) {
+		for (int i = 0; i < GRID_SIZE_FOR_TEST; i++) {
+			for (int j = 0; j < GRID_SIZE_FOR_TEST; j++) {
+				boolean alive = random.nextInt(100) < 30;
+				hashLife.setCell(i, j, alive);
+				sparse.setCell(i, j, alive);
+			}
+		}
+	}
+
+	private void assertSameSnapshot(HashLifeGridEngine hashLife, SparseGridEngine sparse, String message) {
+		BitSet expected = new BitSet();
+		BitSet actual = new BitSet();
+		sparse.writeSnapshot(expected);
+		hashLife.writeSnapshot(actual);
+		assertEquals(message, expected, actual);
+	}
+
+}
@@ -0,0 +1,152 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.swing.JLabel;
+
+import engine.EngineType;
+import model.GridModel;
+import networkcontroller.ClientGridController;
+import networkcontroller.ServerGridController;
+import utils.Constants;
+import utils.Timer;
+import view.CommandPanel;
+
+/**
+ * This class allow me to ensure that in lockstep mode a client computing the generations itself from the ticks stay
+ * with the same world as the server, and ask for the world again when it is not.
+ *
+ * @author Jean-Hugo
+ */
+public class LockstepTest {
+
+	// The largest tick without command, whatever the grid size.
+	private static final int EMPTY_TICK_SIZE = 32;
+
+	@org.junit.Test
+	public void testClientFollowTheTicks(){
+		GridModel serverModel = new GridModel(90, 60);
+		ServerGridController server = new ServerGridController(serverModel, new Timer());
+		server.setLockstep(true);
+		GridModel clientModel = new GridModel();
+		ClientGridController client = createClient(clientModel);
+
+		server.addPendingCommand(command(ByteBuffer.allocate(12).putShort(Constants.RESET_GRID_COMMAND).putShort((short) 30).putLong(15)));
+		receive(client, tick(serverModel, server, false));
+		receive(client, server.getInitializationMessage());
+		assertEquals(serverModel.getWorldSnapShot(), clientModel.getWorldSnapShot());
+		assertEquals(serverModel.getCycle(), clientModel.getCycle());
+
+		for(int i = 0; i < 40; i++){
+			if(i == 5){
+				server.addPendingCommand(command(ByteBuffer.allocate(6).putShort(Constants.GRID_SET_CELL).putInt(90 * 7 + 3)));
+			} else if(i == 10){
+				server.addPendingCommand(command(ByteBuffer.allocate(6).putShort(Constants.CHANGE_GRID_CELL_REQUIREMENT_COMMAND)
+						.putShort((short) (1 << 3 | 1 << 6)).putShort((short) (1 << 2 | 1 << 3))));
+			} else if(i == 15){
+				byte[] glider = "bo$2bo$3o!".getBytes(StandardCharsets.UTF_8);
+				server.addPendingCommand(command(ByteBuffer.allocate(14 + glider.length).putShort(Constants.STAMP_PATTERN_COMMAND)
+						.putInt(20).putInt(30).putInt(glider.length).put(glider)));
+			} else if(i == 20){
+				server.addPendingCommand(command(ByteBuffer.allocate(6).putShort(Constants.ADVANCE_GENERATIONS_COMMAND).putInt(25)));
+			} else if(i == 25){
+				server.addPendingCommand(command(ByteBuffer.allocate(10).putShort(Constants.CHANGE_GRID_SIZE_COMMAND).putInt(70).putInt(80)));
+			}
+			byte[] tick = tick(serverModel, server, true);
+			if(i % 5 != 0){
+				// Only a few bytes per tick, whatever the grid size.
+				assertTrue(tick.length <= EMPTY_TICK_SIZE);
+			}
+			receive(client, tick);
+			assertEquals("tick "+i, serverModel.getWorldSnapShot(), clientModel.getWorldSnapShot());
+			assertEquals(serverModel.getCycle(), clientModel.getCycle());
+			assertEquals(serverModel.getRule(), clientModel.getRule());
+		}
+		assertFalse(client.isAwaitingResync());
+
+		// Nothing is sent when nothing happened.
+		assertNull(tick(serverModel, server, false));
+	}
+
+	@org.junit.Test
+	public void testUnboundedWorldNotInLockstep(){
+		for(EngineType type : new EngineType[] {EngineType.HASHLIFE, EngineType.UNBOUNDED}){
+			ServerGridController server = new ServerGridController(new GridModel(40, 40, type.createEngine(40, 40)),
+					new Timer());
+			server.setLockstep(true);
+			assertFalse(type.name(), server.isLockstep());
+		}
+		ServerGridController server = new ServerGridController(new GridModel(40, 40), new Timer());
+		server.setLockstep(true);
+		assertTrue(server.isLockstep());
+	}
+
+	@org.junit.Test
+	public void testResync(){
+		GridModel serverModel = new GridModel(50, 50);
+		ServerGridController server = new ServerGridController(serverModel, new Timer());
+		server.setLockstep(true);
+		serverModel.setCellApparitionPercentage(40);
+		serverModel.populateRandomly(3);
+		GridModel clientModel = new GridModel();
+		ClientGridController client = createClient(clientModel);
+		receive(client, server.getInitializationMessage());
+
+		// A cell changed by mistake is found with the next hash.
+		clientModel.populateWithSnapshot(new java.util.BitSet());
+		for(int i = 0; i < Constants.LOCKSTEP_HASH_INTERVAL && !client.isAwaitingResync(); i++){
+			receive(client, tick(serverModel, server, true));
+		}
+		assertTrue(client.isAwaitingResync());
+		// The ticks are ignored until the world is received again.
+		int cycle = clientModel.getCycle();
+		receive(client, tick(serverModel, server, true));
+		assertEquals(cycle, clientModel.getCycle());
+		receive(client, server.getInitializationMessage());
+		assertFalse(client.isAwaitingResync());
+		assertEquals(serverModel.getWorldSnapShot(), clientModel.getWorldSnapShot());
+
+		// A lost tick is found with the cycle of the next one.
+		tick(serverModel, server, true);
+		receive(client, tick(serverModel, server, true));
+		assertTrue(client.isAwaitingResync());
+	}
+
+	private static ClientGridController createClient(GridModel model){
+		return new ClientGridController(model, new CommandPanel(model), new JLabel());
+	}
+
+	/**
+	 * Do what a world of the server do during a tick.
+	 */
+	private static byte[] tick(GridModel model, ServerGridController server, boolean stepped){
+		model.beginChanges();
+		int cycle = model.getCycle();
+		if(stepped){
+			model.update();
+		}
+		server.processPendingCommands();
+		model.endChanges();
+		return server.publishTick(cycle, stepped);
+	}
+
+	private static void receive(ClientGridController client, byte[] message){
+		client.addPendingCommand(message);
+		client.processPendingCommands();
+	}
+
+	/**
+	 * @return the command as read by the server listener.
+	 */
+	private static byte[] command(ByteBuffer command){
+		return Arrays.copyOf(command.array(), command.position());
+	}
+
+}
@@ -0,0 +1,60 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import engine.EngineType;
+import model.GridModel;
+import networkcontroller.NetworkedGridController;
+import networkcontroller.ServerGridController;
+import utils.Constants;
+import utils.Timer;
+
+/**
+ * This class allow me to ensure that a truncated or unknown command, or a cell outside the grid, is ignored and does not
+ * prevent the next commands from being applied.
+ *
+ * @author Jean-Hugo
+ */
+public class MalformedCommandTest {
+
+	@org.junit.Test
+	public void testTruncatedCommandIgnored(){
+		GridModel model = new GridModel(10, 10);
+		ServerGridController controller = new ServerGridController(model, new Timer());
+
+		byte[] truncated = ByteBuffer.allocate(Short.BYTES).putShort(Constants.CHANGE_GRID_SIZE_COMMAND).array();
+		byte[] unknown = ByteBuffer.allocate(Short.BYTES + Integer.BYTES).putShort((short) 999).putInt(1).array();
+		byte[] valid = ByteBuffer.allocate(Short.BYTES + Integer.BYTES * 2).putShort(Constants.CHANGE_GRID_SIZE_COMMAND)
+				.putInt(30).putInt(20).array();
+		assertEquals(-1, NetworkedGridController.getCommandLength(truncated));
+		assertEquals(-1, NetworkedGridController.getCommandLength(unknown));
+		assertEquals(valid.length, NetworkedGridController.getCommandLength(valid));
+
+		controller.addPendingCommand(truncated);
+		controller.addPendingCommand(unknown);
+		controller.addPendingCommand(valid);
+		controller.processPendingCommands();
+		assertEquals(30, model.getCurrentWidth());
+		assertEquals(20, model.getCurrentHeight());
+	}
+
+	@org.junit.Test
+	public void testCellOutsideGridIgnored(){
+		for(EngineType type : EngineType.values()){
+			GridModel model = new GridModel(10, 10, type.createEngine(10, 10));
+			ServerGridController controller = new ServerGridController(model, new Timer());
+
+			for(int position : new int[] {-1, 100, 105, Integer.MIN_VALUE, 55}){
+				controller.addPendingCommand(ByteBuffer.allocate(Short.BYTES + Integer.BYTES).putShort(Constants.GRID_SET_CELL)
+						.putInt(position).array());
+			}
+			controller.processPendingCommands();
+			assertEquals(type.name(), 1, model.getWorldSnapShot().cardinality());
+			assertTrue(type.name(), model.isCellAlive(5, 5));
+		}
+	}
+
+}
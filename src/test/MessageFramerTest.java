@@ -0,0 +1,103 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import networkcontroller.MessageFramer;
+import utils.Constants;
+
+/**
+ * This class allow me to ensure that the messages are read whole whatever the way their bytes are split between the
+ * reads.
+ *
+ * @author Jean-Hugo
+ */
+public class MessageFramerTest {
+
+	@org.junit.Test
+	public void testSeveralMessagesInOneRead() throws IOException{
+		Pipe pipe = Pipe.open();
+		byte[] first = {0, 7, 1, 2, 3, 4};
+		byte[] second = {0, 8};
+		byte[] empty = {};
+		ByteBuffer bytes = ByteBuffer.allocate(100);
+		bytes.put(MessageFramer.frame(first)).put(MessageFramer.frame(empty)).put(MessageFramer.frame(second)).flip();
+		pipe.sink().write(bytes);
+
+		List<byte[]> messages = new MessageFramer(Constants.MAXIMUM_COMMAND_SIZE).read(pipe.source());
+		assertEquals(3, messages.size());
+		assertArrayEquals(first, messages.get(0));
+		assertArrayEquals(empty, messages.get(1));
+		assertArrayEquals(second, messages.get(2));
+	}
+
+	@org.junit.Test
+	public void testSplitMessages() throws IOException{
+		Pipe pipe = Pipe.open();
+		MessageFramer framer = new MessageFramer(Constants.MAXIMUM_MESSAGE_SIZE);
+		Random random = new Random(3);
+		// A message much bigger than the read buffer between 2 small ones.
+		byte[][] sent = {new byte[10], new byte[Constants.BUFFER_SIZE * 5 + 3], new byte[1]};
+		ByteBuffer bytes = ByteBuffer.allocate(Constants.BUFFER_SIZE * 6);
+		for(byte[] message : sent){
+			random.nextBytes(message);
+			bytes.put(MessageFramer.frame(message));
+		}
+		bytes.flip();
+
+		// Send the bytes in random pieces, the length of a message can be split too. The reader does not wait so it can
+		// read nothing or a part of a piece.
+		pipe.source().configureBlocking(false);
+		List<byte[]> received = new ArrayList<byte[]>();
+		while(bytes.hasRemaining()){
+			ByteBuffer piece = bytes.slice();
+			piece.limit(Math.min(piece.remaining(), 1 + random.nextInt(700)));
+			bytes.position(bytes.position() + piece.remaining());
+			pipe.sink().write(piece);
+			received.addAll(framer.read(pipe.source()));
+		}
+		for(int i = 0; i < 100 && received.size() < sent.length; i++){
+			received.addAll(framer.read(pipe.source()));
+		}
+		assertEquals(sent.length, received.size());
+		for(int i = 0; i < sent.length; i++){
+			assertArrayEquals(sent[i], received.get(i));
+		}
+		// The buffer grown for the big message is given back.
+		assertEquals(Constants.BUFFER_SIZE, framer.getCapacity());
+	}
+
+	@org.junit.Test
+	public void testInvalidLength() throws IOException{
+		Pipe pipe = Pipe.open();
+		pipe.sink().write(MessageFramer.frame(new byte[100]));
+		try {
+			new MessageFramer(50).read(pipe.source());
+			fail("The message is bigger than the maximum");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("100"));
+		}
+	}
+
+	@org.junit.Test
+	public void testClosed() throws IOException{
+		Pipe pipe = Pipe.open();
+		pipe.sink().close();
+		try {
+			new MessageFramer(50).read(pipe.source());
+			fail("The connection is closed");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import engine.OffHeapGridEngine;
+import engine.PackedGridEngine;
+import engine.Topology;
+import model.GridModel;
+
+/**
+ * This class allow me to ensure that the off heap engine compute the same generations as the packed engine and encode
+ * the same snapshots as a BitSet.
+ *
+ * @author Jean-Hugo
+ */
+public class OffHeapGridEngineTest {
+
+	// Birth with 3 neighbors, survival with 2 or 3 neighbors.
+	private static final int BIRTH = 1 << 3;
+	private static final int SURVIVAL = (1 << 2) | (1 << 3);
+	// The number of generations computed for every grid.
+	private static final int GENERATIONS = 30;
+
+	@org.junit.Test
+	public void testSameResultAsPackedEngine(){
+		Random random = new Random(13);
+		int sizes[][] = {{10, 10}, {64, 20}, {128, 33}, {100, 100}, {130, 17}};
+
+		for(int size[] : sizes){
+			int width = size[0];
+			int height = size[1];
+			PackedGridEngine packed = new PackedGridEngine(width, height);
+			OffHeapGridEngine offHeap = new OffHeapGridEngine(width, height);
+			for (int i = 0; i < height; i++) {
+				for (int j = 0; j < width; j++) {
+					boolean alive = random.nextInt(100) < 30;
+					packed.setCell(i, j, alive);
+					offHeap.setCell(i, j, alive);
+				}
+			}
+
+			for (int generation = 0; generation < GENERATIONS; generation++) {
+				packed.step(BIRTH, SURVIVAL);
+				offHeap.step(BIRTH, SURVIVAL);
+
+				BitSet expected = new BitSet();
+				BitSet actual = new BitSet();
+				packed.writeSnapshot(expected);
+				offHeap.writeSnapshot(actual);
+				String message = width+"x"+height+" at generation "+generation;
+				assertEquals(message, expected, actual);
+				assertArrayEquals(message, expected.toByteArray(), offHeap.encodeSnapshot());
+			}
+
+			// The cells within both dimensions are kept.
+			packed.resize(width + 70, height - 3);
+			offHeap.resize(width + 70, height - 3);
+			assertArrayEquals(packed.encodeSnapshot(), offHeap.encodeSnapshot());
+			offHeap.release();
+		}
+	}
+
+	@org.junit.Test
+	public void testReplacedEngineReleased(){
+		boolean released[] = {false};
+		GridModel model = new GridModel(70, 30, new PackedGridEngine(70, 30) {
+			@Override
+			public void release() {
+				released[0] = true;
+			}
+		});
+		model.setTopology(Topology.BOUNDED);
+		model.populateRandomly(17);
+		BitSet world = model.getWorldSnapShot();
+
+		OffHeapGridEngine offHeap = new OffHeapGridEngine(10, 10);
+		model.setEngine(offHeap);
+		assertTrue(released[0]);
+		assertEquals(world, model.getWorldSnapShot());
+		assertEquals(Topology.BOUNDED, model.getTopology());
+		// The snapshots are repacked from the buffer like from the packed engine.
+		assertArrayEquals(world.toByteArray(), offHeap.encodeSnapshot());
+
+		model.setCurrentSize(130, 17);
+		assertEquals(world.get(0, 70), model.getWorldSnapShot().get(0, 70));
+		offHeap.release();
+	}
+
+}
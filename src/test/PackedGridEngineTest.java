@@ -0,0 +1,172 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Rectangle;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import engine.PackedGridEngine;
+
+/**
+ * This class allow me to ensure that the packed engine compute the same generations as a simple cell by cell count.
+ *
+ * @author Jean-Hugo
+ */
+public class PackedGridEngineTest {
+
+	// The number of generations computed for every grid.
+	private static final int GENERATIONS = 50;
+
+	/**
+	 * Test grids whose width is smaller, equal and bigger than a word with random survival intervals.
+	 */
+	@org.junit.Test
+	public void testSameResultAsCellByCellCount(){
+		Random random = new Random(42);
+		int sizes[][] = {{10, 10}, {64, 12}, {65, 33}, {100, 100}, {130, 17}};
+
+		for(int size[] : sizes){
+			int width = size[0];
+			int height = size[1];
+			int min = random.nextInt(4);
+			int max = min + random.nextInt(4);
+
+			PackedGridEngine engine = new PackedGridEngine(width, height);
+			boolean grid[][] = new boolean[height][width];
+			for (int i = 0; i < height; i++) {
+				for (int j = 0; j < width; j++) {
+					grid[i][j] = random.nextInt(100) < 30;
+					engine.setCell(i, j, grid[i][j]);
+				}
+			}
+
+			for (int generation = 0; generation < GENERATIONS; generation++) {
+				grid = nextGeneration(grid, min, max);
+				engine.step(1 << 3, getSurvivalMask(min, max));
+
+				for (int i = 0; i < height; i++) {
+					for (int j = 0; j < width; j++) {
+						assertEquals("Cell "+i+","+j+" of the "+width+"x"+height+" grid at generation "+generation,
+								grid[i][j], engine.getCell(i, j));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test that the parallel steps give exactly the same generations as the sequential ones.
+	 */
+	@org.junit.Test
+	public void testParallelSameAsSequential(){
+		Random random = new Random(11);
+		int width = 300;
+		int height = 257;
+		PackedGridEngine sequential = new PackedGridEngine(width, height);
+		PackedGridEngine parallel = new PackedGridEngine(width, height);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		// Always split, even on this small grid.
+		parallel.setParallelMode(pool, 0);
+
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < width; j++) {
+				boolean alive = random.nextInt(100) < 30;
+				sequential.setCell(i, j, alive);
+				parallel.setCell(i, j, alive);
+			}
+		}
+
+		for (int generation = 0; generation < GENERATIONS; generation++) {
+			sequential.step(1 << 3, getSurvivalMask(2, 3));
+			parallel.step(1 << 3, getSurvivalMask(2, 3));
+
+			BitSet expected = new BitSet();
+			BitSet actual = new BitSet();
+			sequential.writeSnapshot(expected);
+			parallel.writeSnapshot(actual);
+			assertEquals("Generation "+generation, expected, actual);
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Test that only the tiles around the moving structures are reported as changed, and that skipping the stable
+	 * tiles does not change the result even when cells are edited between 2 generations.
+	 */
+	@org.junit.Test
+	public void testStableTilesSkipped(){
+		int size = 256;
+		PackedGridEngine engine = new PackedGridEngine(size, size);
+		boolean grid[][] = new boolean[size][size];
+
+		// A still block in a corner and a blinker in the opposite one.
+		int cells[][] = {{10, 10}, {10, 11}, {11, 10}, {11, 11}, {200, 199}, {200, 200}, {200, 201}};
+		for(int cell[] : cells){
+			grid[cell[0]][cell[1]] = true;
+			engine.setCell(cell[0], cell[1], true);
+		}
+
+		for (int generation = 0; generation < GENERATIONS; generation++) {
+			if(generation == 20){
+				// Add a glider near the block.
+				int glider[][] = {{30, 31}, {31, 32}, {32, 30}, {32, 31}, {32, 32}};
+				for(int cell[] : glider){
+					grid[cell[0]][cell[1]] = true;
+					engine.setCell(cell[0], cell[1], true);
+				}
+			}
+
+			grid = nextGeneration(grid, 2, 3);
+			engine.step(1 << 3, getSurvivalMask(2, 3));
+
+			for (int i = 0; i < size; i++) {
+				for (int j = 0; j < size; j++) {
+					assertEquals("Cell "+i+","+j+" at generation "+generation, grid[i][j], engine.getCell(i, j));
+				}
+			}
+
+			if(generation > 2 && generation < 20){
+				// Only the tile of the blinker keeps changing.
+				List<Rectangle> regions = engine.getDirtyRegions();
+				assertEquals(1, regions.size());
+				assertEquals(new Rectangle(192, 192, 64, 64), regions.get(0));
+			}
+		}
+	}
+
+	private int getSurvivalMask(int min, int max) {
+		int mask = 0;
+		for (int count = min; count <= max; count++) {
+			mask |= 1 << count;
+		}
+		return mask;
+	}
+
+	/**
+	 * Compute the next generation by counting the neighbors of every cell on a torus.
+	 */
+	private boolean[][] nextGeneration(boolean grid[][], int min, int max) {
+		int height = grid.length;
+		int width = grid[0].length;
+		boolean next[][] = new boolean[height][width];
+
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < width; j++) {
+				int count = 0;
+				for (int di = -1; di <= 1; di++) {
+					for (int dj = -1; dj <= 1; dj++) {
+						if((di != 0 || dj != 0) && grid[(i + di + height) % height][(j + dj + width) % width]){
+							count++;
+						}
+					}
+				}
+				next[i][j] = grid[i][j] ? (count >= min && count <= max) : count == 3;
+			}
+		}
+		return next;
+	}
+
+}
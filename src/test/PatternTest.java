@@ -0,0 +1,94 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import engine.EngineType;
+import model.GridModel;
+import pattern.PatternReader;
+import pattern.PatternWriter;
+
+/**
+ * This class allow me to ensure that the patterns are read and written correctly in the RLE and .cells formats.
+ *
+ * @author Jean-Hugo
+ */
+public class PatternTest {
+
+	private static final String GLIDER_RLE = "#N Glider\nx = 3, y = 3, rule = B3/S23\nbo$2bo$3o!\n";
+	private static final String GLIDER_CELLS = "!Name: Glider\n.O\n..O\nOOO\n";
+
+	// The glider cells relative to its top left corner.
+	private static final int GLIDER[][] = {{0, 1}, {1, 2}, {2, 0}, {2, 1}, {2, 2}};
+
+	@org.junit.Test
+	public void testReadGlider() throws IOException {
+		for(String pattern : new String[] {GLIDER_RLE, GLIDER_CELLS}){
+			PatternReader reader = new PatternReader(new StringReader(pattern));
+			GridModel model = new GridModel(10, 10);
+			reader.read((y, x, length) -> {
+				for(int i = 0; i < length; i++){
+					model.setCell(y * 10 + x + i);
+				}
+			});
+			assertEquals(3, reader.getWidth());
+			assertEquals(3, reader.getHeight());
+			assertGlider(model, 0, 0);
+		}
+	}
+
+	@org.junit.Test
+	public void testStampWrapped(){
+		for(EngineType type : new EngineType[] {EngineType.REFERENCE, EngineType.PACKED, EngineType.OFFHEAP}){
+			GridModel model = new GridModel(70, 20, type.createEngine(70, 20));
+			// The glider cross the bottom right corner.
+			assertTrue(model.stampPattern(new StringReader(GLIDER_RLE), 18, 68));
+			assertGlider(model, 18, 68);
+			assertEquals(type.name(), 5, model.getWorldSnapShot().cardinality());
+		}
+	}
+
+	@org.junit.Test
+	public void testWriteAndReadBack() throws IOException {
+		GridModel model = new GridModel(90, 30);
+		model.setCellApparitionPercentage(35);
+		model.populateRandomly();
+
+		for(boolean rle : new boolean[] {true, false}){
+			StringWriter text = new StringWriter();
+			PatternWriter writer = new PatternWriter(text);
+			if(rle){
+				writer.writeRle(model);
+			} else {
+				writer.writeCells(model);
+			}
+
+			GridModel copy = new GridModel(90, 30);
+			assertTrue(copy.stampPattern(new StringReader(text.toString()), 0, 0));
+			assertEquals(rle ? "rle" : "cells", model.getWorldSnapShot(), copy.getWorldSnapShot());
+		}
+	}
+
+	@org.junit.Test
+	public void testMalformedRejected(){
+		GridModel model = new GridModel(10, 10);
+		assertFalse(model.stampPattern(new StringReader("x = 3, y = 3\nbo$2bo$3o?!\n"), 0, 0));
+		assertFalse(model.stampPattern(new StringReader("x = three, y = 3\nbo$2bo$3o!\n"), 0, 0));
+	}
+
+	private void assertGlider(GridModel model, int y, int x){
+		int width = model.getCurrentWidth();
+		int height = model.getCurrentHeight();
+		for(int cell[] : GLIDER){
+			int i = (y + cell[0]) % height;
+			int j = (x + cell[1]) % width;
+			assertTrue("cell "+i+","+j, model.isCellAlive(i, j));
+		}
+	}
+
+}
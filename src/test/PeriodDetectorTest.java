@@ -0,0 +1,119 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import engine.GridEngine;
+import engine.PackedGridEngine;
+import model.GridModel;
+import model.Rule;
+
+/**
+ * This class allow me to ensure that a periodic world is detected and that replaying its states give the same
+ * generations as computing them.
+ *
+ * @author Jean-Hugo
+ */
+public class PeriodDetectorTest {
+
+	// Birth with 3 neighbors, survival with 2 or 3 neighbors.
+	private static final int BIRTH = 1 << 3;
+	private static final int SURVIVAL = (1 << 2) | (1 << 3);
+
+	@org.junit.Test
+	public void testBlinkerReplayed(){
+		GridModel model = new GridModel(20, 20);
+		GridEngine engine = new PackedGridEngine(20, 20);
+
+		// A blinker and a block.
+		int cells[][] = {{5, 4}, {5, 5}, {5, 6}, {14, 14}, {14, 15}, {15, 14}, {15, 15}};
+		for(int cell[] : cells){
+			model.setCell(cell[0] * 20 + cell[1]);
+			engine.setCell(cell[0], cell[1], true);
+		}
+
+		for(int i = 0; i < 20; i++){
+			model.update();
+			engine.step(BIRTH, SURVIVAL);
+			assertSameState(engine, model, "generation "+i);
+		}
+		assertEquals(2, model.getPeriod());
+
+		// Replaying also works for a jump.
+		model.advance(1001);
+		engine.advance(1001, BIRTH, SURVIVAL);
+		assertSameState(engine, model, "after the jump");
+
+		// Editing the world stop the replay from the current state.
+		model.setCell(2 * 20 + 2);
+		engine.setCell(2, 2, true);
+		assertEquals(0, model.getPeriod());
+		for(int i = 0; i < 5; i++){
+			model.update();
+			engine.step(BIRTH, SURVIVAL);
+			assertSameState(engine, model, "generation "+i+" after the edit");
+		}
+	}
+
+	@org.junit.Test
+	public void testGrowingWorldNotHashed(){
+		int fingerprints[] = {0};
+		GridModel model = new GridModel(200, 200, new PackedGridEngine(200, 200) {
+			@Override
+			public long fingerprint() {
+				fingerprints[0]++;
+				return super.fingerprint();
+			}
+		});
+		// Every dead cell next to a living one is born and no cell ever die, the population grow at every generation.
+		model.setRule(Rule.fromMasks(1 << 1, 0x1FF));
+		model.setCell(100 * 200 + 100);
+		for(int i = 0; i < 60; i++){
+			model.update();
+		}
+		assertEquals(0, fingerprints[0]);
+	}
+
+	@org.junit.Test
+	public void testFingerprintFollowsChanges(){
+		Random random = new Random(11);
+		PackedGridEngine engine = new PackedGridEngine(150, 140);
+		for(int i = 0; i < 150 * 140 / 3; i++){
+			engine.setCell(random.nextInt(140), random.nextInt(150), true);
+		}
+		for(int i = 0; i < 30; i++){
+			engine.step(BIRTH, SURVIVAL);
+			assertSameFingerprint(engine);
+			engine.setCell(random.nextInt(140), random.nextInt(150), random.nextBoolean());
+			assertSameFingerprint(engine);
+		}
+	}
+
+	/**
+	 * The fingerprint and the population kept up to date must be the ones of the same grid computed from scratch.
+	 */
+	private void assertSameFingerprint(PackedGridEngine engine) {
+		BitSet cells = new BitSet();
+		engine.writeSnapshot(cells);
+		PackedGridEngine copy = new PackedGridEngine(engine.getWidth(), engine.getHeight());
+		copy.readSnapshot(cells);
+		assertEquals(copy.fingerprint(), engine.fingerprint());
+		assertEquals(cells.cardinality(), engine.getPopulation());
+		assertTrue(cells.cardinality() > 0);
+	}
+
+	private void assertSameState(GridEngine engine, GridModel model, String message) {
+		BitSet expected = new BitSet();
+		engine.writeSnapshot(expected);
+		assertEquals(message, expected, model.getWorldSnapShot());
+		for (int i = 0; i < 20; i++) {
+			for (int j = 0; j < 20; j++) {
+				assertEquals(message, engine.getCell(i, j), model.isCellAlive(i, j));
+			}
+		}
+	}
+
+}
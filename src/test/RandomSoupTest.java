@@ -0,0 +1,59 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import engine.EngineType;
+import model.GridModel;
+
+/**
+ * This class allow me to ensure that a seed always give the same random world, whatever the engine, and that the
+ * apparition percentage is respected.
+ *
+ * @author Jean-Hugo
+ */
+public class RandomSoupTest {
+
+	@org.junit.Test
+	public void testSameSeedSameWorld(){
+		// The width is not a multiple of 64 and the grid is split in several bands.
+		int width = 1000;
+		int height = 700;
+		BitSet expected = null;
+		for(EngineType type : new EngineType[] {EngineType.REFERENCE, EngineType.PACKED, EngineType.OFFHEAP, EngineType.SPARSE}){
+			GridModel model = new GridModel(width, height, type.createEngine(width, height));
+			model.setCellApparitionPercentage(30);
+			model.populateRandomly(42);
+			if(expected == null){
+				expected = model.getWorldSnapShot();
+			} else {
+				assertEquals(type.name(), expected, model.getWorldSnapShot());
+			}
+		}
+
+		GridModel other = new GridModel(width, height);
+		other.setCellApparitionPercentage(30);
+		other.populateRandomly(43);
+		assertFalse(expected.equals(other.getWorldSnapShot()));
+	}
+
+	@org.junit.Test
+	public void testApparitionPercentage(){
+		GridModel model = new GridModel(500, 500);
+		int cells = 500 * 500;
+		for(int percentage : new int[] {0, 1, 20, 50, 77, 100}){
+			model.setCellApparitionPercentage(percentage);
+			model.populateRandomly(percentage);
+			int population = model.getWorldSnapShot().cardinality();
+			double expected = cells * percentage / 100.0;
+			assertTrue(percentage+"%: "+population, Math.abs(population - expected) < cells * 0.005);
+		}
+		model.setCellApparitionPercentage(100);
+		model.populateRandomly(1);
+		assertEquals(cells, model.getWorldSnapShot().cardinality());
+	}
+
+}
@@ -0,0 +1,126 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import networkcontroller.SnapshotCodec;
+
+/**
+ * This class allow me to ensure that every codec give back the world it encoded and that each kind of world get the
+ * codec suiting it.
+ *
+ * @author Jean-Hugo
+ */
+public class SnapshotCodecTest {
+
+	// The header put before the encoded worlds.
+	private static final byte HEADER[] = {1, 2, 3};
+
+	@org.junit.Test
+	public void testCodecChoice(){
+		// 300 x 200 cells.
+		int wordCount = (300 * 200 + Long.SIZE - 1) / Long.SIZE;
+
+		long[] scattered = new long[wordCount];
+		Random random = new Random(7);
+		for(int i = 0; i < 40; i++){
+			int cell = random.nextInt(300 * 200);
+			scattered[cell / Long.SIZE] |= 1L << cell;
+		}
+		assertCodec(SnapshotCodec.SPARSE, scattered);
+
+		// A few big blocks of living cells, one of them ending on the last cell.
+		long[] blocks = new long[wordCount];
+		Arrays.fill(blocks, 10, 80, -1L);
+		Arrays.fill(blocks, 300, 420, -1L);
+		blocks[500] = 0xFFFF_0000_0000_0000L;
+		Arrays.fill(blocks, 501, wordCount - 1, -1L);
+		blocks[wordCount - 1] = (1L << (300 * 200 % Long.SIZE)) - 1;
+		assertCodec(SnapshotCodec.RUNS, blocks);
+
+		// Alternating cells, neither the runs nor the living cells are few but the world is repetitive.
+		long[] stripes = new long[wordCount];
+		Arrays.fill(stripes, 0x5555_5555_5555_5555L);
+		assertCodec(SnapshotCodec.DEFLATE, stripes);
+
+		long[] soup = new long[wordCount];
+		for(int i = 0; i < wordCount; i++){
+			soup[i] = random.nextLong();
+		}
+		assertCodec(SnapshotCodec.RAW, soup);
+
+		assertCodec(SnapshotCodec.RAW, new long[wordCount]);
+	}
+
+	@org.junit.Test
+	public void testReport(){
+		SnapshotCodec codec = new SnapshotCodec();
+		long[] words = new long[100];
+		words[3] = 1;
+		for(int i = 0; i < 5; i++){
+			codec.encode(HEADER, words);
+		}
+		assertEquals(5, codec.getFrames(SnapshotCodec.SPARSE));
+		assertTrue(codec.getRatio() < 0.1);
+		assertTrue(codec.getReport().contains("sparse 5"));
+	}
+
+	@org.junit.Test
+	public void testMalformed(){
+		SnapshotCodec codec = new SnapshotCodec();
+		long[] words = new long[10];
+		Arrays.fill(words, 0x5555_5555_5555_5555L);
+		byte[] message = codec.encode(HEADER, words);
+		// The world is bigger than the grid.
+		assertInvalid(codec, ByteBuffer.wrap(message, HEADER.length, message.length - HEADER.length), 5);
+
+		// A living cell beyond the grid.
+		assertInvalid(codec, ByteBuffer.wrap(new byte[] {SnapshotCodec.SPARSE, (byte) 0x80, 0x05}), 10);
+		assertInvalid(codec, ByteBuffer.wrap(new byte[] {42}), 10);
+
+		// A deflated world needing a preset dictionary.
+		Deflater deflater = new Deflater();
+		deflater.setDictionary(new byte[] {1, 2, 3, 4});
+		deflater.setInput(new byte[80]);
+		deflater.finish();
+		byte[] deflated = new byte[100];
+		deflated[0] = SnapshotCodec.DEFLATE;
+		int deflatedLength = 1 + deflater.deflate(deflated, 1, deflated.length - 1);
+		deflater.end();
+		assertInvalid(codec, ByteBuffer.wrap(deflated, 0, deflatedLength), 10);
+		// The codec can still decode a valid world after it.
+		long[] valid = new long[10];
+		valid[2] = 7;
+		message = codec.encode(HEADER, valid);
+		ByteBuffer buffer = ByteBuffer.wrap(message, HEADER.length, message.length - HEADER.length);
+		assertArrayEquals(valid, codec.decode(buffer, 10));
+	}
+
+	private static void assertCodec(byte expected, long[] words){
+		SnapshotCodec codec = new SnapshotCodec();
+		byte[] message = codec.encode(HEADER, words);
+		assertArrayEquals(HEADER, Arrays.copyOf(message, HEADER.length));
+		assertEquals(expected, message[HEADER.length]);
+
+		ByteBuffer buffer = ByteBuffer.wrap(message);
+		buffer.position(HEADER.length);
+		assertArrayEquals(words, codec.decode(buffer, words.length));
+	}
+
+	private static void assertInvalid(SnapshotCodec codec, ByteBuffer buffer, int wordCount){
+		try {
+			codec.decode(buffer, wordCount);
+			fail("The world should not be decoded");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+}
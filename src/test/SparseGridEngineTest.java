@@ -0,0 +1,86 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import engine.PackedGridEngine;
+import engine.SparseGridEngine;
+
+/**
+ * This class allow me to ensure that the sparse engine compute the same generations as the packed engine.
+ *
+ * @author Jean-Hugo
+ */
+public class SparseGridEngineTest {
+
+	// Birth with 3 neighbors, survival with 2 or 3 neighbors.
+	private static final int BIRTH = 1 << 3;
+	private static final int SURVIVAL = (1 << 2) | (1 << 3);
+
+	/**
+	 * Test grids that fit in one chunk, that span several chunks and whose dimensions are not multiple of a chunk.
+	 */
+	@org.junit.Test
+	public void testSameResultAsPackedEngine(){
+		Random random = new Random(7);
+		int sizes[][] = {{10, 10}, {64, 64}, {100, 70}, {200, 130}};
+
+		for(int size[] : sizes){
+			int width = size[0];
+			int height = size[1];
+			PackedGridEngine packed = new PackedGridEngine(width, height);
+			SparseGridEngine sparse = new SparseGridEngine(width, height);
+
+			// Only populate a corner so most of the chunks are empty.
+			for (int i = 0; i < height / 2; i++) {
+				for (int j = 0; j < width / 2; j++) {
+					boolean alive = random.nextInt(100) < 35;
+					packed.setCell(i, j, alive);
+					sparse.setCell(i, j, alive);
+				}
+			}
+
+			for (int generation = 0; generation < 100; generation++) {
+				packed.step(BIRTH, SURVIVAL);
+				sparse.step(BIRTH, SURVIVAL);
+
+				BitSet expected = new BitSet();
+				BitSet actual = new BitSet();
+				packed.writeSnapshot(expected);
+				sparse.writeSnapshot(actual);
+				assertEquals("Generation "+generation+" of the "+width+"x"+height+" grid", expected, actual);
+			}
+		}
+	}
+
+	/**
+	 * Test that on an unbounded plane a glider leave the grid instead of wrapping, and that the empty chunks are dropped.
+	 */
+	@org.junit.Test
+	public void testGliderLeaveUnboundedGrid(){
+		SparseGridEngine sparse = new SparseGridEngine(20, 20, true);
+
+		// A glider going down right.
+		sparse.setCell(0, 1, true);
+		sparse.setCell(1, 2, true);
+		sparse.setCell(2, 0, true);
+		sparse.setCell(2, 1, true);
+		sparse.setCell(2, 2, true);
+
+		// A glider move one cell every 4 generations.
+		for (int generation = 0; generation < 4 * 200; generation++) {
+			sparse.step(BIRTH, SURVIVAL);
+		}
+
+		BitSet snapshot = new BitSet();
+		sparse.writeSnapshot(snapshot);
+		assertTrue(snapshot.isEmpty());
+		// The glider is still alive far away from the grid.
+		assertTrue(sparse.getCell(202, 201));
+		assertTrue(sparse.getChunkCount() <= 4);
+	}
+
+}
@@ -0,0 +1,105 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import engine.BooleanGridEngine;
+import engine.EngineType;
+import engine.GridEngine;
+import engine.Topology;
+
+/**
+ * This class allow me to ensure that all the engines agree on what is beyond the grid borders, for the torus and the
+ * bounded grid.
+ *
+ * @author Jean-Hugo
+ */
+public class TopologyTest {
+
+	// Birth with 3 neighbors, survival with 2 or 3 neighbors.
+	private static final int BIRTH = 1 << 3;
+	private static final int SURVIVAL = (1 << 2) | (1 << 3);
+	// The number of generations computed for every grid.
+	private static final int GENERATIONS = 40;
+	// The engines storing the cells by words, they must support both topologies.
+	private static final EngineType WORD_ENGINES[] = {EngineType.PACKED, EngineType.VECTOR, EngineType.PARALLEL,
+			EngineType.OFFHEAP};
+
+	@org.junit.Test
+	public void testSameResultAsReferenceEngine(){
+		Random random = new Random(19);
+		int sizes[][] = {{75, 40}, {128, 33}, {10, 70}};
+
+		for(Topology topology : Topology.values()){
+			for(EngineType type : WORD_ENGINES){
+				for(int size[] : sizes){
+					int width = size[0];
+					int height = size[1];
+					GridEngine reference = new BooleanGridEngine(width, height);
+					GridEngine engine = type.createEngine(width, height);
+					assertTrue(reference.setTopology(topology));
+					assertTrue(engine.setTopology(topology));
+					for (int i = 0; i < height; i++) {
+						for (int j = 0; j < width; j++) {
+							boolean alive = random.nextInt(100) < 35;
+							reference.setCell(i, j, alive);
+							engine.setCell(i, j, alive);
+						}
+					}
+
+					for (int generation = 0; generation < GENERATIONS; generation++) {
+						reference.step(BIRTH, SURVIVAL);
+						engine.step(BIRTH, SURVIVAL);
+						assertEquals(type+" "+topology+" "+width+"x"+height+" at generation "+generation,
+								snapshot(reference), snapshot(engine));
+					}
+				}
+			}
+		}
+	}
+
+	@org.junit.Test
+	public void testGliderAtTheCorner(){
+		for(Topology topology : Topology.values()){
+			GridEngine engine = EngineType.PACKED.createEngine(20, 20);
+			engine.setTopology(topology);
+			// A glider going to the bottom right corner.
+			engine.setCell(15, 16, true);
+			engine.setCell(16, 17, true);
+			engine.setCell(17, 15, true);
+			engine.setCell(17, 16, true);
+			engine.setCell(17, 17, true);
+			for (int generation = 0; generation < 40; generation++) {
+				engine.step(BIRTH, SURVIVAL);
+			}
+
+			if(topology == Topology.TORUS){
+				// The glider went through the corner and is back in the grid, still with 5 cells.
+				assertEquals(5, engine.getPopulation());
+			} else {
+				// The glider crashed into the corner and became a block.
+				assertEquals(4, engine.getPopulation());
+				assertTrue(engine.getCell(18, 18) && engine.getCell(18, 19) && engine.getCell(19, 18) && engine.getCell(19, 19));
+			}
+		}
+	}
+
+	@org.junit.Test
+	public void testUnsupportedTopology(){
+		GridEngine engine = EngineType.SPARSE.createEngine(20, 20);
+		assertFalse(engine.setTopology(Topology.BOUNDED));
+		assertEquals(Topology.TORUS, engine.getTopology());
+		assertTrue(engine.setTopology(Topology.TORUS));
+	}
+
+	private static BitSet snapshot(GridEngine engine){
+		BitSet snapshot = new BitSet();
+		engine.writeSnapshot(snapshot);
+		return snapshot;
+	}
+
+}
@@ -0,0 +1,61 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import engine.EngineType;
+import engine.GridEngine;
+import model.Rule;
+
+/**
+ * This class allow me to ensure that the vector engine compute exactly the same generations as the packed engine. If the
+ * vector engine is not available, the packed engine is compared to itself.
+ *
+ * @author Jean-Hugo
+ */
+public class VectorGridEngineTest {
+
+	// The number of generations computed for every grid.
+	private static final int GENERATIONS = 40;
+
+	/**
+	 * Test grids whose rows are smaller than a vector, fill exactly some vectors or leave some words to the scalar step.
+	 */
+	@org.junit.Test
+	public void testSameResultAsPackedEngine(){
+		Random random = new Random(9);
+		int widths[] = {64, 200, 640, 1000, 1090};
+		Rule rules[] = {Rule.CONWAY, Rule.parse("B36/S23"), Rule.parse("B2/S")};
+
+		for(int width : widths){
+			for(Rule rule : rules){
+				int height = 70;
+				GridEngine packed = EngineType.PACKED.createEngine(width, height);
+				GridEngine vector = EngineType.VECTOR.createEngine(width, height);
+
+				BitSet initial = new BitSet();
+				for (int i = 0; i < width * height; i++) {
+					if(random.nextInt(100) < 30){
+						initial.set(i);
+					}
+				}
+				packed.readSnapshot(initial);
+				vector.readSnapshot(initial);
+
+				for (int generation = 0; generation < GENERATIONS; generation++) {
+					packed.step(rule.getBirthMask(), rule.getSurvivalMask());
+					vector.step(rule.getBirthMask(), rule.getSurvivalMask());
+
+					BitSet expected = new BitSet();
+					BitSet actual = new BitSet();
+					packed.writeSnapshot(expected);
+					vector.writeSnapshot(actual);
+					assertEquals("Width "+width+" "+rule+" at generation "+generation, expected, actual);
+				}
+			}
+		}
+	}
+
+}
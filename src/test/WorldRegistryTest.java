@@ -0,0 +1,77 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import engine.EngineType;
+import server.World;
+import server.WorldRegistry;
+import utils.Constants;
+
+/**
+ * This class allow me to ensure that a server can host several independent worlds and tick them all.
+ *
+ * @author Jean-Hugo
+ */
+public class WorldRegistryTest {
+
+	// The number of worlds ticked at once.
+	private static final int WORLDS = 100;
+
+	@org.junit.Test
+	public void testJoinWorlds(){
+		WorldRegistry registry = new WorldRegistry(EngineType.PACKED, null);
+		World first = registry.join("first");
+		assertNotNull(first);
+		assertSame(first, registry.join("first"));
+		assertSame(registry.getDefaultWorld(), registry.join(Constants.DEFAULT_WORLD_NAME));
+		assertEquals(2, registry.getWorlds().size());
+
+		// The names are used in the checkpoint file names.
+		assertNull(registry.join("../etc"));
+		assertNull(registry.join(""));
+		assertNull(registry.join(null));
+
+		// Each world has its own parameters.
+		first.getModel().setCurrentSize(30, 20);
+		assertEquals(30, first.getModel().getCurrentWidth());
+		assertEquals(Constants.DEFAULT_WORLD_NAME, registry.getDefaultWorld().getName());
+		assertTrue(registry.getDefaultWorld().getModel().getCurrentWidth() != 30);
+	}
+
+	@org.junit.Test
+	public void testAllWorldsTicked() throws InterruptedException {
+		WorldRegistry registry = new WorldRegistry(EngineType.PACKED, null);
+		registry.getDefaultWorld().getModel().setUpdateRate(Constants.MINIMUM_UPDATE_RATE);
+		for(int i = 0; i < WORLDS; i++){
+			World world = registry.join("world-"+i);
+			world.getModel().setUpdateRate(Constants.MINIMUM_UPDATE_RATE);
+			world.getModel().createBar(5, 5);
+		}
+
+		registry.start();
+		try {
+			// Each world compute a generation every 100 ms.
+			long deadline = System.currentTimeMillis() + 5000;
+			while(!allWorldsUpdated(registry) && System.currentTimeMillis() < deadline){
+				Thread.sleep(50);
+			}
+		} finally {
+			registry.stop();
+		}
+		assertTrue(allWorldsUpdated(registry));
+	}
+
+	private boolean allWorldsUpdated(WorldRegistry registry){
+		for(World world : registry.getWorlds()){
+			if(world.getModel().getCycle() < 3){
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -46,8 +46,8 @@ public class WorldSnapshotUpdateTest {
 	}
 
 	private void testModelMatch(GameOfLifeServer server, GameOfLifeClient client) {
-		for(int i = 0; i < server.getModel().getCurrentGridSize(); i++){
-			for(int j = 0; j < server.getModel().getCurrentGridSize(); j++){
+		for(int i = 0; i < server.getModel().getCurrentHeight(); i++){
+			for(int j = 0; j < server.getModel().getCurrentWidth(); j++){
 				assertEquals(server.getModel().getGrid()[i][j], client.getModel().getGrid()[i][j]);
 			}
 		}
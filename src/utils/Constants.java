@@ -17,6 +17,24 @@ public class Constants {
 	public final static int MINIMUM_UPDATE_RATE = 100;
 	// The default update rate for the grid.
 	public final static int DEFAULT_UPDATE_RATE = 1000;
+	// The maximum number of generations a client can skip at once, the server do nothing else while computing them.
+	public final static int MAXIMUM_ADVANCE_GENERATIONS = 1000000;
+	// The time in millisecond between 2 checkpoints of the server world.
+	public final static int CHECKPOINT_RATE = 60000;
+	// The time in millisecond between 2 ticks of the server worlds.
+	public final static int TICK_INTERVAL = 10;
+	// The maximum number of worlds a server can host.
+	public final static int MAXIMUM_WORLDS = 500;
+	// The maximum length of a world name.
+	public final static int MAXIMUM_WORLD_NAME_LENGTH = 32;
+	// The number of deltas sent between 2 full snapshots of the world.
+	public final static int KEYFRAME_INTERVAL = 50;
+	// The number of full snapshots sent between 2 reports of the snapshot codec.
+	public final static int CODEC_REPORT_INTERVAL = 100;
+	// The number of ticks between 2 hashes of the world sent to the clients in lockstep mode.
+	public final static int LOCKSTEP_HASH_INTERVAL = 10;
+	// The world joined by the clients that do not choose one.
+	public static final String DEFAULT_WORLD_NAME = "default";
 
 	// Code identifier for networked messages.
 	public static final short CHANGE_GRID_SIZE_COMMAND = 0;
@@ -26,9 +44,35 @@ public class Constants {
 	public static final short GRID_SNAPSHOT = 4;
 	public static final short GRID_INITIALIZATION = 5;
 	public static final short GRID_SET_CELL = 6;
+	public static final short ADVANCE_GENERATIONS_COMMAND = 7;
+	public static final short GRID_PERIOD = 8;
+	public static final short CHECKPOINT_COMMAND = 9;
+	public static final short STAMP_PATTERN_COMMAND = 10;
+	public static final short JOIN_WORLD_COMMAND = 11;
+	public static final short LOCKSTEP_TICK = 12;
+	public static final short RESYNC_REQUEST_COMMAND = 13;
+	public static final short GRID_DELTA = 14;
+
+	// Code identifier for the messages between a cluster coordinator and its stripe nodes, and between the nodes.
+	public static final short CLUSTER_COORDINATOR_HELLO = 100;
+	public static final short CLUSTER_PEER_HELLO = 101;
+	public static final short CLUSTER_ASSIGN = 102;
+	public static final short CLUSTER_STEP = 103;
+	public static final short CLUSTER_READ = 104;
+	public static final short CLUSTER_WRITE = 105;
+	public static final short CLUSTER_SET_RUNS = 106;
+	// The time in millisecond a stripe node wait for its north neighbor to connect.
+	public static final int CLUSTER_LINK_TIMEOUT = 10000;
 	
-	// Size of the buffer used to read and to send to client.
+	// Size of the buffer used to read the messages, it grows for the bigger ones.
 	public static final int BUFFER_SIZE = 2048;
+	// The biggest message accepted by the clients, a whole world of the maximum size with its header.
+	public static final int MAXIMUM_MESSAGE_SIZE = 16384 * 16384 / 8 + 1024;
+	// The biggest command accepted by the server, like a pattern file.
+	public static final int MAXIMUM_COMMAND_SIZE = 1024 * 1024;
+	// The bytes of commands waiting to be sent to a client before it is disconnected. The worlds do not count, a
+	// client never has more than one waiting.
+	public static final int CLIENT_HIGH_WATER_MARK = 4 * 1024 * 1024;
 	// The maximum neighbors a cell can have.
 	public static final int MAXIMUM_CELL_NEIGHBORS = 8;
 	// The minimum neighbors a cell can have.
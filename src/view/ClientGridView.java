@@ -8,6 +8,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 
 import model.GridModel;
+import networkcontroller.MessageFramer;
 import utils.Constants;
 
 /**
@@ -50,12 +51,12 @@ public class ClientGridView extends GridView implements MouseListener {
 			int y = (int)(touchPoint.getY() - heightPadding) / cellSize;
 			int x = (int)(touchPoint.getX() - widthPadding) / cellSize;
 
-			int cellPosition = gridModel.getCurrentGridSize() * y + x;
+			int cellPosition = gridModel.getCurrentWidth() * y + x;
 			byte[] command = ByteBuffer.allocate(Short.BYTES+Integer.BYTES).putShort(Constants.GRID_SET_CELL).putInt(cellPosition).array();
 			
 			try {
 				// Send the message to the server.
-				clientSocket.write(ByteBuffer.wrap(command));
+				MessageFramer.write(clientSocket, command);
 			} catch (IOException e1) {
 				e1.printStackTrace();
 			}
@@ -4,19 +4,31 @@ import java.awt.BorderLayout;
 import java.awt.Panel;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Hashtable;
+import java.util.SplittableRandom;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 import model.GridModel;
+import model.Rule;
+import networkcontroller.MessageFramer;
+import pattern.PatternReader;
+import pattern.PatternWriter;
 import utils.Constants;
 
 /**
@@ -32,10 +44,9 @@ public class CommandPanel extends JPanel implements ActionListener, ChangeListen
 	private static final long serialVersionUID = 1L;
 	
 	// This helps to keep the code readable.
-	private static final int GRID_SIZE_SLIDER_INDEX = 0;
+	private static final int GRID_WIDTH_SLIDER_INDEX = 0;
+	private static final int GRID_HEIGHT_SLIDER_INDEX = 1;
 	private static final int GRID_UPDATE_RATE_SLIDER_INDEX = 0;
-	private static final int LOW_INTERVAL_SLIDER_INDEX = 0;
-	private static final int HIGHT_INTERVAL_SLIDER_INDEX = 1;
 	private static final int CELL_APPARITION_PERCENTAGE_SLIDER_INDEX = 0;
 
 	// The client socket which is connected to the server.
@@ -43,13 +54,29 @@ public class CommandPanel extends JPanel implements ActionListener, ChangeListen
 
 	// Used to reset the game.
 	private JButton reset;
+	// Used to skip ahead the number of generations written in the field next to it.
+	private JButton skipAhead;
+	private JTextField generationsField;
+	// Used to ask the server to save its world now.
+	private JButton checkpoint;
+	// Used to send a pattern file to the server, it is stamped at the center of the grid.
+	private JButton loadPattern;
+	// Used to save the grid in a pattern file.
+	private JButton savePattern;
+
+	// The client model, used to place and to save the patterns.
+	private GridModel gridModel;
 
 	// Used to control the grid size.
 	private LabeledSlicerPanel gridSize;
 	// Used to control the game update speed.
 	private LabeledSlicerPanel gridUpdateRate;
-	// Used to control the neighbors count interval for the cell to survive.
-	private LabeledSlicerPanel cellNeighborsToSurvive;
+	// Used to write the rule in the B/S notation (like B3/S23), it is sent when pressing enter.
+	private JTextField ruleField;
+	// Used to show the rule title above its field.
+	private JPanel rulePanel;
+	// The last rule received from the server.
+	private Rule currentRule = Rule.CONWAY;
 	// Used to control the apparition percentage for the cells on reset.
 	private LabeledSlicerPanel apparitionPercentageOnReset;
 
@@ -59,10 +86,8 @@ public class CommandPanel extends JPanel implements ActionListener, ChangeListen
 	 */
 	private boolean onServerUpdate = false;
 
-	// Whether a slicer is updating another one.
-	private boolean concurrentModification = false;
-
-	public CommandPanel() {
+	public CommandPanel(GridModel gridModel) {
+		this.gridModel = gridModel;
 		initGui();
 	}
 
@@ -81,13 +106,14 @@ public class CommandPanel extends JPanel implements ActionListener, ChangeListen
 	private void createComponents() {
 
 		Hashtable<Integer, JLabel> labelTable = new Hashtable<Integer, JLabel>();
-		labelTable.put(10, new JLabel("10"));
-		labelTable.put(50, new JLabel("50"));
-		labelTable.put(100, new JLabel("100"));
+		labelTable.put(GridModel.DEFAULT_GRID_SIZE, new JLabel(String.valueOf(GridModel.DEFAULT_GRID_SIZE)));
+		labelTable.put(GridModel.MAXIMUM_GRID_SIZE / 2, new JLabel(String.valueOf(GridModel.MAXIMUM_GRID_SIZE / 2)));
+		labelTable.put(GridModel.MAXIMUM_GRID_SIZE, new JLabel(String.valueOf(GridModel.MAXIMUM_GRID_SIZE)));
 
 
 		gridSize = new LabeledSlicerPanel("Grid size", this);
-		gridSize.addSlicer(GridModel.DEFAULT_GRID_SIZE, GridModel.MAXIMUM_GRID_SIZE, labelTable, 10, 0);
+		gridSize.addSlicer("Width", GridModel.DEFAULT_GRID_SIZE, GridModel.MAXIMUM_GRID_SIZE, labelTable, 0, 0);
+		gridSize.addSlicer("Height", GridModel.DEFAULT_GRID_SIZE, GridModel.MAXIMUM_GRID_SIZE, labelTable, 0, 0);
 
 
 		labelTable = new Hashtable<Integer, JLabel>();
@@ -98,17 +124,31 @@ public class CommandPanel extends JPanel implements ActionListener, ChangeListen
 		gridUpdateRate.addSlicer(Constants.MINIMUM_UPDATE_RATE, Constants.MAXIMUM_UPDATE_RATE, labelTable, 0, 0);
 
 
-		cellNeighborsToSurvive = new LabeledSlicerPanel("Cell requiered neighbors to survive", this);
-		cellNeighborsToSurvive.addSlicer("Low interval", Constants.MINIMUM_CELL_NEIGHBORS,
-				Constants.MAXIMUM_CELL_NEIGHBORS, null, 1, 0);
-		cellNeighborsToSurvive.addSlicer("High interval", Constants.MINIMUM_CELL_NEIGHBORS,
-				Constants.MAXIMUM_CELL_NEIGHBORS, null, 1, 0);
+		ruleField = new JTextField(Rule.CONWAY.toString(), 10);
+		ruleField.addActionListener(this);
+		rulePanel = new JPanel(new BorderLayout());
+		rulePanel.add(new JLabel("Rule (neighbors to be born / to survive, like B3/S23)"), BorderLayout.NORTH);
+		JPanel fieldPanel = new JPanel();
+		fieldPanel.add(ruleField);
+		rulePanel.add(fieldPanel, BorderLayout.CENTER);
 
 		apparitionPercentageOnReset = new LabeledSlicerPanel("Chance for a cell to be alive on grid reset (in %)", null);
 		apparitionPercentageOnReset.addSlicer(0, 100, null, 20, 0);
 
 		reset = new JButton("Reset");
 		reset.addActionListener(this);
+
+		generationsField = new JTextField("10000", 7);
+		skipAhead = new JButton("Skip generations");
+		skipAhead.addActionListener(this);
+
+		checkpoint = new JButton("Save checkpoint");
+		checkpoint.addActionListener(this);
+
+		loadPattern = new JButton("Load pattern");
+		loadPattern.addActionListener(this);
+		savePattern = new JButton("Save pattern");
+		savePattern.addActionListener(this);
 	}
 
 	/**
@@ -121,7 +161,7 @@ public class CommandPanel extends JPanel implements ActionListener, ChangeListen
 
 		controlPanel.add(gridSize);
 		controlPanel.add(gridUpdateRate);
-		controlPanel.add(cellNeighborsToSurvive);
+		controlPanel.add(rulePanel);
 		controlPanel.add(apparitionPercentageOnReset);
 
 
@@ -131,6 +171,11 @@ public class CommandPanel extends JPanel implements ActionListener, ChangeListen
 		// To avoid my button being stretched.
 		JPanel buttonPanel = new JPanel();
 		buttonPanel.add(reset);
+		buttonPanel.add(generationsField);
+		buttonPanel.add(skipAhead);
+		buttonPanel.add(checkpoint);
+		buttonPanel.add(loadPattern);
+		buttonPanel.add(savePattern);
 		this.add(buttonPanel, BorderLayout.SOUTH);
 	}
 
@@ -145,48 +190,21 @@ public class CommandPanel extends JPanel implements ActionListener, ChangeListen
 			return;
 		}
 
-		if(ce.getSource().equals(gridSize.getSlider(GRID_SIZE_SLIDER_INDEX)) && !(gridSize.isSliderAdjusting(GRID_SIZE_SLIDER_INDEX))){
-			byte[] cmd = ByteBuffer.allocate(Short.BYTES*2).putShort(Constants.CHANGE_GRID_SIZE_COMMAND).putShort(
-				(short)gridSize.getSliderValue(GRID_SIZE_SLIDER_INDEX)).array();
+		if((ce.getSource().equals(gridSize.getSlider(GRID_WIDTH_SLIDER_INDEX)) && !gridSize.isSliderAdjusting(GRID_WIDTH_SLIDER_INDEX))
+				|| (ce.getSource().equals(gridSize.getSlider(GRID_HEIGHT_SLIDER_INDEX)) && !gridSize.isSliderAdjusting(GRID_HEIGHT_SLIDER_INDEX))){
+			byte[] cmd = ByteBuffer.allocate(Short.BYTES + Integer.BYTES * 2).putShort(Constants.CHANGE_GRID_SIZE_COMMAND).putInt(
+				gridSize.getSliderValue(GRID_WIDTH_SLIDER_INDEX)).putInt(gridSize.getSliderValue(GRID_HEIGHT_SLIDER_INDEX)).array();
 			send(cmd);
 		} else if(ce.getSource().equals(gridUpdateRate.getSlider(GRID_UPDATE_RATE_SLIDER_INDEX)) &&
 				!gridUpdateRate.isSliderAdjusting(GRID_UPDATE_RATE_SLIDER_INDEX)){
 			byte[] cmd = ByteBuffer.allocate(Short.BYTES * Integer.BYTES).putShort(Constants.CHANGE_GRID_UPDATE_RATE_COMMAND).putInt(
 					gridUpdateRate.getSliderValue(GRID_UPDATE_RATE_SLIDER_INDEX)).array();
 			send(cmd);
-		} else if(!concurrentModification && ce.getSource().equals(cellNeighborsToSurvive.getSlider(LOW_INTERVAL_SLIDER_INDEX)) &&
-				!cellNeighborsToSurvive.isSliderAdjusting(LOW_INTERVAL_SLIDER_INDEX)){
-
-			// The minimum cannot be > to the maximum.
-			if(cellNeighborsToSurvive.getSliderValue(LOW_INTERVAL_SLIDER_INDEX) > cellNeighborsToSurvive.getSliderValue(HIGHT_INTERVAL_SLIDER_INDEX)){
-				concurrentModification = true;
-				cellNeighborsToSurvive.setSliderValue(HIGHT_INTERVAL_SLIDER_INDEX, cellNeighborsToSurvive.getSliderValue(LOW_INTERVAL_SLIDER_INDEX));
-			}
-
-			byte[] cmd = ByteBuffer.allocate(Short.BYTES*3).putShort(Constants.CHANGE_GRID_CELL_REQUIREMENT_COMMAND).putShort(
-					(short)cellNeighborsToSurvive.getSliderValue(LOW_INTERVAL_SLIDER_INDEX)).putShort(
-							(short)cellNeighborsToSurvive.getSliderValue(HIGHT_INTERVAL_SLIDER_INDEX)).array();
-			send(cmd);
-
-			concurrentModification = false;
-		} else if(!concurrentModification && ce.getSource().equals(cellNeighborsToSurvive.getSlider(HIGHT_INTERVAL_SLIDER_INDEX)) &&
-				!cellNeighborsToSurvive.isSliderAdjusting(HIGHT_INTERVAL_SLIDER_INDEX)){
-
-			// The maximum cannot be < to the minimum.
-			if(cellNeighborsToSurvive.getSliderValue(HIGHT_INTERVAL_SLIDER_INDEX) < cellNeighborsToSurvive.getSliderValue(LOW_INTERVAL_SLIDER_INDEX)){
-				concurrentModification = true;
-				cellNeighborsToSurvive.setSliderValue(LOW_INTERVAL_SLIDER_INDEX, cellNeighborsToSurvive.getSliderValue(HIGHT_INTERVAL_SLIDER_INDEX));
-			}
-			byte[] cmd = ByteBuffer.allocate(Short.BYTES*3).putShort(Constants.CHANGE_GRID_CELL_REQUIREMENT_COMMAND).putShort(
-					(short)cellNeighborsToSurvive.getSliderValue(LOW_INTERVAL_SLIDER_INDEX)).putShort(
-							(short)cellNeighborsToSurvive.getSliderValue(HIGHT_INTERVAL_SLIDER_INDEX)).array();
-			send(cmd);
-			concurrentModification = false;
 		}
 	}
 
 	/**
-	 * Listener for the button.
+	 * Listener for the button and the rule field.
 	 */
 	@Override
 	public void actionPerformed(ActionEvent ap) {
@@ -195,11 +213,99 @@ public class CommandPanel extends JPanel implements ActionListener, ChangeListen
 		}
 
 		if(ap.getSource().equals(reset)){
-			byte[] command = ByteBuffer.allocate(Short.BYTES*2).putShort(Constants.RESET_GRID_COMMAND).putShort(
-					(short)apparitionPercentageOnReset.getSliderValue(CELL_APPARITION_PERCENTAGE_SLIDER_INDEX)).array();
+			// The seed of the new world, every client build the same world from it.
+			byte[] command = ByteBuffer.allocate(Short.BYTES*2 + Long.BYTES).putShort(Constants.RESET_GRID_COMMAND).putShort(
+					(short)apparitionPercentageOnReset.getSliderValue(CELL_APPARITION_PERCENTAGE_SLIDER_INDEX))
+					.putLong(new SplittableRandom().nextLong()).array();
+			send(command);
+		} else if(ap.getSource().equals(skipAhead)){
+			int generations = parseGenerations(generationsField.getText());
+			if(generations < 1 || generations > Constants.MAXIMUM_ADVANCE_GENERATIONS){
+				System.err.println("The number of generations must be between 1 and "+Constants.MAXIMUM_ADVANCE_GENERATIONS);
+				return;
+			}
+			byte[] command = ByteBuffer.allocate(Short.BYTES + Integer.BYTES).putShort(Constants.ADVANCE_GENERATIONS_COMMAND)
+					.putInt(generations).array();
+			send(command);
+		} else if(ap.getSource().equals(checkpoint)){
+			send(ByteBuffer.allocate(Short.BYTES).putShort(Constants.CHECKPOINT_COMMAND).array());
+		} else if(ap.getSource().equals(loadPattern)){
+			JFileChooser chooser = new JFileChooser();
+			if(chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION){
+				sendPattern(chooser.getSelectedFile());
+			}
+		} else if(ap.getSource().equals(savePattern)){
+			JFileChooser chooser = new JFileChooser();
+			if(chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION){
+				savePattern(chooser.getSelectedFile());
+			}
+		} else if(ap.getSource().equals(ruleField)){
+			Rule rule = Rule.parse(ruleField.getText());
+			if(rule == null){
+				// Show the rule currently used instead of the wrong one.
+				ruleField.setText(currentRule.toString());
+				return;
+			}
+			byte[] command = ByteBuffer.allocate(Short.BYTES*3).putShort(Constants.CHANGE_GRID_CELL_REQUIREMENT_COMMAND).putShort(
+					(short)rule.getBirthMask()).putShort((short)rule.getSurvivalMask()).array();
+			send(command);
+		}
+
+	}
+
+	/**
+	 * Send the given pattern file to the server so it is stamped at the center of the grid.
+	 */
+	private void sendPattern(File file) {
+		// The code, the position and the length of the text.
+		int headerSize = Short.BYTES + Integer.BYTES * 3;
+		if(file.length() > Constants.MAXIMUM_COMMAND_SIZE - headerSize){
+			System.err.println("The pattern "+file.getName()+" is too big to be sent, the maximum is "
+					+(Constants.MAXIMUM_COMMAND_SIZE - headerSize)+" bytes.");
+			return;
+		}
+
+		try {
+			byte[] text = Files.readAllBytes(file.toPath());
+			// Read the pattern once to know its dimensions.
+			PatternReader reader = new PatternReader(new StringReader(new String(text, StandardCharsets.UTF_8)));
+			reader.read((y, x, length) -> {});
+			int y = (gridModel.getCurrentHeight() - reader.getHeight()) / 2;
+			int x = (gridModel.getCurrentWidth() - reader.getWidth()) / 2;
+
+			byte[] command = ByteBuffer.allocate(headerSize + text.length).putShort(Constants.STAMP_PATTERN_COMMAND)
+					.putInt(y).putInt(x).putInt(text.length).put(text).array();
 			send(command);
+		} catch (IOException e) {
+			System.err.println("Cannot read the pattern "+file.getName()+": "+e.getMessage());
 		}
+	}
 
+	/**
+	 * Save the grid in the given file, in the .cells format if its name ends with .cells and in the RLE format otherwise.
+	 */
+	private void savePattern(File file) {
+		try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			PatternWriter patternWriter = new PatternWriter(writer);
+			if(file.getName().endsWith(".cells")){
+				patternWriter.writeCells(gridModel);
+			} else {
+				patternWriter.writeRle(gridModel);
+			}
+		} catch (IOException e) {
+			System.err.println("Cannot save the pattern "+file.getName()+": "+e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the number written in the given text or -1 if it is not a number.
+	 */
+	private int parseGenerations(String text) {
+		try {
+			return Integer.parseInt(text.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
 	}
 
 	/**
@@ -215,8 +321,7 @@ public class CommandPanel extends JPanel implements ActionListener, ChangeListen
 		}
 
 		try {
-			ByteBuffer buffer = ByteBuffer.wrap(command);
-			clientSocket.write(buffer);
+			MessageFramer.write(clientSocket, command);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -227,15 +332,19 @@ public class CommandPanel extends JPanel implements ActionListener, ChangeListen
 	}
 
 	/**
-	 * When a command is received from the server to update the grid size, it has to be reflected on the JSlider.
+	 * When a command is received from the server to update the grid size, it has to be reflected on the JSliders.
 	 * 
-	 * @param newGridSize the new size for the grid.
+	 * @param newWidth the new width for the grid.
+	 * @param newHeight the new height for the grid.
 	 */
-	public void setCurrentGridSize(int newGridSize) {
+	public void setCurrentGridSize(int newWidth, int newHeight) {
 		onServerUpdate = true;
 		// If the client is not currently using this slicer.
-		if(!gridSize.isSliderAdjusting(GRID_SIZE_SLIDER_INDEX)){
-			gridSize.setSliderValue(GRID_SIZE_SLIDER_INDEX, newGridSize);
+		if(!gridSize.isSliderAdjusting(GRID_WIDTH_SLIDER_INDEX)){
+			gridSize.setSliderValue(GRID_WIDTH_SLIDER_INDEX, newWidth);
+		}
+		if(!gridSize.isSliderAdjusting(GRID_HEIGHT_SLIDER_INDEX)){
+			gridSize.setSliderValue(GRID_HEIGHT_SLIDER_INDEX, newHeight);
 		}
 		onServerUpdate = false;
 	}
@@ -255,27 +364,19 @@ public class CommandPanel extends JPanel implements ActionListener, ChangeListen
 	}
 
 	/**
-	 * When a command is received from the server to update the grid cells requirement, it has to be reflected on the JSliders.
+	 * When a command is received from the server to update the rule, it has to be reflected on the text field.
 	 * 
-	 * @param min the minimal value interval for a cell to survive.
-	 * @param max the maximal value interval for a cell to survive.
+	 * @param rule the new rule of the game.
 	 */
-	public void setCellRequirement(int min, int max) {
-		onServerUpdate = true;
-
-		if(GridModel.cellRequirementCorrect(min, max)){
-			// If the client is not currently using this slicer.
-			if(!cellNeighborsToSurvive.isSliderAdjusting(LOW_INTERVAL_SLIDER_INDEX)){
-				cellNeighborsToSurvive.setSliderValue(LOW_INTERVAL_SLIDER_INDEX, min);
-			}
-			// If the client is not currently using this slicer.
-			if(!cellNeighborsToSurvive.isSliderAdjusting(HIGHT_INTERVAL_SLIDER_INDEX)){
-				cellNeighborsToSurvive.setSliderValue(HIGHT_INTERVAL_SLIDER_INDEX, max);
-			}
-		} else {
-			System.err.println("Wrong data received cell requirement is not correct. Min = "+min+" Max = "+max );
+	public void setRule(Rule rule) {
+		if(rule == null){
+			return;
+		}
+		currentRule = rule;
+		// If the client is not currently editing the rule.
+		if(!ruleField.hasFocus()){
+			ruleField.setText(rule.toString());
 		}
-		onServerUpdate = false;
 	}
 
 	/**
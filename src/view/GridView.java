@@ -2,11 +2,13 @@ package view;
 
 import java.awt.Color;
 import java.awt.Graphics;
-import java.util.Observable;
-import java.util.Observer;
+import java.awt.Rectangle;
 
 import javax.swing.JPanel;
 
+import model.GenerationSnapshot;
+import model.GridEvent;
+import model.GridListener;
 import model.GridModel;
 
 /**
@@ -14,7 +16,7 @@ import model.GridModel;
  *  
  * @author Jean-Hugo
  */
-public class GridView extends JPanel implements Observer {
+public class GridView extends JPanel implements GridListener {
 
 	/**
 	 * 
@@ -35,11 +37,14 @@ public class GridView extends JPanel implements Observer {
 	protected int cellSize;
 	protected int widthPadding;
 	protected int heightPadding;
+	// The grid dimensions when it was last painted.
+	private int paintedWidth;
+	private int paintedHeight;
 
 	public GridView(GridModel gridModel) {
 		this.gridModel = gridModel;
 		// The view will always be notified when the model updates.
-		this.gridModel.addObserver(this);
+		this.gridModel.addGridListener(this);
 	}
 
 
@@ -58,32 +63,56 @@ public class GridView extends JPanel implements Observer {
 	 * @param g
 	 */
 	private void paintGrid(Graphics g) {
+		// The generation published by the model, it does not change while it is painted.
+		try(GenerationSnapshot snapshot = gridModel.acquireSnapshot()){
+			paintGrid(g, snapshot);
+		}
+	}
 
-		int gridSize = gridModel.getCurrentGridSize();
-		boolean grid [][] = gridModel.getGrid();
-		cellSize = getCorrectSize()/gridModel.getCurrentGridSize();
-		widthPadding = (this.getWidth() - gridSize * cellSize) / 2;
-		heightPadding = (this.getHeight() - gridSize * cellSize) / 2;
+	private void paintGrid(Graphics g, GenerationSnapshot snapshot) {
+
+		paintedWidth = snapshot.getWidth();
+		paintedHeight = snapshot.getHeight();
+		cellSize = getCorrectSize(paintedWidth, paintedHeight);
+		// When the grid is bigger than the panel, only its top left corner is displayed.
+		int columns = Math.min(paintedWidth, this.getWidth() / cellSize);
+		int rows = Math.min(paintedHeight, this.getHeight() / cellSize);
+		widthPadding = (this.getWidth() - columns * cellSize) / 2;
+		heightPadding = (this.getHeight() - rows * cellSize) / 2;
+
+		// Only paint the cells within the area to repaint.
+		int firstRow = 0;
+		int firstColumn = 0;
+		Rectangle clip = g.getClipBounds();
+		if(clip != null){
+			firstRow = Math.max(0, (clip.y - heightPadding) / cellSize);
+			firstColumn = Math.max(0, (clip.x - widthPadding) / cellSize);
+			rows = Math.min(rows, (clip.y + clip.height - heightPadding) / cellSize + 1);
+			columns = Math.min(columns, (clip.x + clip.width - widthPadding) / cellSize + 1);
+		}
 
-		for (int i = 0; i < gridSize; i++) {
-			for (int j = 0; j < gridSize; j++) {
-				if(grid[i][j]){
+		for (int i = firstRow; i < rows; i++) {
+			for (int j = firstColumn; j < columns; j++) {
+				boolean alive = snapshot.isCellAlive(i, j);
+				if(alive){
 					g.setColor(ALIVE_CELL_COLOR);
 				} else {
 					g.setColor(DEAD_CELL_COLOR);
 				}
-				g.fill3DRect(j * cellSize + widthPadding, i * cellSize + heightPadding, cellSize, cellSize, grid[i][j]);
+				g.fill3DRect(j * cellSize + widthPadding, i * cellSize + heightPadding, cellSize, cellSize, alive);
 			}
 		}
 	}
 
 	/**
-	 * Allow to get the correct size reference for the cellSize calculation. We always want to get the shortest dimension.
+	 * Allow to get the correct size for a cell. We always want the whole grid to fit in the panel, but a cell is never
+	 * smaller than a pixel.
 	 * 
-	 * @return the correct size reference for the cellSize calculation.
+	 * @return the size of a cell in pixel.
 	 */
-	private int getCorrectSize() {
-		return this.getWidth() > this.getHeight() ? this.getHeight() : this.getWidth();
+	private int getCorrectSize(int gridWidth, int gridHeight) {
+		int size = Math.min(this.getWidth() / gridWidth, this.getHeight() / gridHeight);
+		return Math.max(size, 1);
 	}
 
 	/**
@@ -91,13 +120,10 @@ public class GridView extends JPanel implements Observer {
 	 */
 	public void displayGridAscii(){
 
-		int gridSize = gridModel.getCurrentGridSize();
-		boolean grid [][] = gridModel.getGrid();
-
 		System.out.println("Generation n "+gridModel.getCycle());
-		for (int i = 0; i < gridSize; i++) {
-			for (int j = 0; j < gridSize; j++) {
-				if(grid[i][j]){
+		for (int i = 0; i < gridModel.getCurrentHeight(); i++) {
+			for (int j = 0; j < gridModel.getCurrentWidth(); j++) {
+				if(gridModel.isCellAlive(i, j)){
 					System.out.print(ALIVE_CELL_CHAR);
 				} else {
 					System.out.print(DEAD_CELL_CHAR);
@@ -109,12 +135,23 @@ public class GridView extends JPanel implements Observer {
 	}
 
 	/**
-	 * Will be called every time the grid change.
+	 * Will be called every time the grid change. Only the regions of the grid that changed are repainted.
 	 */
 	@Override
-	public void update(Observable o, Object arg) {
+	public void gridChanged(GridEvent event) {
 		//		displayGridAscii();
-		repaint();
+
+		// If the grid layout changed or the whole grid changed, repaint everything.
+		if(cellSize != getCorrectSize(event.getWidth(), event.getHeight()) || paintedWidth != event.getWidth() || paintedHeight != event.getHeight()
+				|| event.isWholeGrid()){
+			repaint();
+			return;
+		}
+
+		for(Rectangle region : event.getDirtyRegions()){
+			repaint(region.x * cellSize + widthPadding, region.y * cellSize + heightPadding,
+					region.width * cellSize, region.height * cellSize);
+		}
 	}
 
 }
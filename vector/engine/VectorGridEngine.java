@@ -0,0 +1,123 @@
+package engine;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Same as the packed engine but the words inside a row are computed several at once with the vector unit of the CPU
+ * (for example 4 words with AVX2 and 8 with AVX-512). The first and the last words of a row wrap to the other side of the
+ * grid so they are still computed by the packed engine, like the words that do not fill a whole vector.
+ *
+ * This class uses the incubating jdk.incubator.vector module so it lives in its own source root (vector), compiled
+ * apart from the other sources with --add-modules jdk.incubator.vector. It must only be loaded through
+ * {@link EngineType#VECTOR} which check that the module and the class are available and fall back to the packed engine
+ * otherwise.
+ *
+ * @author Jean-Hugo
+ */
+public class VectorGridEngine extends PackedGridEngine {
+
+	// The widest vector of longs supported by the CPU.
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+	public VectorGridEngine(int width, int height) {
+		super(width, height);
+	}
+
+	/**
+	 * @return whether the CPU can compute more than one word at once.
+	 */
+	public static boolean isSupported() {
+		return SPECIES.length() > 1;
+	}
+
+	@Override
+	void stepWords(long[] src, long[] dst, int above, int row, int below, int from, int to, int words, int width,
+			int birthMask, int survivalMask) {
+		int lanes = SPECIES.length();
+		// The vectors never include the first and the last words since they wrap.
+		int upper = Math.min(to, words - 1) - lanes;
+		int i = from;
+		if (i == 0) {
+			super.stepWords(src, dst, above, row, below, 0, 1, words, width, birthMask, survivalMask);
+			i = 1;
+		}
+		for (; i <= upper; i += lanes) {
+			LongVector a = LongVector.fromArray(SPECIES, src, above + i);
+			LongVector c = LongVector.fromArray(SPECIES, src, row + i);
+			LongVector b = LongVector.fromArray(SPECIES, src, below + i);
+
+			// The neighbors on the left of each cell, with the last cell of the previous word.
+			LongVector aw = shiftWest(a, LongVector.fromArray(SPECIES, src, above + i - 1));
+			LongVector cw = shiftWest(c, LongVector.fromArray(SPECIES, src, row + i - 1));
+			LongVector bw = shiftWest(b, LongVector.fromArray(SPECIES, src, below + i - 1));
+			// The neighbors on the right of each cell, with the first cell of the next word.
+			LongVector ae = shiftEast(a, LongVector.fromArray(SPECIES, src, above + i + 1));
+			LongVector ce = shiftEast(c, LongVector.fromArray(SPECIES, src, row + i + 1));
+			LongVector be = shiftEast(b, LongVector.fromArray(SPECIES, src, below + i + 1));
+
+			nextState(c, aw, a, ae, cw, ce, bw, b, be, birthMask, survivalMask).intoArray(dst, row + i);
+		}
+		super.stepWords(src, dst, above, row, below, i, to, words, width, birthMask, survivalMask);
+	}
+
+	private static LongVector shiftWest(LongVector words, LongVector previousWords) {
+		return words.lanewise(VectorOperators.LSHL, 1).or(previousWords.lanewise(VectorOperators.LSHR, WORD_SIZE - 1));
+	}
+
+	private static LongVector shiftEast(LongVector words, LongVector nextWords) {
+		return words.lanewise(VectorOperators.LSHR, 1).or(nextWords.lanewise(VectorOperators.LSHL, WORD_SIZE - 1));
+	}
+
+	/**
+	 * The same adders as {@link PackedGridEngine#nextState(long, long, long, long, long, long, long, long, long, int, int)}
+	 * applied to every lane.
+	 */
+	private static LongVector nextState(LongVector c, LongVector aw, LongVector a, LongVector ae, LongVector cw,
+			LongVector ce, LongVector bw, LongVector b, LongVector be, int birthMask, int survivalMask) {
+
+		// Full adder on the row above and the row below, half adder on the left and right neighbors.
+		LongVector aOnes = aw.lanewise(VectorOperators.XOR, a).lanewise(VectorOperators.XOR, ae);
+		LongVector aTwos = aw.and(a).or(ae.and(aw.lanewise(VectorOperators.XOR, a)));
+		LongVector bOnes = bw.lanewise(VectorOperators.XOR, b).lanewise(VectorOperators.XOR, be);
+		LongVector bTwos = bw.and(b).or(be.and(bw.lanewise(VectorOperators.XOR, b)));
+		LongVector cOnes = cw.lanewise(VectorOperators.XOR, ce);
+		LongVector cTwos = cw.and(ce);
+
+		// Add the 3 partial sums of weight 1.
+		LongVector ones = aOnes.lanewise(VectorOperators.XOR, bOnes).lanewise(VectorOperators.XOR, cOnes);
+		LongVector onesCarry = aOnes.and(bOnes).or(cOnes.and(aOnes.lanewise(VectorOperators.XOR, bOnes)));
+
+		// Add the 4 partial sums of weight 2.
+		LongVector partialTwos = aTwos.lanewise(VectorOperators.XOR, bTwos).lanewise(VectorOperators.XOR, cTwos);
+		LongVector partialFours = aTwos.and(bTwos).or(cTwos.and(aTwos.lanewise(VectorOperators.XOR, bTwos)));
+		LongVector twos = partialTwos.lanewise(VectorOperators.XOR, onesCarry);
+		LongVector twosCarry = partialTwos.and(onesCarry);
+		LongVector fours = partialFours.lanewise(VectorOperators.XOR, twosCarry);
+		LongVector eights = partialFours.and(twosCarry);
+
+		LongVector survive = matchCounts(survivalMask, ones, twos, fours, eights);
+		LongVector born = matchCounts(birthMask, ones, twos, fours, eights);
+
+		return c.and(survive).or(born.lanewise(VectorOperators.AND_NOT, c));
+	}
+
+	/**
+	 * @see PackedGridEngine#matchCounts(int, long, long, long, long)
+	 */
+	private static LongVector matchCounts(int countMask, LongVector ones, LongVector twos, LongVector fours,
+			LongVector eights) {
+		LongVector match = LongVector.zero(SPECIES);
+		for (int count = 0; count <= 8; count++) {
+			if ((countMask & (1 << count)) != 0) {
+				match = match.or(((count & 1) != 0 ? ones : ones.not())
+						.and((count & 2) != 0 ? twos : twos.not())
+						.and((count & 4) != 0 ? fours : fours.not())
+						.and((count & 8) != 0 ? eights : eights.not()));
+			}
+		}
+		return match;
+	}
+
+}